@@ -0,0 +1,151 @@
+package com.barnwaldo.classifiers.data;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import com.barnwaldo.classifiers.utils.IndexSampler;
+
+import lombok.Getter;
+
+/**
+ * Dataset with each feature pre-binned to at most 256 bins, stored as one
+ * unsigned byte per value in column major order (bin at row, col is
+ * bins[col * numRow + row] & 0xFF) plus an int[] result column
+ *
+ * (1) edges[col] are strictly increasing bin edges -- the bin of a value is the
+ * number of edges <= value, so bin <= b is the same as value < edges[col][b]
+ *
+ * (2) edges are quantiles of (a sample of) each column -- a column with fewer
+ * distinct values than bins gets one bin per value with edges midway between
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class BinnedDataset {
+
+    public static final int MAX_BINS = 256;
+    private static final int BIN_SAMPLE_SIZE = 200000;  // rows used to find edges
+
+    private final int numRow;
+    private final int numFeature;
+    private final int numClass;
+    private final byte[] bins;
+    private final double[][] edges;
+    private final int[] results;
+
+    public BinnedDataset(int numRow, int numFeature, int numClass, byte[] bins, double[][] edges, int[] results) {
+        this.numRow = numRow;
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.bins = bins;
+        this.edges = edges;
+        this.results = results;
+    }
+
+    /**
+     * Method bins every feature of data into at most maxBins bins
+     *
+     * @param data
+     * @param maxBins
+     * @param random
+     * @return
+     */
+    public static BinnedDataset fromDataset(Dataset data, int maxBins, SplittableRandom random) {
+        if (maxBins < 2 || maxBins > MAX_BINS) {
+            throw new IllegalArgumentException("maxBins = " + maxBins + " must be in [2, " + MAX_BINS + "]");
+        }
+        int numRow = data.getNumRow();
+        int numFeature = data.getNumFeature();
+        int[] sample = numRow > BIN_SAMPLE_SIZE
+                ? IndexSampler.subsample(numRow, BIN_SAMPLE_SIZE, random)
+                : IndexSampler.identity(numRow);
+        double[][] edges = new double[numFeature][];
+        byte[] bins = new byte[numRow * numFeature];
+        double[] values = new double[sample.length];
+        for (int col = 0; col < numFeature; col++) {
+            for (int i = 0; i < sample.length; i++) {
+                values[i] = data.get(sample[i], col);
+            }
+            edges[col] = findEdges(values, maxBins);
+            int offset = col * numRow;
+            for (int row = 0; row < numRow; row++) {
+                bins[offset + row] = (byte) binOf(edges[col], data.get(row, col));
+            }
+        }
+        return new BinnedDataset(numRow, numFeature, data.getNumClass(), bins, edges, data.getResults());
+    }
+
+    /**
+     * Helper method finds strictly increasing bin edges from column values
+     *
+     * @param values
+     * @param maxBins
+     * @return
+     */
+    private static double[] findEdges(double[] values, int maxBins) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        while (n > 0 && Double.isNaN(sorted[n - 1])) {
+            n--;
+        }
+        // distinct values
+        double[] distinct = new double[n];
+        int numDistinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (numDistinct == 0 || sorted[i] != distinct[numDistinct - 1]) {
+                distinct[numDistinct++] = sorted[i];
+            }
+        }
+        if (numDistinct <= maxBins) {
+            double[] edges = new double[Math.max(0, numDistinct - 1)];
+            for (int i = 0; i < edges.length; i++) {
+                edges[i] = 0.5 * (distinct[i] + distinct[i + 1]);
+            }
+            return edges;
+        }
+        double[] edges = new double[maxBins - 1];
+        int numEdges = 0;
+        for (int b = 1; b < maxBins; b++) {
+            double edge = sorted[(int) ((long) b * n / maxBins)];
+            if (edge > sorted[0] && (numEdges == 0 || edge > edges[numEdges - 1])) {
+                edges[numEdges++] = edge;
+            }
+        }
+        return Arrays.copyOf(edges, numEdges);
+    }
+
+    /**
+     * Method returns bin of value for given edges (number of edges <= value)
+     *
+     * @param edges
+     * @param value
+     * @return
+     */
+    public static int binOf(double[] edges, double value) {
+        int lo = 0;
+        int hi = edges.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (edges[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public int getNumBins(int col) {
+        return edges[col].length + 1;
+    }
+
+    public int getBin(int row, int col) {
+        return bins[col * numRow + row] & 0xFF;
+    }
+
+    public int getResult(int row) {
+        return results[row];
+    }
+}
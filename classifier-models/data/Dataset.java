@@ -0,0 +1,74 @@
+package com.barnwaldo.classifiers.data;
+
+/**
+ * Read-only tabular data set used by all classifiers for training and
+ * prediction -- rows are addressed by index, features by column and each row
+ * has an integer classId (result) 0 thru numClass - 1
+ *
+ * Implementations store data column major in contiguous primitive arrays (or
+ * buffers) rather than as one object per row
+ *
+ * @author barnwaldo
+ *
+ */
+public interface Dataset {
+
+    int getNumRow();
+
+    int getNumFeature();
+
+    int getNumClass();
+
+    /**
+     * Method returns feature value at row, col
+     *
+     * @param row
+     * @param col
+     * @return
+     */
+    double get(int row, int col);
+
+    /**
+     * Method returns classId (result) for row
+     *
+     * @param row
+     * @return
+     */
+    int getResult(int row);
+
+    /**
+     * Method copies features of row into buffer (length >= numFeature)
+     *
+     * @param row
+     * @param buffer
+     */
+    default void getRow(int row, double[] buffer) {
+        for (int col = 0; col < getNumFeature(); col++) {
+            buffer[col] = get(row, col);
+        }
+    }
+
+    /**
+     * Method returns classIds (results) for all rows -- heap implementations
+     * return their backing array which must not be modified
+     *
+     * @return
+     */
+    default int[] getResults() {
+        int[] results = new int[getNumRow()];
+        for (int row = 0; row < results.length; row++) {
+            results[row] = getResult(row);
+        }
+        return results;
+    }
+
+    /**
+     * Method returns view of this data set at given row indices (no copy)
+     *
+     * @param index
+     * @return
+     */
+    default Dataset select(int[] index) {
+        return new IndexedDataset(this, index);
+    }
+}
@@ -0,0 +1,115 @@
+package com.barnwaldo.classifiers.data;
+
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Dataset held on heap in one column major double[] (value at row, col is
+ * values[col * numRow + row]) plus an int[] result column
+ *
+ * Adapters fromContinuous and fromCategory convert existing row objects --
+ * category levels are stored as (exact) double values
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class DoubleDataset implements WritableDataset {
+
+    private final int numRow;
+    private final int numFeature;
+    private final int numClass;
+    private final double[] values;
+    private final int[] results;
+
+    public DoubleDataset(int numRow, int numFeature, int numClass) {
+        this(numRow, numFeature, numClass, new double[numRow * numFeature], new int[numRow]);
+    }
+
+    public DoubleDataset(int numRow, int numFeature, int numClass, double[] values, int[] results) {
+        if (values.length != numRow * numFeature || results.length != numRow) {
+            throw new IllegalArgumentException("values/results length does not match " + numRow + " x " + numFeature);
+        }
+        this.numRow = numRow;
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.values = values;
+        this.results = results;
+    }
+
+    /**
+     * Method copies Continuous data objects into a column major data set
+     *
+     * @param data
+     * @param numClass
+     * @return
+     */
+    public static DoubleDataset fromContinuous(List<Continuous> data, int numClass) {
+        int numRow = data.size();
+        int numFeature = numRow == 0 ? 0 : data.get(0).getFeature().length;
+        DoubleDataset dataset = new DoubleDataset(numRow, numFeature, numClass);
+        for (int row = 0; row < numRow; row++) {
+            Continuous c = data.get(row);
+            double[] feature = c.getFeature();
+            for (int col = 0; col < numFeature; col++) {
+                dataset.values[col * numRow + row] = feature[col];
+            }
+            dataset.results[row] = c.getResult();
+        }
+        return dataset;
+    }
+
+    /**
+     * Method copies Category data objects into a column major data set
+     *
+     * @param data
+     * @param numClass
+     * @return
+     */
+    public static DoubleDataset fromCategory(List<Category> data, int numClass) {
+        int numRow = data.size();
+        int numFeature = numRow == 0 ? 0 : data.get(0).getFeature().length;
+        DoubleDataset dataset = new DoubleDataset(numRow, numFeature, numClass);
+        for (int row = 0; row < numRow; row++) {
+            Category c = data.get(row);
+            int[] feature = c.getFeature();
+            for (int col = 0; col < numFeature; col++) {
+                dataset.values[col * numRow + row] = feature[col];
+            }
+            dataset.results[row] = c.getResult();
+        }
+        return dataset;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return values[col * numRow + row];
+    }
+
+    @Override
+    public void set(int row, int col, double value) {
+        values[col * numRow + row] = value;
+    }
+
+    @Override
+    public int getResult(int row) {
+        return results[row];
+    }
+
+    @Override
+    public void setResult(int row, int result) {
+        results[row] = result;
+    }
+
+    /**
+     * Method returns offset of column col in values -- column occupies
+     * values[offset, offset + numRow)
+     *
+     * @param col
+     * @return
+     */
+    public int columnOffset(int col) {
+        return col * numRow;
+    }
+}
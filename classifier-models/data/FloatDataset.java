@@ -0,0 +1,89 @@
+package com.barnwaldo.classifiers.data;
+
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Dataset held on heap in one column major float[] (value at row, col is
+ * values[col * numRow + row]) plus an int[] result column -- half the memory
+ * of DoubleDataset where single precision features are sufficient
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class FloatDataset implements WritableDataset {
+
+    private final int numRow;
+    private final int numFeature;
+    private final int numClass;
+    private final float[] values;
+    private final int[] results;
+
+    public FloatDataset(int numRow, int numFeature, int numClass) {
+        this(numRow, numFeature, numClass, new float[numRow * numFeature], new int[numRow]);
+    }
+
+    public FloatDataset(int numRow, int numFeature, int numClass, float[] values, int[] results) {
+        if (values.length != numRow * numFeature || results.length != numRow) {
+            throw new IllegalArgumentException("values/results length does not match " + numRow + " x " + numFeature);
+        }
+        this.numRow = numRow;
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.values = values;
+        this.results = results;
+    }
+
+    /**
+     * Method copies Continuous data objects into a column major data set
+     *
+     * @param data
+     * @param numClass
+     * @return
+     */
+    public static FloatDataset fromContinuous(List<Continuous> data, int numClass) {
+        int numRow = data.size();
+        int numFeature = numRow == 0 ? 0 : data.get(0).getFeature().length;
+        FloatDataset dataset = new FloatDataset(numRow, numFeature, numClass);
+        for (int row = 0; row < numRow; row++) {
+            Continuous c = data.get(row);
+            double[] feature = c.getFeature();
+            for (int col = 0; col < numFeature; col++) {
+                dataset.values[col * numRow + row] = (float) feature[col];
+            }
+            dataset.results[row] = c.getResult();
+        }
+        return dataset;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return values[col * numRow + row];
+    }
+
+    public void set(int row, int col, float value) {
+        values[col * numRow + row] = value;
+    }
+
+    @Override
+    public void set(int row, int col, double value) {
+        values[col * numRow + row] = (float) value;
+    }
+
+    @Override
+    public int getResult(int row) {
+        return results[row];
+    }
+
+    @Override
+    public void setResult(int row, int result) {
+        results[row] = result;
+    }
+
+    @Override
+    public int[] getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,62 @@
+package com.barnwaldo.classifiers.data;
+
+import lombok.Getter;
+
+/**
+ * Read-only view of a Dataset at given row indices -- used for train/test
+ * splits, folds and samples without copying data
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class IndexedDataset implements Dataset {
+
+    private final Dataset source;
+    private final int[] index;
+
+    public IndexedDataset(Dataset source, int[] index) {
+        this.source = source;
+        this.index = index;
+    }
+
+    @Override
+    public int getNumRow() {
+        return index.length;
+    }
+
+    @Override
+    public int getNumFeature() {
+        return source.getNumFeature();
+    }
+
+    @Override
+    public int getNumClass() {
+        return source.getNumClass();
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return source.get(index[row], col);
+    }
+
+    @Override
+    public int getResult(int row) {
+        return source.getResult(index[row]);
+    }
+
+    @Override
+    public void getRow(int row, double[] buffer) {
+        source.getRow(index[row], buffer);
+    }
+
+    @Override
+    public Dataset select(int[] subIndex) {
+        // compose indices so views do not stack
+        int[] composed = new int[subIndex.length];
+        for (int i = 0; i < subIndex.length; i++) {
+            composed[i] = index[subIndex[i]];
+        }
+        return new IndexedDataset(source, composed);
+    }
+}
@@ -0,0 +1,104 @@
+package com.barnwaldo.classifiers.data;
+
+import java.nio.ByteBuffer;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Dataset backed by memory mapped column buffers of a binary data set file
+ * (see DatasetFile) -- data lives in the OS page cache rather than on the heap
+ * so data sets larger than the heap can be used for training, and repeated
+ * runs on the same file share already cached pages
+ *
+ * Each feature column is FLOAT64 or FLOAT32; results are INT32. Buffers are
+ * read-only unless the file was opened for writing with DatasetFile.create
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class MappedDataset implements WritableDataset {
+
+    public static final byte FLOAT64 = 0;
+    public static final byte FLOAT32 = 1;
+
+    private final int numRow;
+    private final int numFeature;
+    private final int numClass;
+    private final byte[] columnTypes;
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer[] columns;
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer results;
+
+    public MappedDataset(int numRow, int numClass, byte[] columnTypes, ByteBuffer[] columns, ByteBuffer results) {
+        this.numRow = numRow;
+        this.numFeature = columnTypes.length;
+        this.numClass = numClass;
+        this.columnTypes = columnTypes;
+        this.columns = columns;
+        this.results = results;
+    }
+
+    /**
+     * Method returns number of bytes per value for column type
+     *
+     * @param columnType
+     * @return
+     */
+    public static int typeSize(byte columnType) {
+        return columnType == FLOAT32 ? Float.BYTES : Double.BYTES;
+    }
+
+    @Override
+    public double get(int row, int col) {
+        if (columnTypes[col] == FLOAT32) {
+            return columns[col].getFloat(row << 2);
+        }
+        return columns[col].getDouble(row << 3);
+    }
+
+    @Override
+    public void set(int row, int col, double value) {
+        if (columnTypes[col] == FLOAT32) {
+            columns[col].putFloat(row << 2, (float) value);
+        } else {
+            columns[col].putDouble(row << 3, value);
+        }
+    }
+
+    @Override
+    public int getResult(int row) {
+        return results.getInt(row << 2);
+    }
+
+    @Override
+    public void setResult(int row, int result) {
+        results.putInt(row << 2, result);
+    }
+
+    /**
+     * Method copies column col into buffer (length >= numRow) with bulk reads
+     *
+     * @param col
+     * @param buffer
+     */
+    public void getColumn(int col, double[] buffer) {
+        ByteBuffer column = columns[col];
+        if (columnTypes[col] == FLOAT32) {
+            for (int row = 0; row < numRow; row++) {
+                buffer[row] = column.getFloat(row << 2);
+            }
+        } else {
+            column.duplicate().order(column.order()).asDoubleBuffer().get(buffer, 0, numRow);
+        }
+    }
+
+    @Override
+    public int[] getResults() {
+        int[] copy = new int[numRow];
+        results.duplicate().order(results.order()).asIntBuffer().get(copy);
+        return copy;
+    }
+}
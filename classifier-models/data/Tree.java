@@ -1,10 +1,12 @@
 package com.barnwaldo.classifiers.data;
 
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Getter
 @Setter
+@NoArgsConstructor	// for reading models from JSON
 public class Tree {
 	private int id;					// tree id 
 	private boolean terminal;			// True = terminal or leaf node
@@ -15,7 +17,7 @@ public class Tree {
 	private int rowSplit;				// row split index
 	private int colSplit;				// column split index
 	private double splitValue;			// value at split
-	private Continuous[] data;
+	private double value;				// leaf output (boosted tree) or path length (isolation tree)
 	
 	public Tree(int id) {
 		this.id = id;
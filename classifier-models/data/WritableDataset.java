@@ -0,0 +1,16 @@
+package com.barnwaldo.classifiers.data;
+
+/**
+ * Dataset whose values and results can be filled in place, e.g. by streaming
+ * CSV ingest -- rows are independent so disjoint rows may be filled by
+ * different threads
+ *
+ * @author barnwaldo
+ *
+ */
+public interface WritableDataset extends Dataset {
+
+    void set(int row, int col, double value);
+
+    void setResult(int row, int result);
+}
@@ -0,0 +1,107 @@
+package com.barnwaldo.classifiers.model;
+
+/**
+ * Ball tree -- every node keeps the centroid of its points and the radius of
+ * the ball around it holding them all, a subtree is skipped when the query is
+ * farther from the ball than the current k-th nearest distance
+ *
+ * Nodes are split on the direction between two far apart points rather than
+ * on one feature and bounds use all features at once, so pruning degrades
+ * more slowly with the number of features than in KdTree
+ *
+ * @author barnwaldo
+ *
+ */
+public class BallTree extends SpatialIndex {
+
+    private final double[] centroid;    // row major, numFeature values per node
+    private final double[] radius;
+
+    /**
+     * Builds ball tree over points -- points and labels are reordered in place
+     *
+     * @param points row major, numFeature values per point
+     * @param labels
+     * @param numFeature
+     * @param leafSize
+     */
+    public BallTree(double[] points, int[] labels, int numFeature, int leafSize) {
+        super(points, labels, numFeature, leafSize, true);
+        int numNodes = getNumNodes();
+        centroid = new double[numNodes * numFeature];
+        radius = new double[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            int offset = node * numFeature;
+            for (int i = start[node]; i < end[node]; i++) {
+                for (int j = 0; j < numFeature; j++) {
+                    centroid[offset + j] += points[i * numFeature + j];
+                }
+            }
+            int size = end[node] - start[node];
+            for (int j = 0; j < numFeature; j++) {
+                centroid[offset + j] /= size;
+            }
+            double r = 0.0;
+            for (int i = start[node]; i < end[node]; i++) {
+                double d = 0.0;
+                for (int j = 0; j < numFeature; j++) {
+                    double diff = points[i * numFeature + j] - centroid[offset + j];
+                    d += diff * diff;
+                }
+                r = Math.max(r, d);
+            }
+            radius[node] = Math.sqrt(r);
+        }
+    }
+
+    @Override
+    public void search(double[] query, double eps, Neighbors out) {
+        double scale = (1.0 + eps) * (1.0 + eps);
+        int[] nodes = nodeStack();
+        double[] bounds = boundStack();
+        int sp = 0;
+        nodes[sp] = 0;
+        bounds[sp++] = lowerBound(query, 0);
+        while (sp > 0) {
+            sp--;
+            int node = nodes[sp];
+            if (bounds[sp] * scale >= out.worst()) {
+                continue;
+            }
+            if (splitFeature[node] < 0) {
+                scanLeaf(node, query, out);
+                continue;
+            }
+            // push farther child first so the nearer one is searched first
+            int left = node + 1;
+            double leftBound = lowerBound(query, left);
+            double rightBound = lowerBound(query, right[node]);
+            if (leftBound <= rightBound) {
+                nodes[sp] = right[node];
+                bounds[sp++] = rightBound;
+                nodes[sp] = left;
+                bounds[sp++] = leftBound;
+            } else {
+                nodes[sp] = left;
+                bounds[sp++] = leftBound;
+                nodes[sp] = right[node];
+                bounds[sp++] = rightBound;
+            }
+        }
+    }
+
+    /**
+     * Helper method returns lower bound of squared distance from query to any
+     * point in ball of node
+     */
+    private double lowerBound(double[] query, int node) {
+        int offset = node * numFeature;
+        double d = 0.0;
+        for (int j = 0; j < numFeature; j++) {
+            double diff = query[j] - centroid[offset + j];
+            d += diff * diff;
+        }
+        double gap = Math.sqrt(d) - radius[node];
+        return gap > 0.0 ? gap * gap : 0.0;
+    }
+}
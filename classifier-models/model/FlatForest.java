@@ -0,0 +1,209 @@
+package com.barnwaldo.classifiers.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.Tree;
+
+import lombok.Getter;
+
+/**
+ * Compact (immutable) forest for scoring -- all nodes of all trees in flat
+ * primitive arrays instead of Tree objects
+ *
+ * (1) nodes of each tree are stored in preorder so the left child of node n is
+ * n + 1 and only the right child index is kept
+ *
+ * (2) feature[n] < 0 marks a leaf -- value[n] is the split value of an inner
+ * node and the classId (vote) or output (sum) of a leaf
+ *
+ * (3) predict walks every tree from root[t] and returns the majority vote
+ * (ties go to the lower classId, as in RandomForest)
+ *
+ * (4) sum adds the leaf outputs of all trees instead, tree t to score
+ * t % numOutput (boosted trees, one tree per output and round)
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class FlatForest {
+
+    private final int numFeature;
+    private final int numClass;
+    private final int[] root;           // first node of each tree
+    private final int[] feature;        // split feature, -1 for leaf
+    private final double[] value;       // split value or leaf classId
+    private final int[] right;          // right child (left child is n + 1)
+    private final ThreadLocal<int[]> votes;
+
+    public FlatForest(int numFeature, int numClass, int[] root, int[] feature, double[] value, int[] right) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.root = root;
+        this.feature = feature;
+        this.value = value;
+        this.right = right;
+        this.votes = ThreadLocal.withInitial(() -> new int[numClass]);
+    }
+
+    /**
+     * Method compiles the Tree objects of a random forest model
+     *
+     * @param model
+     * @return
+     */
+    public static FlatForest fromModel(RFModel model) {
+        return fromTrees(model.getTrees(), model.getRootTreeId(), model.getNumFeature(), model.getNumClass(), false);
+    }
+
+    /**
+     * Method compiles Tree objects -- leaves hold the Tree value (leafValues)
+     * or the Tree classifier
+     *
+     * @param trees
+     * @param rootTreeId
+     * @param numFeature
+     * @param numClass
+     * @param leafValues
+     * @return
+     */
+    public static FlatForest fromTrees(Tree[] trees, int[] rootTreeId, int numFeature, int numClass,
+            boolean leafValues) {
+        int numTree = rootTreeId.length;
+        int numNodes = 0;
+        for (int t = 0; t < numTree; t++) {
+            numNodes += countNodes(trees, rootTreeId[t]);
+        }
+        int[] root = new int[numTree];
+        int[] feature = new int[numNodes];
+        double[] value = new double[numNodes];
+        int[] right = new int[numNodes];
+        Deque<int[]> stack = new ArrayDeque<>();    // {treeId, parent node waiting for right child or -1}
+        int n = 0;
+        for (int t = 0; t < numTree; t++) {
+            root[t] = n;
+            stack.push(new int[]{rootTreeId[t], -1});
+            while (!stack.isEmpty()) {
+                int[] entry = stack.pop();
+                Tree tree = trees[entry[0]];
+                if (entry[1] >= 0) {
+                    right[entry[1]] = n;
+                }
+                if (tree.isTerminal()) {
+                    feature[n] = -1;
+                    value[n] = leafValues ? tree.getValue() : tree.getClassifier();
+                } else {
+                    feature[n] = tree.getColSplit();
+                    value[n] = tree.getSplitValue();
+                    // right subtree is placed after the whole left subtree
+                    stack.push(new int[]{tree.getRightTreeId(), n});
+                    stack.push(new int[]{tree.getLeftTreeId(), -1});
+                }
+                n++;
+            }
+        }
+        return new FlatForest(numFeature, numClass, root, feature, value, right);
+    }
+
+    private static int countNodes(Tree[] trees, int rootTreeId) {
+        int count = 0;
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(rootTreeId);
+        while (!stack.isEmpty()) {
+            Tree tree = trees[stack.pop()];
+            count++;
+            if (!tree.isTerminal()) {
+                stack.push(tree.getLeftTreeId());
+                stack.push(tree.getRightTreeId());
+            }
+        }
+        return count;
+    }
+
+    public int getNumTree() {
+        return root.length;
+    }
+
+    /**
+     * Method returns leaf node reached in tree t for row of features
+     *
+     * @param t
+     * @param row
+     * @return
+     */
+    public int leaf(int t, double[] row) {
+        int n = root[t];
+        while (feature[n] >= 0) {
+            n = row[feature[n]] < value[n] ? n + 1 : right[n];
+        }
+        return n;
+    }
+
+    /**
+     * Method returns majority vote classId of all trees for row of features
+     *
+     * @param row
+     * @return
+     */
+    public int predict(double[] row) {
+        int[] ctr = votes.get();
+        Arrays.fill(ctr, 0);
+        for (int t = 0; t < root.length; t++) {
+            ctr[(int) value[leaf(t, row)]]++;
+        }
+        int maxCtrIndex = 0;
+        for (int i = 1; i < numClass; i++) {
+            if (ctr[i] > ctr[maxCtrIndex]) {
+                maxCtrIndex = i;
+            }
+        }
+        return maxCtrIndex;
+    }
+
+    /**
+     * Method writes fraction of tree votes for each classId to out
+     *
+     * @param row
+     * @param out
+     */
+    public void predictProba(double[] row, double[] out) {
+        Arrays.fill(out, 0, numClass, 0.0);
+        for (int t = 0; t < root.length; t++) {
+            out[(int) value[leaf(t, row)]] += 1.0;
+        }
+        for (int i = 0; i < numClass; i++) {
+            out[i] /= root.length;
+        }
+    }
+
+    /**
+     * Method adds leaf outputs of all trees to scores -- tree t adds to
+     * out[t % numOutput]
+     *
+     * @param row
+     * @param out
+     * @param numOutput
+     */
+    public void sum(double[] row, double[] out, int numOutput) {
+        for (int t = 0; t < root.length; t++) {
+            out[t % numOutput] += value[leaf(t, row)];
+        }
+    }
+
+    /**
+     * Method writes predicted classId of each row of data to out
+     *
+     * @param data
+     * @param out
+     */
+    public void predictBatch(Dataset data, int[] out) {
+        double[] row = new double[numFeature];
+        for (int n = 0; n < data.getNumRow(); n++) {
+            data.getRow(n, row);
+            out[n] = predict(row);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.barnwaldo.classifiers.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+
+import com.barnwaldo.classifiers.data.Tree;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GBModel {
+
+    private int numFeature;
+    private int numClass;
+    private int numOutput;              // 1 for two classes (logistic), numClass otherwise (softmax)
+    private double learningRate;
+    private String[] headers;
+    private double[] baseScore;         // initial score per output
+    private int[] rootTreeId;           // tree t adds to output t % numOutput
+    private Tree[] trees;
+    @JsonIgnore
+    private volatile FlatForest forest;  // compact scoring form (compiled from trees or read by ModelIO)
+
+    public GBModel(int numFeature, int numClass, double learningRate) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.numOutput = numClass == 2 ? 1 : numClass;
+        this.learningRate = learningRate;
+        this.baseScore = new double[numOutput];
+    }
+
+    /**
+     * Method returns compact forest (leaf outputs) for scoring -- compiled from
+     * trees on first use
+     *
+     * @return
+     */
+    @JsonIgnore
+    public FlatForest getForest() {
+        FlatForest current = forest;
+        if (current == null) {
+            current = FlatForest.fromTrees(trees, rootTreeId, numFeature, numClass, true);
+            forest = current;
+        }
+        return current;
+    }
+
+    /**
+     * Method writes raw scores (log odds for two classes, logits otherwise) of
+     * features to out (numOutput)
+     *
+     * @param feature
+     * @param out
+     */
+    public void scores(double[] feature, double[] out) {
+        System.arraycopy(baseScore, 0, out, 0, numOutput);
+        getForest().sum(feature, out, numOutput);
+    }
+
+    @Override
+    public String toString() {
+        ObjectMapper mapper = new ObjectMapper();
+
+        String jsonString = "";
+        try {
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            jsonString = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            System.out.println(e.getMessage());
+        }
+        return jsonString;
+    }
+}
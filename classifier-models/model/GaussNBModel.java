@@ -20,6 +20,8 @@ public class GaussNBModel {
     private double[] priors;		// prior probabilities from training set (per class)
     private double[][] means;		// means from training set (per feature per class)
     private double[][] stdDevs;		// stdDevs from training set (per feature per class)
+    private long[] counts;		// samples per class (null in models saved before counts were kept)
+    private double[][] m2;		// sum of squared deviations from mean (per feature per class)
 
     public GaussNBModel(int numFeature, int numClass) {
         this.numFeature = numFeature;
@@ -27,6 +29,8 @@ public class GaussNBModel {
         this.priors = new double[numClass];
         this.means = new double[numFeature][numClass];
         this.stdDevs = new double[numFeature][numClass];
+        this.counts = new long[numClass];
+        this.m2 = new double[numFeature][numClass];
     }
 
     @Override
@@ -0,0 +1,146 @@
+package com.barnwaldo.classifiers.model;
+
+import com.barnwaldo.classifiers.data.Dataset;
+
+import lombok.Getter;
+
+/**
+ * Compiled (immutable) scorer for a GaussNBModel -- all scoring is done in log
+ * space from tables precomputed per class
+ *
+ * log p(classId | x) ~ logNorm[c] - sum over features of (x - mean)^2 * halfPrecision
+ *
+ * where logNorm[c] = log prior - sum of log(stdDev * sqrt(2 pi)) and
+ * halfPrecision = 1 / (2 stdDev^2). Scoring a row is one multiply-add loop per
+ * class with no allocation and no exp, log or sqrt calls
+ *
+ * Variances are floored at VAR_SMOOTHING times the largest feature variance so
+ * that constant features do not produce infinite densities
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class GaussNBScorer {
+
+    public static final double VAR_SMOOTHING = 1.0e-9;
+
+    private final int numFeature;
+    private final int numClass;
+    private final double[] logNorm;         // per class
+    private final double[] means;           // [classId * numFeature + feature]
+    private final double[] halfPrecision;   // [classId * numFeature + feature]
+
+    public GaussNBScorer(GaussNBModel model) {
+        this.numFeature = model.getNumFeature();
+        this.numClass = model.getNumClass();
+        this.logNorm = new double[numClass];
+        this.means = new double[numClass * numFeature];
+        this.halfPrecision = new double[numClass * numFeature];
+
+        double maxVar = 0.0;
+        for (int i = 0; i < numFeature; i++) {
+            for (int c = 0; c < numClass; c++) {
+                maxVar = Math.max(maxVar, model.getStdDevs()[i][c] * model.getStdDevs()[i][c]);
+            }
+        }
+        double epsilon = VAR_SMOOTHING * Math.max(maxVar, 1.0e-300);
+        double logSqrtTwoPi = 0.5 * Math.log(2.0 * Math.PI);
+        for (int c = 0; c < numClass; c++) {
+            double norm = Math.log(model.getPriors()[c]);
+            for (int i = 0; i < numFeature; i++) {
+                double stdDev = model.getStdDevs()[i][c];
+                double var = stdDev * stdDev + epsilon;
+                means[c * numFeature + i] = model.getMeans()[i][c];
+                halfPrecision[c * numFeature + i] = 1.0 / (2.0 * var);
+                norm -= 0.5 * Math.log(var) + logSqrtTwoPi;
+            }
+            logNorm[c] = norm;
+        }
+    }
+
+    /**
+     * Method returns log joint likelihood (unnormalized log posterior) of
+     * classId for feature row
+     *
+     * @param feature
+     * @param classId
+     * @return
+     */
+    public double logPosterior(double[] feature, int classId) {
+        int offset = classId * numFeature;
+        double sum = 0.0;
+        for (int i = 0; i < numFeature; i++) {
+            double d = feature[i] - means[offset + i];
+            sum += d * d * halfPrecision[offset + i];
+        }
+        return logNorm[classId] - sum;
+    }
+
+    /**
+     * Method writes log posteriors (unnormalized) of all classes to out
+     *
+     * @param feature
+     * @param out
+     */
+    public void logPosteriors(double[] feature, double[] out) {
+        for (int c = 0; c < numClass; c++) {
+            out[c] = logPosterior(feature, c);
+        }
+    }
+
+    /**
+     * Method writes (normalized) class probabilities to out
+     *
+     * @param feature
+     * @param out
+     */
+    public void predictProba(double[] feature, double[] out) {
+        logPosteriors(feature, out);
+        double max = out[0];
+        for (int c = 1; c < numClass; c++) {
+            max = Math.max(max, out[c]);
+        }
+        double sum = 0.0;
+        for (int c = 0; c < numClass; c++) {
+            out[c] = Math.exp(out[c] - max);
+            sum += out[c];
+        }
+        for (int c = 0; c < numClass; c++) {
+            out[c] /= sum;
+        }
+    }
+
+    /**
+     * Method returns classId with largest posterior for feature row
+     *
+     * @param feature
+     * @return
+     */
+    public int predict(double[] feature) {
+        int maxClassId = 0;
+        double maxScore = logPosterior(feature, 0);
+        for (int c = 1; c < numClass; c++) {
+            double score = logPosterior(feature, c);
+            if (score > maxScore) {
+                maxScore = score;
+                maxClassId = c;
+            }
+        }
+        return maxClassId;
+    }
+
+    /**
+     * Method writes predicted classId of each row of data to out
+     *
+     * @param data
+     * @param out
+     */
+    public void predictBatch(Dataset data, int[] out) {
+        double[] feature = new double[numFeature];
+        for (int row = 0; row < data.getNumRow(); row++) {
+            data.getRow(row, feature);
+            out[row] = predict(feature);
+        }
+    }
+}
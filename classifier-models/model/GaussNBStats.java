@@ -0,0 +1,157 @@
+package com.barnwaldo.classifiers.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Sufficient statistics for Gaussian Naive Bayes -- sample count per class and
+ * running mean and sum of squared deviations (m2) per feature per class
+ *
+ * (1) add updates statistics one sample at a time (Welford)
+ *
+ * (2) merge combines statistics of disjoint samples (Chan et al.) so chunks
+ * can be fit in parallel and statistics from other threads, nodes or Kafka
+ * partitions can be combined
+ *
+ * (3) updateModel writes priors, means and (sample) stdDevs to GaussNBModel,
+ * with counts and m2 so fromModel can restore the statistics of a saved model
+ * and training can continue from it
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GaussNBStats {
+
+    private int numFeature;
+    private int numClass;
+    private long[] counts;          // samples per class
+    private double[][] means;       // running means (per feature per class)
+    private double[][] m2;          // sum of squared deviations from mean (per feature per class)
+
+    public GaussNBStats(int numFeature, int numClass) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.counts = new long[numClass];
+        this.means = new double[numFeature][numClass];
+        this.m2 = new double[numFeature][numClass];
+    }
+
+    /**
+     * Method returns statistics of a fit model -- null if the model has no
+     * counts (saved before counts were kept)
+     *
+     * @param model
+     * @return
+     */
+    public static GaussNBStats fromModel(GaussNBModel model) {
+        if (model.getCounts() == null || model.getM2() == null) {
+            return null;
+        }
+        GaussNBStats stats = new GaussNBStats(model.getNumFeature(), model.getNumClass());
+        System.arraycopy(model.getCounts(), 0, stats.counts, 0, stats.numClass);
+        for (int i = 0; i < stats.numFeature; i++) {
+            System.arraycopy(model.getMeans()[i], 0, stats.means[i], 0, stats.numClass);
+            System.arraycopy(model.getM2()[i], 0, stats.m2[i], 0, stats.numClass);
+        }
+        return stats;
+    }
+
+    /**
+     * Method adds one sample to statistics
+     *
+     * @param feature
+     * @param classId
+     */
+    public void add(double[] feature, int classId) {
+        long n = ++counts[classId];
+        for (int i = 0; i < numFeature; i++) {
+            double delta = feature[i] - means[i][classId];
+            means[i][classId] += delta / n;
+            m2[i][classId] += delta * (feature[i] - means[i][classId]);
+        }
+    }
+
+    /**
+     * Method merges statistics of another (disjoint) sample into this one
+     *
+     * @param other
+     */
+    public void merge(GaussNBStats other) {
+        for (int classId = 0; classId < numClass; classId++) {
+            long nb = other.counts[classId];
+            if (nb == 0) {
+                continue;
+            }
+            long na = counts[classId];
+            long n = na + nb;
+            for (int i = 0; i < numFeature; i++) {
+                double delta = other.means[i][classId] - means[i][classId];
+                means[i][classId] += delta * nb / n;
+                m2[i][classId] += other.m2[i][classId] + delta * delta * ((double) na * nb / n);
+            }
+            counts[classId] = n;
+        }
+    }
+
+    /**
+     * Method returns total number of samples
+     *
+     * @return
+     */
+    public long total() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Method writes priors, means and stdDevs (with counts and m2) from
+     * statistics to model
+     *
+     * @param model
+     */
+    public void updateModel(GaussNBModel model) {
+        long total = total();
+        if (model.getCounts() == null || model.getM2() == null) {
+            model.setCounts(new long[numClass]);
+            model.setM2(new double[numFeature][numClass]);
+        }
+        System.arraycopy(counts, 0, model.getCounts(), 0, numClass);
+        for (int i = 0; i < numFeature; i++) {
+            System.arraycopy(m2[i], 0, model.getM2()[i], 0, numClass);
+        }
+        for (int classId = 0; classId < numClass; classId++) {
+            long n = counts[classId];
+            model.getPriors()[classId] = total == 0 ? 0.0 : (double) n / total;
+            for (int i = 0; i < numFeature; i++) {
+                model.getMeans()[i][classId] = means[i][classId];
+                model.getStdDevs()[i][classId] = n > 1 ? Math.sqrt(m2[i][classId] / (n - 1)) : 0.0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        ObjectMapper mapper = new ObjectMapper();
+
+        String jsonString = "";
+        try {
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            jsonString = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            System.out.println(e.getMessage());
+        }
+        return jsonString;
+    }
+}
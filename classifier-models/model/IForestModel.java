@@ -0,0 +1,102 @@
+package com.barnwaldo.classifiers.model;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+
+import com.barnwaldo.classifiers.data.Tree;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IForestModel {
+
+    private int numFeature;
+    private int numClass;               // 2 -- classId 1 = anomaly
+    private int sampleSize;             // rows per tree
+    private double threshold;           // anomaly score at or above which a row is an anomaly
+    private String[] headers;
+    private int[] rootTreeId;
+    private Tree[] trees;               // leaf value = path length (edges + c(leaf size))
+    @JsonIgnore
+    private volatile FlatForest forest;  // compact scoring form (compiled from trees or read by ModelIO)
+
+    public IForestModel(int numFeature, int sampleSize, double threshold) {
+        this.numFeature = numFeature;
+        this.numClass = 2;
+        this.sampleSize = sampleSize;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Method returns compact forest (leaf path lengths) for scoring -- compiled
+     * from trees on first use
+     *
+     * @return
+     */
+    @JsonIgnore
+    public FlatForest getForest() {
+        FlatForest current = forest;
+        if (current == null) {
+            current = FlatForest.fromTrees(trees, rootTreeId, numFeature, numClass, true);
+            forest = current;
+        }
+        return current;
+    }
+
+    /**
+     * Method returns anomaly score 2^(-E(h(x)) / c(sampleSize)) of features --
+     * near 1 for anomalies, well below 0.5 for normal rows (no allocation)
+     *
+     * @param feature
+     * @return
+     */
+    public double score(double[] feature) {
+        FlatForest f = getForest();
+        double[] value = f.getValue();
+        int numTree = f.getNumTree();
+        double pathLength = 0.0;
+        for (int t = 0; t < numTree; t++) {
+            pathLength += value[f.leaf(t, feature)];
+        }
+        return Math.pow(2.0, -pathLength / numTree / averagePathLength(sampleSize));
+    }
+
+    /**
+     * Method returns average path length of an unsuccessful search in a binary
+     * search tree of n rows -- c(n), used to normalize path lengths and to
+     * account for the rows left in a leaf
+     *
+     * @param n
+     * @return
+     */
+    public static double averagePathLength(int n) {
+        if (n <= 1) {
+            return 0.0;
+        }
+        if (n == 2) {
+            return 1.0;
+        }
+        return 2.0 * (Math.log(n - 1.0) + 0.5772156649015329) - 2.0 * (n - 1.0) / n;
+    }
+
+    @Override
+    public String toString() {
+        ObjectMapper mapper = new ObjectMapper();
+
+        String jsonString = "";
+        try {
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            jsonString = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            System.out.println(e.getMessage());
+        }
+        return jsonString;
+    }
+}
@@ -0,0 +1,55 @@
+package com.barnwaldo.classifiers.model;
+
+/**
+ * k-d tree -- nodes split at the median of one feature, a subtree is skipped
+ * when the distance from the query to its splitting plane alone exceeds the
+ * current k-th nearest distance
+ *
+ * Effective for few (intrinsic) dimensions -- as they grow fewer subtrees
+ * can be skipped and BallTree does better
+ *
+ * @author barnwaldo
+ *
+ */
+public class KdTree extends SpatialIndex {
+
+    /**
+     * Builds k-d tree over points -- points and labels are reordered in place
+     *
+     * @param points row major, numFeature values per point
+     * @param labels
+     * @param numFeature
+     * @param leafSize
+     */
+    public KdTree(double[] points, int[] labels, int numFeature, int leafSize) {
+        super(points, labels, numFeature, leafSize);
+    }
+
+    @Override
+    public void search(double[] query, double eps, Neighbors out) {
+        double scale = (1.0 + eps) * (1.0 + eps);
+        int[] nodes = nodeStack();
+        double[] bounds = boundStack();
+        int sp = 0;
+        nodes[sp] = 0;
+        bounds[sp++] = 0.0;
+        while (sp > 0) {
+            sp--;
+            int node = nodes[sp];
+            double bound = bounds[sp];  // lower bound of squared distance to any point of node
+            if (bound * scale >= out.worst()) {
+                continue;
+            }
+            // descend to the leaf on the query side, leaving the far sides for later
+            while (splitFeature[node] >= 0) {
+                double diff = query[splitFeature[node]] - splitValue[node];
+                int near = diff < 0.0 ? node + 1 : right[node];
+                int far = diff < 0.0 ? right[node] : node + 1;
+                nodes[sp] = far;
+                bounds[sp++] = Math.max(bound, diff * diff);
+                node = near;
+            }
+            scanLeaf(node, query, out);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.barnwaldo.classifiers.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.NoArgsConstructor;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class KnnModel {
+
+    /**
+     * Search structure built over the training points
+     */
+    public enum IndexType {
+        KD_TREE, BALL_TREE
+    }
+
+    private int numFeature;
+    private int numClass;
+    private int k;                      // neighbors per query
+    private double eps;                 // approximate search -- neighbors within (1 + eps) of exact distances
+    private boolean weighted;           // votes weighted by 1 / distance
+    private int leafSize;               // max points per leaf of index
+    private IndexType indexType;
+    private String[] headers;
+    private double[] points;            // training points row major (in index node order once index is built)
+    private int[] labels;               // classId of each training point
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private volatile SpatialIndex index; // built from points on first use
+
+    public KnnModel(int numFeature, int numClass, int k) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.k = k;
+    }
+
+    /**
+     * Method returns search index over points -- built on first use, which
+     * reorders points and labels in place
+     *
+     * @return
+     */
+    @JsonIgnore
+    public SpatialIndex getIndex() {
+        SpatialIndex current = index;
+        if (current == null) {
+            synchronized (this) {
+                current = index;
+                if (current == null) {
+                    current = indexType == IndexType.BALL_TREE
+                            ? new BallTree(points, labels, numFeature, leafSize)
+                            : new KdTree(points, labels, numFeature, leafSize);
+                    index = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public void setPoints(double[] points) {
+        this.points = points;
+        index = null;
+    }
+
+    public void setLabels(int[] labels) {
+        this.labels = labels;
+        index = null;
+    }
+
+    @Override
+    public String toString() {
+        ObjectMapper mapper = new ObjectMapper();
+
+        String jsonString = "";
+        try {
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            jsonString = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            System.out.println(e.getMessage());
+        }
+        return jsonString;
+    }
+}
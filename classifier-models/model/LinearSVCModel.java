@@ -0,0 +1,80 @@
+package com.barnwaldo.classifiers.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LinearSVCModel {
+
+    private int numFeature;
+    private int numClass;
+    private double C;					// penalty for margin violations
+    private double bias;				// value of constant (bias) feature, 0 = no bias term
+    private String[] headers;
+    private double[][] w;				// one-vs-rest weights [class][feature], bias weight last
+
+    public LinearSVCModel(int numFeature, int numClass, double C, double bias) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.C = C;
+        this.bias = bias;
+        w = new double[numClass][numFeature + 1];
+    }
+
+    /**
+     * Method returns decision value of classId for features
+     *
+     * @param feature
+     * @param classId
+     * @return
+     */
+    public double decisionValue(double[] feature, int classId) {
+        double[] wc = w[classId];
+        double sum = wc[numFeature] * bias;
+        for (int i = 0; i < numFeature; i++) {
+            sum += wc[i] * feature[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Method returns classId with largest decision value for features
+     *
+     * @param feature
+     * @return
+     */
+    public int predict(double[] feature) {
+        int maxClassId = 0;
+        double maxValue = decisionValue(feature, 0);
+        for (int classId = 1; classId < numClass; classId++) {
+            double value = decisionValue(feature, classId);
+            if (value > maxValue) {
+                maxValue = value;
+                maxClassId = classId;
+            }
+        }
+        return maxClassId;
+    }
+
+    @Override
+    public String toString() {
+        ObjectMapper mapper = new ObjectMapper();
+
+        String jsonString = "";
+        try {
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            jsonString = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(this);
+        } catch (JsonProcessingException e) {
+            System.out.println(e.getMessage());
+        }
+        return jsonString;
+    }
+}
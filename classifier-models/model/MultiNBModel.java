@@ -1,6 +1,8 @@
 package com.barnwaldo.classifiers.model;
 
 import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.utils.Discretizer;
+import com.barnwaldo.classifiers.utils.QuantileSketch;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -9,6 +11,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.Arrays;
 import java.util.List;
 
 @Getter
@@ -23,6 +26,8 @@ public class MultiNBModel {
     private int[] numLevel; // number of levels for each feature
     private double[] priors; // prior probabilities from training set (per class)
     private double[][][] frequency; // frequency (probability) for each feature for each class for each level
+    private long[] classCount; // training samples per class
+    private long[][] count; // samples per feature per [level * numClass + classId]
     private double[][] threshold; // thresholds for each level for each feature for continuous data
 
     public MultiNBModel(int numFeature, int numClass, int[] numLevel) {
@@ -32,11 +37,93 @@ public class MultiNBModel {
         this.priors = new double[numClass];
         this.frequency = new double[numFeature][numClass][];
         this.threshold = new double[numFeature][];
+        this.classCount = new long[numClass];
+        this.count = new long[numFeature][];
         for (int i = 0; i < numFeature; i++) {
             for (int j = 0; j < numClass; j++) {
                 this.frequency[i][j] = new double[numLevel[i]];
             }
             this.threshold[i] = new double[numLevel[i] + 1];
+            this.count[i] = new long[numLevel[i] * numClass];
+        }
+    }
+
+    /**
+     * Method adds counts for one sample (levels out of range are ignored)
+     *
+     * @param level
+     * @param classId
+     */
+    public void addCounts(int[] level, int classId) {
+        ensureCounts();
+        classCount[classId]++;
+        for (int i = 0; i < numFeature; i++) {
+            if (level[i] >= 0 && level[i] < numLevel[i]) {
+                count[i][level[i] * numClass + classId]++;
+            }
+        }
+    }
+
+    /**
+     * Method adds counts of another model (same features, levels and classes)
+     * to this model, e.g. fit on another chunk, node or Kafka partition --
+     * frequencies must be updated afterwards
+     *
+     * @param other
+     */
+    public void mergeCounts(MultiNBModel other) {
+        ensureCounts();
+        for (int j = 0; j < numClass; j++) {
+            classCount[j] += other.classCount[j];
+        }
+        for (int i = 0; i < numFeature; i++) {
+            for (int k = 0; k < count[i].length; k++) {
+                count[i][k] += other.count[i][k];
+            }
+        }
+    }
+
+    /**
+     * Method clears counts (allocating them for models read from JSON saved
+     * before counts were kept) -- e.g. before a fit from scratch
+     */
+    public void resetCounts() {
+        ensureCounts();
+        Arrays.fill(classCount, 0L);
+        for (long[] c : count) {
+            Arrays.fill(c, 0L);
+        }
+    }
+
+    /**
+     * Helper method to allocate count tables (models read from JSON saved
+     * before counts were kept have none)
+     */
+    private void ensureCounts() {
+        if (classCount == null) {
+            classCount = new long[numClass];
+            count = new long[numFeature][];
+            for (int i = 0; i < numFeature; i++) {
+                count[i] = new long[numLevel[i] * numClass];
+            }
+        }
+    }
+
+    /**
+     * Method updates priors and frequencies (with Laplace smoothing) from counts
+     */
+    public void updateFrequencies() {
+        long total = 0;
+        for (long n : classCount) {
+            total += n;
+        }
+        for (int j = 0; j < numClass; j++) {
+            priors[j] = total == 0 ? 0.0 : (double) classCount[j] / total;
+            for (int i = 0; i < numFeature; i++) {
+                for (int k = 0; k < numLevel[i]; k++) {
+                    frequency[i][j][k] = (double) (count[i][k * numClass + j] + 1) / (classCount[j] + numLevel[i]);
+                }
+            }
         }
     }
 
@@ -58,11 +145,7 @@ public class MultiNBModel {
                 minVal = val;
             }
         }
-        double delta = (maxVal - minVal) / numLevel[featureIndex];
-        threshold[featureIndex][0] = minVal;
-        for (int i = 0; i < numLevel[featureIndex]; i++) {
-            threshold[featureIndex][i + 1] = minVal + (i + 1) * delta;
-        }
+        threshold[featureIndex] = Discretizer.equalWidth(minVal, maxVal, numLevel[featureIndex]).getThreshold();
     }
 
     /**
@@ -83,11 +166,18 @@ public class MultiNBModel {
                 minVal = val;
             }
         }
-        double delta = (maxVal - minVal) / numLevel[featureIndex];
-        threshold[0][featureIndex] = minVal;
-        for (int i = 0; i < numLevel[featureIndex]; i++) {
-            threshold[i + 1][featureIndex] = minVal + (i + 1) * delta;
-        }
+        threshold[featureIndex] = Discretizer.equalWidth(minVal, maxVal, numLevel[featureIndex]).getThreshold();
+    }
+
+    /**
+     * Helper method to find (equal frequency) thresholds from quantiles of a
+     * streaming sketch of feature values
+     *
+     * @param sketch
+     * @param featureIndex
+     */
+    public void findThresholdsFromSketch(QuantileSketch sketch, int featureIndex) {
+        threshold[featureIndex] = Discretizer.quantile(sketch, numLevel[featureIndex]).getThreshold();
     }
 
     @Override
@@ -0,0 +1,224 @@
+package com.barnwaldo.classifiers.model;
+
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.utils.Discretizer;
+
+import lombok.Getter;
+
+/**
+ * Compiled (immutable) scorer for a MultiNBModel -- log priors and log
+ * frequencies are precomputed so scoring a row is numFeature table lookups and
+ * adds per class
+ *
+ * logFrequency[feature][level * numClass + classId] keeps all classes of one
+ * level next to each other so a row is scored feature by feature
+ *
+ * When the model has thresholds, raw continuous values are mapped to levels
+ * with one Discretizer per feature (predictRaw) -- no Category objects needed
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class MultiNBScorer {
+
+    private final int numFeature;
+    private final int numClass;
+    private final int[] numLevel;
+    private final double[] logPriors;
+    private final double[][] logFrequency;
+    private final Discretizer[] discretizer;  // null when model has no thresholds
+    private final ThreadLocal<int[]> levelBuffer;
+
+    public MultiNBScorer(MultiNBModel model) {
+        this.numFeature = model.getNumFeature();
+        this.numClass = model.getNumClass();
+        this.numLevel = model.getNumLevel().clone();
+        this.logPriors = new double[numClass];
+        this.logFrequency = new double[numFeature][];
+        for (int j = 0; j < numClass; j++) {
+            logPriors[j] = Math.log(model.getPriors()[j]);
+        }
+        for (int i = 0; i < numFeature; i++) {
+            logFrequency[i] = new double[numLevel[i] * numClass];
+            for (int k = 0; k < numLevel[i]; k++) {
+                for (int j = 0; j < numClass; j++) {
+                    logFrequency[i][k * numClass + j] = Math.log(model.getFrequency()[i][j][k]);
+                }
+            }
+        }
+        this.discretizer = hasThresholds(model) ? new Discretizer[numFeature] : null;
+        if (discretizer != null) {
+            for (int i = 0; i < numFeature; i++) {
+                discretizer[i] = new Discretizer(model.getThreshold()[i]);
+            }
+        }
+        this.levelBuffer = ThreadLocal.withInitial(() -> new int[numFeature]);
+    }
+
+    /**
+     * Helper method checks that model has fitted thresholds (level edges) for
+     * every feature -- edges of a feature that was constant in training are
+     * all equal and map every value to level 0
+     *
+     * @param model
+     * @return
+     */
+    private static boolean hasThresholds(MultiNBModel model) {
+        if (model.getThreshold() == null) {
+            return false;
+        }
+        for (double[] t : model.getThreshold()) {
+            if (t == null || t.length < 2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method maps raw continuous feature values to levels
+     *
+     * @param value
+     * @param level
+     */
+    public void levels(double[] value, int[] level) {
+        if (discretizer == null) {
+            throw new IllegalStateException("model has no thresholds for continuous features");
+        }
+        for (int i = 0; i < numFeature; i++) {
+            level[i] = discretizer[i].level(value[i]);
+        }
+    }
+
+    /**
+     * Method returns classId with largest posterior for raw continuous feature
+     * values (mapped to levels with model thresholds)
+     *
+     * @param value
+     * @return
+     */
+    public int predictRaw(double[] value) {
+        int[] level = levelBuffer.get();
+        levels(value, level);
+        return predict(level);
+    }
+
+    /**
+     * Method writes log posteriors (unnormalized) of all classes for feature
+     * levels to out -- levels out of range do not contribute
+     *
+     * @param level
+     * @param out
+     */
+    public void logPosteriors(int[] level, double[] out) {
+        System.arraycopy(logPriors, 0, out, 0, numClass);
+        for (int i = 0; i < numFeature; i++) {
+            int l = level[i];
+            if (l >= 0 && l < numLevel[i]) {
+                double[] table = logFrequency[i];
+                int offset = l * numClass;
+                for (int j = 0; j < numClass; j++) {
+                    out[j] += table[offset + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Method returns log posterior (unnormalized) of classId for feature
+     * levels
+     *
+     * @param level
+     * @param classId
+     * @return
+     */
+    public double logPosterior(int[] level, int classId) {
+        double sum = logPriors[classId];
+        for (int i = 0; i < numFeature; i++) {
+            int l = level[i];
+            if (l >= 0 && l < numLevel[i]) {
+                sum += logFrequency[i][l * numClass + classId];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Method returns classId with largest posterior for feature levels
+     *
+     * @param level
+     * @return
+     */
+    public int predict(int[] level) {
+        int maxClassId = 0;
+        double maxScore = logPosterior(level, 0);
+        for (int j = 1; j < numClass; j++) {
+            double score = logPosterior(level, j);
+            if (score > maxScore) {
+                maxScore = score;
+                maxClassId = j;
+            }
+        }
+        return maxClassId;
+    }
+
+    /**
+     * Method returns classId with largest posterior for feature levels held
+     * as doubles (as in a Dataset)
+     *
+     * @param row
+     * @return
+     */
+    public int predict(double[] row) {
+        int[] level = levelBuffer.get();
+        for (int i = 0; i < numFeature; i++) {
+            level[i] = (int) row[i];
+        }
+        return predict(level);
+    }
+
+    /**
+     * Method writes posterior probabilities of all classes for feature levels
+     * held as doubles to out
+     *
+     * @param row
+     * @param out
+     */
+    public void predictProba(double[] row, double[] out) {
+        int[] level = levelBuffer.get();
+        for (int i = 0; i < numFeature; i++) {
+            level[i] = (int) row[i];
+        }
+        logPosteriors(level, out);
+        double max = out[0];
+        for (int j = 1; j < numClass; j++) {
+            max = Math.max(max, out[j]);
+        }
+        double sum = 0.0;
+        for (int j = 0; j < numClass; j++) {
+            out[j] = Math.exp(out[j] - max);
+            sum += out[j];
+        }
+        for (int j = 0; j < numClass; j++) {
+            out[j] /= sum;
+        }
+    }
+
+    /**
+     * Method writes predicted classId of each row of data (feature levels) to
+     * out
+     *
+     * @param data
+     * @param out
+     */
+    public void predictBatch(Dataset data, int[] out) {
+        int[] level = new int[numFeature];
+        for (int row = 0; row < data.getNumRow(); row++) {
+            for (int i = 0; i < numFeature; i++) {
+                level[i] = (int) data.get(row, i);
+            }
+            out[row] = predict(level);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.barnwaldo.classifiers.model;
+
+import lombok.Getter;
+
+/**
+ * Bounded max heap of the k nearest points found so far in a search -- the
+ * farthest of them is at the root so a closer point replaces it in O(log k)
+ *
+ * Distances are squared Euclidean. A Neighbors object is reused for every
+ * query of a thread (reset) so searches do not allocate
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class Neighbors {
+
+    private int k;
+    private int size;
+    private int[] index;
+    private double[] distance;
+
+    public Neighbors(int k) {
+        reset(k);
+    }
+
+    /**
+     * Method empties heap for a new query of k neighbors
+     *
+     * @param k
+     */
+    public void reset(int k) {
+        if (index == null || index.length < k) {
+            index = new int[k];
+            distance = new double[k];
+        }
+        this.k = k;
+        this.size = 0;
+    }
+
+    /**
+     * Method returns squared distance a point must beat to enter the heap
+     *
+     * @return
+     */
+    public double worst() {
+        return size < k ? Double.POSITIVE_INFINITY : distance[0];
+    }
+
+    /**
+     * Method adds point if it is nearer than the farthest of the current k
+     *
+     * @param i
+     * @param d squared distance
+     */
+    public void offer(int i, double d) {
+        if (size < k) {
+            // sift up
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >> 1;
+                if (distance[parent] >= d) {
+                    break;
+                }
+                index[pos] = index[parent];
+                distance[pos] = distance[parent];
+                pos = parent;
+            }
+            index[pos] = i;
+            distance[pos] = d;
+        } else if (d < distance[0]) {
+            // replace root and sift down
+            int pos = 0;
+            while (true) {
+                int child = 2 * pos + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && distance[child + 1] > distance[child]) {
+                    child++;
+                }
+                if (distance[child] <= d) {
+                    break;
+                }
+                index[pos] = index[child];
+                distance[pos] = distance[child];
+                pos = child;
+            }
+            index[pos] = i;
+            distance[pos] = d;
+        }
+    }
+}
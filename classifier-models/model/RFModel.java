@@ -5,6 +5,7 @@ import lombok.Setter;
 import lombok.NoArgsConstructor;
 
 import com.barnwaldo.classifiers.data.Tree;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -22,6 +23,8 @@ public class RFModel {
     private String[] headers;
     private int[] rootTreeId;
     private Tree[] trees;
+    @JsonIgnore
+    private volatile FlatForest forest;  // compact scoring form (compiled from trees or read by ModelIO)
 
     public RFModel(int numFeature, int numClass, int numTree) {
         this.numFeature = numFeature;
@@ -30,6 +33,22 @@ public class RFModel {
         this.rootTreeId = new int[numTree];
     }
 
+    /**
+     * Method returns compact forest for scoring -- compiled from trees on first
+     * use
+     *
+     * @return
+     */
+    @JsonIgnore
+    public FlatForest getForest() {
+        FlatForest current = forest;
+        if (current == null) {
+            current = FlatForest.fromModel(this);
+            forest = current;
+        }
+        return current;
+    }
+
     @Override
     public String toString() {
         ObjectMapper mapper = new ObjectMapper();
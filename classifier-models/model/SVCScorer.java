@@ -0,0 +1,494 @@
+package com.barnwaldo.classifiers.model;
+
+import java.util.Arrays;
+
+import com.barnwaldo.classifiers.data.Dataset;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import lombok.Getter;
+
+/**
+ * Compiled (immutable) scorer for a libSVM classification model -- gives the
+ * same predictions as svm.svm_predict / svm.svm_predict_probability without
+ * building svm_node objects per row
+ *
+ * (1) support vectors are copied to one dense row-major double[] (l x
+ * numFeature) and kernels are evaluated over it in feature order so kernel
+ * values match libSVM exactly
+ *
+ * (2) for the linear kernel the support vectors of each class pair are
+ * collapsed to one weight vector so a row costs one dot product per class pair
+ *
+ * (3) one-vs-one voting (or pairwise coupling of probabilities when the model
+ * has probability estimates) follows libSVM -- per thread scratch buffers make
+ * scoring allocation free
+ *
+ * (4) svm types other than C_SVC / NU_SVC and precomputed kernels fall back to
+ * libSVM with reused node buffers
+ *
+ * (5) with float32 support vectors (or linear weights) are kept as float --
+ * half the memory read per row, kernels are still accumulated in double
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class SVCScorer {
+
+    private static final double MIN_PROB = 1.0e-7;
+
+    private final svm_model svmModel;
+    private final int numFeature;
+    private final int numClass;         // classes in libSVM model (nr_class)
+    private final int numSV;
+    private final int kernelType;
+    private final int degree;
+    private final double gamma;
+    private final double coef0;
+    private final int[] label;
+    private final int[] start;          // first support vector of each class
+    private final int[] count;          // support vectors of each class
+    private final double[][] svCoef;
+    private final double[] rho;
+    private final double[] probA;
+    private final double[] probB;
+    private final double[] sv;          // support vectors, row-major [k * numFeature + f]
+    private final double[] weight;      // linear kernel only, [pair * numFeature + f]
+    private final float[] svFloat;      // float32 copy of sv (sv is then null)
+    private final float[] weightFloat;  // float32 copy of weight (weight is then null)
+    private final boolean compiled;     // false -> fall back to libSVM
+    private final boolean probability;
+    private final ThreadLocal<Scratch> scratch;
+
+    public SVCScorer(SVCModel model) {
+        this(model, false);
+    }
+
+    /**
+     * Compiles model -- with float32 support vectors and linear weights are
+     * stored as float
+     *
+     * @param model
+     * @param float32
+     */
+    public SVCScorer(SVCModel model, boolean float32) {
+        this.svmModel = model.getSvmModel();
+        this.numFeature = model.getNumFeature();
+        svm_parameter param = svmModel.param;
+        this.numClass = svmModel.nr_class;
+        this.numSV = svmModel.l;
+        this.kernelType = param.kernel_type;
+        this.degree = param.degree;
+        this.gamma = param.gamma;
+        this.coef0 = param.coef0;
+        this.label = svmModel.label;
+        this.svCoef = svmModel.sv_coef;
+        this.rho = svmModel.rho;
+        this.probA = svmModel.probA;
+        this.probB = svmModel.probB;
+        this.compiled = (param.svm_type == svm_parameter.C_SVC || param.svm_type == svm_parameter.NU_SVC)
+                && kernelType != svm_parameter.PRECOMPUTED;
+        this.probability = compiled && param.probability == 1 && probA != null && probB != null;
+        this.start = new int[numClass];
+        this.count = compiled ? svmModel.nSV.clone() : new int[numClass];
+        for (int i = 1; i < numClass; i++) {
+            start[i] = start[i - 1] + count[i - 1];
+        }
+        double[] denseSV = compiled ? denseSupportVectors(svmModel, numFeature) : null;
+        double[] linear = compiled && kernelType == svm_parameter.LINEAR ? collapseLinear(denseSV) : null;
+        this.sv = float32 ? null : denseSV;
+        this.weight = float32 ? null : linear;
+        this.svFloat = float32 && linear == null ? toFloat(denseSV) : null;
+        this.weightFloat = float32 ? toFloat(linear) : null;
+        int numPair = numClass * (numClass - 1) / 2;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(numFeature, numSV, numClass, numPair));
+    }
+
+    /**
+     * Helper method copies sparse libSVM support vectors to a dense row-major
+     * matrix (missing features are 0)
+     *
+     * @param svmModel
+     * @param numFeature
+     * @return
+     */
+    private static double[] denseSupportVectors(svm_model svmModel, int numFeature) {
+        double[] dense = new double[svmModel.l * numFeature];
+        for (int k = 0; k < svmModel.l; k++) {
+            for (svm_node node : svmModel.SV[k]) {
+                if (node.index >= 0 && node.index < numFeature) {
+                    dense[k * numFeature + node.index] = node.value;
+                }
+            }
+        }
+        return dense;
+    }
+
+    /**
+     * Helper method collapses support vectors of each class pair (i, j) to the
+     * weight vector w = sum coef * sv of the linear decision function
+     *
+     * @return
+     */
+    private double[] collapseLinear(double[] sv) {
+        double[] w = new double[numClass * (numClass - 1) / 2 * numFeature];
+        int p = 0;
+        for (int i = 0; i < numClass; i++) {
+            for (int j = i + 1; j < numClass; j++) {
+                int offset = p * numFeature;
+                addWeighted(w, offset, sv, svCoef[j - 1], start[i], count[i]);
+                addWeighted(w, offset, sv, svCoef[i], start[j], count[j]);
+                p++;
+            }
+        }
+        return w;
+    }
+
+    private void addWeighted(double[] w, int offset, double[] sv, double[] coef, int first, int num) {
+        for (int k = first; k < first + num; k++) {
+            int row = k * numFeature;
+            for (int f = 0; f < numFeature; f++) {
+                w[offset + f] += coef[k] * sv[row + f];
+            }
+        }
+    }
+
+    private static float[] toFloat(double[] values) {
+        if (values == null) {
+            return null;
+        }
+        float[] out = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            out[i] = (float) values[i];
+        }
+        return out;
+    }
+
+    /**
+     * Method returns predicted label for features -- same as
+     * svm.svm_predict_probability when the model has probability estimates and
+     * svm.svm_predict otherwise
+     *
+     * @param feature
+     * @return
+     */
+    public int predict(double[] feature) {
+        Scratch s = scratch.get();
+        if (!compiled) {
+            return (int) svm.svm_predict(svmModel, s.nodes(feature));
+        }
+        decisionValues(feature, s);
+        if (probability) {
+            probabilities(s);
+            int maxIdx = 0;
+            for (int i = 1; i < numClass; i++) {
+                if (s.prob[i] > s.prob[maxIdx]) {
+                    maxIdx = i;
+                }
+            }
+            return label[maxIdx];
+        }
+        return label[vote(s)];
+    }
+
+    /**
+     * Method writes class probabilities (indexed by label) to out -- model must
+     * have been trained with probability = 1
+     *
+     * @param feature
+     * @param out
+     */
+    public void predictProba(double[] feature, double[] out) {
+        if (!probability) {
+            throw new IllegalStateException("svm model has no probability estimates");
+        }
+        Scratch s = scratch.get();
+        decisionValues(feature, s);
+        probabilities(s);
+        for (int i = 0; i < numClass; i++) {
+            out[label[i]] = s.prob[i];
+        }
+    }
+
+    /**
+     * Method writes predicted label of each row of data to out
+     *
+     * @param data
+     * @param out
+     */
+    public void predictBatch(Dataset data, int[] out) {
+        double[] row = new double[numFeature];
+        for (int n = 0; n < data.getNumRow(); n++) {
+            data.getRow(n, row);
+            out[n] = predict(row);
+        }
+    }
+
+    /**
+     * Helper method computes one-vs-one decision values (libSVM pair order)
+     *
+     * @param x
+     * @param s
+     */
+    private void decisionValues(double[] x, Scratch s) {
+        double[] dec = s.dec;
+        if (weight != null) {
+            int numPair = dec.length;
+            for (int p = 0; p < numPair; p++) {
+                int offset = p * numFeature;
+                double sum = 0.0;
+                for (int f = 0; f < numFeature; f++) {
+                    sum += weight[offset + f] * x[f];
+                }
+                dec[p] = sum - rho[p];
+            }
+            return;
+        }
+        if (weightFloat != null) {
+            int numPair = dec.length;
+            for (int p = 0; p < numPair; p++) {
+                int offset = p * numFeature;
+                double sum = 0.0;
+                for (int f = 0; f < numFeature; f++) {
+                    sum += weightFloat[offset + f] * x[f];
+                }
+                dec[p] = sum - rho[p];
+            }
+            return;
+        }
+        double[] kvalue = s.kvalue;
+        for (int k = 0; k < numSV; k++) {
+            kvalue[k] = kernel(x, k * numFeature);
+        }
+        int p = 0;
+        for (int i = 0; i < numClass; i++) {
+            for (int j = i + 1; j < numClass; j++) {
+                double sum = 0.0;
+                double[] coef1 = svCoef[j - 1];
+                double[] coef2 = svCoef[i];
+                for (int k = start[i]; k < start[i] + count[i]; k++) {
+                    sum += coef1[k] * kvalue[k];
+                }
+                for (int k = start[j]; k < start[j] + count[j]; k++) {
+                    sum += coef2[k] * kvalue[k];
+                }
+                dec[p] = sum - rho[p];
+                p++;
+            }
+        }
+    }
+
+    /**
+     * Helper method evaluates kernel of x and support vector at offset (same
+     * operation order as libSVM)
+     *
+     * @param x
+     * @param offset
+     * @return
+     */
+    private double kernel(double[] x, int offset) {
+        if (kernelType == svm_parameter.RBF) {
+            double sum = 0.0;
+            if (svFloat != null) {
+                for (int f = 0; f < numFeature; f++) {
+                    double d = x[f] - svFloat[offset + f];
+                    sum += d * d;
+                }
+            } else {
+                for (int f = 0; f < numFeature; f++) {
+                    double d = x[f] - sv[offset + f];
+                    sum += d * d;
+                }
+            }
+            return Math.exp(-gamma * sum);
+        }
+        double dot = 0.0;
+        if (svFloat != null) {
+            for (int f = 0; f < numFeature; f++) {
+                dot += x[f] * svFloat[offset + f];
+            }
+        } else {
+            for (int f = 0; f < numFeature; f++) {
+                dot += x[f] * sv[offset + f];
+            }
+        }
+        switch (kernelType) {
+            case svm_parameter.POLY:
+                return powi(gamma * dot + coef0, degree);
+            case svm_parameter.SIGMOID:
+                return Math.tanh(gamma * dot + coef0);
+            default:
+                return dot;
+        }
+    }
+
+    private static double powi(double base, int times) {
+        double tmp = base;
+        double ret = 1.0;
+        for (int t = times; t > 0; t /= 2) {
+            if (t % 2 == 1) {
+                ret *= tmp;
+            }
+            tmp = tmp * tmp;
+        }
+        return ret;
+    }
+
+    /**
+     * Helper method returns index (into label) of class with most one-vs-one
+     * votes -- ties go to the lower index as in libSVM
+     *
+     * @param s
+     * @return
+     */
+    private int vote(Scratch s) {
+        int[] votes = s.vote;
+        Arrays.fill(votes, 0);
+        int p = 0;
+        for (int i = 0; i < numClass; i++) {
+            for (int j = i + 1; j < numClass; j++) {
+                if (s.dec[p++] > 0) {
+                    ++votes[i];
+                } else {
+                    ++votes[j];
+                }
+            }
+        }
+        int maxIdx = 0;
+        for (int i = 1; i < numClass; i++) {
+            if (votes[i] > votes[maxIdx]) {
+                maxIdx = i;
+            }
+        }
+        return maxIdx;
+    }
+
+    /**
+     * Helper method converts decision values to class probabilities (Platt
+     * sigmoid per pair, then pairwise coupling as in libSVM)
+     *
+     * @param s
+     */
+    private void probabilities(Scratch s) {
+        double[][] pairwise = s.pairwise;
+        int p = 0;
+        for (int i = 0; i < numClass; i++) {
+            for (int j = i + 1; j < numClass; j++) {
+                pairwise[i][j] = Math.min(Math.max(sigmoid(s.dec[p], probA[p], probB[p]), MIN_PROB), 1 - MIN_PROB);
+                pairwise[j][i] = 1 - pairwise[i][j];
+                p++;
+            }
+        }
+        if (numClass == 2) {
+            s.prob[0] = pairwise[0][1];
+            s.prob[1] = pairwise[1][0];
+        } else {
+            multiclassProbability(s);
+        }
+    }
+
+    private static double sigmoid(double decision, double a, double b) {
+        double fApB = decision * a + b;
+        if (fApB >= 0) {
+            return Math.exp(-fApB) / (1.0 + Math.exp(-fApB));
+        }
+        return 1.0 / (1 + Math.exp(fApB));
+    }
+
+    /**
+     * Helper method solves pairwise coupling (Wu, Lin and Weng method 2) for
+     * class probabilities -- same iteration as libSVM multiclass_probability
+     *
+     * @param s
+     */
+    private void multiclassProbability(Scratch s) {
+        int k = numClass;
+        double[][] r = s.pairwise;
+        double[][] q = s.q;
+        double[] qp = s.qp;
+        double[] prob = s.prob;
+        int maxIter = Math.max(100, k);
+        double eps = 0.005 / k;
+        for (int t = 0; t < k; t++) {
+            prob[t] = 1.0 / k;
+            q[t][t] = 0;
+            for (int j = 0; j < t; j++) {
+                q[t][t] += r[j][t] * r[j][t];
+                q[t][j] = q[j][t];
+            }
+            for (int j = t + 1; j < k; j++) {
+                q[t][t] += r[j][t] * r[j][t];
+                q[t][j] = -r[j][t] * r[t][j];
+            }
+        }
+        for (int iter = 0; iter < maxIter; iter++) {
+            double pQp = 0;
+            for (int t = 0; t < k; t++) {
+                qp[t] = 0;
+                for (int j = 0; j < k; j++) {
+                    qp[t] += q[t][j] * prob[j];
+                }
+                pQp += prob[t] * qp[t];
+            }
+            double maxError = 0;
+            for (int t = 0; t < k; t++) {
+                double error = Math.abs(qp[t] - pQp);
+                if (error > maxError) {
+                    maxError = error;
+                }
+            }
+            if (maxError < eps) {
+                break;
+            }
+            for (int t = 0; t < k; t++) {
+                double diff = (-qp[t] + pQp) / q[t][t];
+                prob[t] += diff;
+                pQp = (pQp + diff * (diff * q[t][t] + 2 * qp[t])) / (1 + diff) / (1 + diff);
+                for (int j = 0; j < k; j++) {
+                    qp[j] = (qp[j] + diff * q[t][j]) / (1 + diff);
+                    prob[j] /= (1 + diff);
+                }
+            }
+        }
+    }
+
+    /**
+     * Per thread scoring buffers
+     */
+    private static class Scratch {
+
+        final double[] kvalue;
+        final double[] dec;
+        final int[] vote;
+        final double[] prob;
+        final double[] qp;
+        final double[][] pairwise;
+        final double[][] q;
+        final svm_node[] node;
+
+        Scratch(int numFeature, int numSV, int numClass, int numPair) {
+            kvalue = new double[numSV];
+            dec = new double[numPair];
+            vote = new int[numClass];
+            prob = new double[numClass];
+            qp = new double[numClass];
+            pairwise = new double[numClass][numClass];
+            q = new double[numClass][numClass];
+            node = new svm_node[numFeature];
+            for (int i = 0; i < numFeature; i++) {
+                node[i] = new svm_node();
+                node[i].index = i;
+            }
+        }
+
+        svm_node[] nodes(double[] feature) {
+            for (int i = 0; i < node.length; i++) {
+                node[i].value = feature[i];
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.barnwaldo.classifiers.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Space partitioning tree over a set of points for nearest neighbor search --
+ * base of KdTree and BallTree
+ *
+ * (1) points are kept row major in one double[] and reordered (in place) so
+ * the points of every node are contiguous -- a leaf is a scan of one block of
+ * memory
+ *
+ * (2) nodes are split at the median of the feature with the largest spread
+ * until they hold at most leafSize points -- nodes are stored in preorder in
+ * flat arrays (as in FlatForest) so the left child of node n is n + 1 and only
+ * the right child is kept, splitFeature[n] < 0 marks a leaf -- a BallTree
+ * splits on projections instead (see constructor)
+ *
+ * (3) search fills a caller supplied Neighbors heap and uses per thread node
+ * stacks, so queries do not allocate and may run concurrently -- with eps > 0
+ * nodes that cannot hold a point nearer than worst / (1 + eps) are skipped and
+ * each neighbor found is within (1 + eps) of the true k-th nearest distance
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public abstract class SpatialIndex {
+
+    protected final int numFeature;
+    protected final int leafSize;
+    protected final double[] points;        // row major, in node order
+    protected final int[] labels;           // classId of each point, in node order
+    protected final int[] start;            // first point of node
+    protected final int[] end;              // one past last point of node
+    protected final int[] right;            // right child (left child is n + 1)
+    protected final int[] splitFeature;     // feature of largest spread, -1 for leaf
+    protected final double[] splitValue;    // median of split feature (or of projection)
+    protected final int depth;              // depth of deepest node (root = 1)
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<int[]> nodeStack;
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<double[]> boundStack;
+
+    /**
+     * Builds index over points -- points and labels are reordered in place and
+     * kept by the index (not copied)
+     *
+     * @param points row major, numFeature values per point
+     * @param labels
+     * @param numFeature
+     * @param leafSize
+     */
+    protected SpatialIndex(double[] points, int[] labels, int numFeature, int leafSize) {
+        this(points, labels, numFeature, leafSize, false);
+    }
+
+    /**
+     * Builds index over points -- with projectionSplit nodes are split at the
+     * median of the projection on the direction between two far apart points
+     * (approximate principal direction) instead of on one feature
+     *
+     * @param points row major, numFeature values per point
+     * @param labels
+     * @param numFeature
+     * @param leafSize
+     * @param projectionSplit
+     */
+    protected SpatialIndex(double[] points, int[] labels, int numFeature, int leafSize, boolean projectionSplit) {
+        this.numFeature = numFeature;
+        this.leafSize = Math.max(1, leafSize);
+        this.points = points;
+        this.labels = labels;
+        int n = labels.length;
+        int minLeaf = Math.max(1, (this.leafSize + 1) / 2);
+        int maxNodes = 2 * (n / minLeaf) + 1;
+        int[] nodeStart = new int[maxNodes];
+        int[] nodeEnd = new int[maxNodes];
+        int[] nodeRight = new int[maxNodes];
+        int[] nodeFeature = new int[maxNodes];
+        double[] nodeValue = new double[maxNodes];
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) {
+            perm[i] = i;
+        }
+        double[] min = new double[numFeature];
+        double[] max = new double[numFeature];
+        double[] key = new double[n];              // split key of each point
+        double[] direction = new double[numFeature];
+
+        int numNodes = 0;
+        int maxDepth = 0;
+        Deque<int[]> stack = new ArrayDeque<>();    // {start, end, parent waiting for right child or -1, depth}
+        stack.push(new int[]{0, n, -1, 1});
+        while (!stack.isEmpty()) {
+            int[] entry = stack.pop();
+            int node = numNodes++;
+            int lo = entry[0];
+            int hi = entry[1];
+            if (entry[2] >= 0) {
+                nodeRight[entry[2]] = node;
+            }
+            maxDepth = Math.max(maxDepth, entry[3]);
+            nodeStart[node] = lo;
+            nodeEnd[node] = hi;
+            nodeFeature[node] = -1;
+            if (hi - lo <= this.leafSize) {
+                continue;
+            }
+            // split on feature with largest spread
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            for (int i = lo; i < hi; i++) {
+                int offset = perm[i] * numFeature;
+                for (int j = 0; j < numFeature; j++) {
+                    double v = points[offset + j];
+                    if (v < min[j]) {
+                        min[j] = v;
+                    }
+                    if (v > max[j]) {
+                        max[j] = v;
+                    }
+                }
+            }
+            int feature = 0;
+            for (int j = 1; j < numFeature; j++) {
+                if (max[j] - min[j] > max[feature] - min[feature]) {
+                    feature = j;
+                }
+            }
+            if (!(max[feature] > min[feature])) {
+                continue;   // all points equal -- oversized leaf
+            }
+            if (projectionSplit) {
+                projectionKeys(perm, lo, hi, direction, key);
+            } else {
+                for (int i = lo; i < hi; i++) {
+                    key[perm[i]] = points[perm[i] * numFeature + feature];
+                }
+            }
+            int mid = lo + (hi - lo) / 2;
+            select(perm, key, lo, hi, mid);
+            nodeFeature[node] = feature;
+            nodeValue[node] = key[perm[mid]];
+            stack.push(new int[]{mid, hi, node, entry[3] + 1});
+            stack.push(new int[]{lo, mid, -1, entry[3] + 1});
+        }
+        this.start = Arrays.copyOf(nodeStart, numNodes);
+        this.end = Arrays.copyOf(nodeEnd, numNodes);
+        this.right = Arrays.copyOf(nodeRight, numNodes);
+        this.splitFeature = Arrays.copyOf(nodeFeature, numNodes);
+        this.splitValue = Arrays.copyOf(nodeValue, numNodes);
+        this.depth = maxDepth;
+        reorder(perm);
+        // a search holds at most one pending node per level plus the one in hand
+        int stackSize = maxDepth + 2;
+        this.nodeStack = ThreadLocal.withInitial(() -> new int[stackSize]);
+        this.boundStack = ThreadLocal.withInitial(() -> new double[stackSize]);
+    }
+
+    /**
+     * Method finds (approximate if eps > 0) nearest neighbors of query -- out
+     * must have been reset for the number of neighbors wanted
+     *
+     * @param query
+     * @param eps
+     * @param out
+     */
+    public abstract void search(double[] query, double eps, Neighbors out);
+
+    /**
+     * Method returns number of points
+     *
+     * @return
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    public int getNumNodes() {
+        return start.length;
+    }
+
+    protected int[] nodeStack() {
+        return nodeStack.get();
+    }
+
+    protected double[] boundStack() {
+        return boundStack.get();
+    }
+
+    /**
+     * Helper method offers every point of leaf node to out
+     */
+    protected void scanLeaf(int node, double[] query, Neighbors out) {
+        for (int i = start[node]; i < end[node]; i++) {
+            int offset = i * numFeature;
+            double d = 0.0;
+            for (int j = 0; j < numFeature; j++) {
+                double diff = query[j] - points[offset + j];
+                d += diff * diff;
+            }
+            if (d < out.worst()) {
+                out.offer(i, d);
+            }
+        }
+    }
+
+    /**
+     * Helper method writes projection of points perm[lo, hi) on the direction
+     * from a point farthest from the first point to the point farthest from it
+     */
+    private void projectionKeys(int[] perm, int lo, int hi, double[] direction, double[] key) {
+        int a = farthest(perm, lo, hi, perm[lo]);
+        int b = farthest(perm, lo, hi, a);
+        for (int j = 0; j < numFeature; j++) {
+            direction[j] = points[b * numFeature + j] - points[a * numFeature + j];
+        }
+        for (int i = lo; i < hi; i++) {
+            int offset = perm[i] * numFeature;
+            double dot = 0.0;
+            for (int j = 0; j < numFeature; j++) {
+                dot += points[offset + j] * direction[j];
+            }
+            key[perm[i]] = dot;
+        }
+    }
+
+    private int farthest(int[] perm, int lo, int hi, int from) {
+        int best = from;
+        double bestDistance = -1.0;
+        for (int i = lo; i < hi; i++) {
+            double d = 0.0;
+            for (int j = 0; j < numFeature; j++) {
+                double diff = points[perm[i] * numFeature + j] - points[from * numFeature + j];
+                d += diff * diff;
+            }
+            if (d > bestDistance) {
+                bestDistance = d;
+                best = perm[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Helper method partially sorts perm[lo, hi) on key so that the point at
+     * kth has no larger keys before it and no smaller keys after it
+     * (quickselect)
+     */
+    private static void select(int[] perm, double[] key, int lo, int hi, int kth) {
+        hi--;
+        while (hi > lo) {
+            double pivot = key[perm[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (key[perm[i]] < pivot) {
+                    i++;
+                }
+                while (key[perm[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int temp = perm[i];
+                    perm[i] = perm[j];
+                    perm[j] = temp;
+                    i++;
+                    j--;
+                }
+            }
+            if (kth <= j) {
+                hi = j;
+            } else if (kth >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Helper method moves points and labels into node order
+     */
+    private void reorder(int[] perm) {
+        double[] sortedPoints = new double[points.length];
+        int[] sortedLabels = new int[labels.length];
+        for (int i = 0; i < perm.length; i++) {
+            System.arraycopy(points, perm[i] * numFeature, sortedPoints, i * numFeature, numFeature);
+            sortedLabels[i] = labels[perm[i]];
+        }
+        System.arraycopy(sortedPoints, 0, points, 0, points.length);
+        System.arraycopy(sortedLabels, 0, labels, 0, labels.length);
+    }
+}
@@ -0,0 +1,70 @@
+package com.barnwaldo.classifiers.programs;
+
+import com.barnwaldo.classifiers.data.Dataset;
+
+/**
+ * Common scoring interface of the classifier programs so they can be used
+ * interchangeably, e.g. on a stream
+ *
+ * (1) predict scores a single row of features, predictBatch a Dataset into a
+ * caller supplied array -- neither allocates per call once the model is
+ * compiled
+ *
+ * (2) predictProba writes class probabilities (indexed by classId) into a
+ * caller supplied array of numClass -- models without probability estimates
+ * write 1.0 for the predicted class and 0.0 otherwise
+ *
+ * (3) implementations are safe for concurrent scoring once fit (scratch
+ * buffers are per thread)
+ *
+ * @author barnwaldo
+ *
+ */
+public interface Classifier {
+
+    int getNumFeature();
+
+    int getNumClass();
+
+    /**
+     * Method returns predicted classId for a row of features
+     *
+     * @param row
+     * @return
+     */
+    int predict(double[] row);
+
+    /**
+     * Method writes class probabilities for a row of features to out
+     *
+     * @param row
+     * @param out
+     */
+    void predictProba(double[] row, double[] out);
+
+    /**
+     * Method writes predicted classId of each row of data to out
+     *
+     * @param data
+     * @param out
+     */
+    default void predictBatch(Dataset data, int[] out) {
+        double[] row = new double[getNumFeature()];
+        for (int n = 0; n < data.getNumRow(); n++) {
+            data.getRow(n, row);
+            out[n] = predict(row);
+        }
+    }
+
+    /**
+     * Helper method writes 1.0 for classId and 0.0 for all other classes
+     *
+     * @param classId
+     * @param out
+     */
+    static void oneHot(int classId, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = i == classId ? 1.0 : 0.0;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.barnwaldo.classifiers.programs.ReducedPrecision.Precision;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * Dense (fully connected) feed forward network scorer -- weights are copied
+ * from a trained network (e.g. a Keras model imported to DL4J) so it can be
+ * scored without ND4J and at reduced precision
+ *
+ * (1) layers are added in order with addLayer -- weights are row major [out
+ * unit][in unit] with one bias per out unit and an activation per layer
+ *
+ * (2) precision FLOAT64 keeps weights as double, FLOAT32 as float and INT8 as
+ * bytes with one scale per out unit (symmetric, scale = max |w| / 127) --
+ * toFloat32 and toInt8 return reduced copies, INT8 layers also quantize their
+ * inputs per row so dot products are integer, layer outputs are double
+ *
+ * (3) a network with a single output is a binary classifier (classId 1 at or
+ * above 0.5), otherwise classId is the index of the largest output -- forward
+ * passes use per thread buffers and do not allocate
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@SuppressWarnings("JavaDoc")
+public class DenseNetwork implements Classifier {
+
+    public enum Activation {
+        IDENTITY, RELU, SIGMOID, TANH, SOFTMAX
+    }
+
+    private final int numFeature;
+    private final Precision precision;
+    @Getter(AccessLevel.NONE)
+    private final List<Layer> layers = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<double[][]> buffers = new ThreadLocal<>();
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<float[]> floatBuffer = new ThreadLocal<>();
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<byte[]> byteBuffer = new ThreadLocal<>();
+
+    public DenseNetwork(int numFeature) {
+        this(numFeature, Precision.FLOAT64);
+    }
+
+    private DenseNetwork(int numFeature, Precision precision) {
+        this.numFeature = numFeature;
+        this.precision = precision;
+    }
+
+    /**
+     * Method appends a layer -- inputs are the outputs of the previous layer
+     * (or the features for the first layer)
+     *
+     * @param numOut
+     * @param weight row major [out][in]
+     * @param bias
+     * @param activation
+     * @return this network
+     */
+    public DenseNetwork addLayer(int numOut, double[] weight, double[] bias, Activation activation) {
+        int numIn = layers.isEmpty() ? numFeature : layers.get(layers.size() - 1).numOut;
+        if (weight.length != numIn * numOut || bias.length != numOut) {
+            throw new IllegalArgumentException("Layer " + layers.size() + " expects " + numIn + " x " + numOut
+                    + " weights and " + numOut + " biases");
+        }
+        layers.add(new Layer(numIn, numOut, weight.clone(), bias.clone(), activation, precision));
+        return this;
+    }
+
+    /**
+     * Method returns copy of network with float weights
+     *
+     * @return
+     */
+    public DenseNetwork toFloat32() {
+        return copy(Precision.FLOAT32);
+    }
+
+    /**
+     * Method returns copy of network with int8 weights (one scale per out
+     * unit)
+     *
+     * @return
+     */
+    public DenseNetwork toInt8() {
+        return copy(Precision.INT8);
+    }
+
+    private DenseNetwork copy(Precision to) {
+        DenseNetwork network = new DenseNetwork(numFeature, to);
+        for (Layer layer : layers) {
+            network.layers.add(new Layer(layer.numIn, layer.numOut, layer.weight(), layer.bias, layer.activation, to));
+        }
+        return network;
+    }
+
+    public int getNumLayer() {
+        return layers.size();
+    }
+
+    /**
+     * Method returns number of outputs of last layer
+     *
+     * @return
+     */
+    public int getNumOutput() {
+        return layers.get(layers.size() - 1).numOut;
+    }
+
+    /**
+     * Method returns bytes held by weights and biases
+     *
+     * @return
+     */
+    public long getWeightBytes() {
+        long bytes = 0;
+        for (Layer layer : layers) {
+            bytes += layer.bytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getNumClass() {
+        return Math.max(2, getNumOutput());
+    }
+
+    /**
+     * Method runs network on row -- returned array (valid until the next call
+     * on this thread) holds getNumOutput outputs
+     *
+     * @param row
+     * @return
+     */
+    public double[] output(double[] row) {
+        double[][] buffer = buffers.get();
+        if (buffer == null) {
+            int width = numFeature;
+            for (Layer layer : layers) {
+                width = Math.max(width, layer.numOut);
+            }
+            buffer = new double[][]{new double[width], new double[width]};
+            buffers.set(buffer);
+            floatBuffer.set(new float[width]);
+            byteBuffer.set(new byte[width]);
+        }
+        float[] inFloat = floatBuffer.get();
+        byte[] inByte = byteBuffer.get();
+        double[] in = row;
+        int next = 0;
+        for (Layer layer : layers) {
+            double[] out = buffer[next];
+            layer.forward(in, out, inFloat, inByte);
+            in = out;
+            next = 1 - next;
+        }
+        return in;
+    }
+
+    @Override
+    public int predict(double[] row) {
+        double[] out = output(row);
+        int numOutput = getNumOutput();
+        if (numOutput == 1) {
+            return out[0] >= 0.5 ? 1 : 0;
+        }
+        int maxIndex = 0;
+        for (int i = 1; i < numOutput; i++) {
+            if (out[i] > out[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        double[] output = output(row);
+        int numOutput = getNumOutput();
+        if (numOutput == 1) {
+            out[1] = output[0];
+            out[0] = 1.0 - output[0];
+        } else {
+            System.arraycopy(output, 0, out, 0, numOutput);
+        }
+    }
+
+    /**
+     * Helper method quantizes n weights of w from offset to q (at qOffset) --
+     * returns scale so that w ~ q * scale
+     *
+     * @param w
+     * @param offset
+     * @param n
+     * @param q
+     * @param qOffset
+     * @return
+     */
+    static float quantizeRow(double[] w, int offset, int n, byte[] q, int qOffset) {
+        double max = 0.0;
+        for (int i = 0; i < n; i++) {
+            max = Math.max(max, Math.abs(w[offset + i]));
+        }
+        float scale = (float) (max / 127.0);
+        for (int i = 0; i < n; i++) {
+            q[qOffset + i] = scale > 0.0f ? (byte) Math.round(w[offset + i] / scale) : 0;
+        }
+        return scale;
+    }
+
+    /**
+     * One dense layer -- exactly one of weight64, weight32, weight8 is set
+     */
+    private static class Layer {
+
+        final int numIn;
+        final int numOut;
+        final double[] weight64;
+        final float[] weight32;
+        final byte[] weight8;
+        final float[] scale;
+        final double[] bias;
+        final Activation activation;
+
+        Layer(int numIn, int numOut, double[] weight, double[] bias, Activation activation, Precision precision) {
+            this.numIn = numIn;
+            this.numOut = numOut;
+            this.bias = bias;
+            this.activation = activation;
+            this.weight64 = precision == Precision.FLOAT64 ? weight : null;
+            this.weight32 = precision == Precision.FLOAT32 ? new float[weight.length] : null;
+            this.weight8 = precision == Precision.INT8 ? new byte[weight.length] : null;
+            this.scale = precision == Precision.INT8 ? new float[numOut] : null;
+            for (int o = 0; o < numOut; o++) {
+                int offset = o * numIn;
+                if (weight32 != null) {
+                    for (int i = 0; i < numIn; i++) {
+                        weight32[offset + i] = (float) weight[offset + i];
+                    }
+                } else if (weight8 != null) {
+                    scale[o] = quantizeRow(weight, offset, numIn, weight8, offset);
+                }
+            }
+        }
+
+        /**
+         * Helper method returns weights as double (dequantized for int8)
+         */
+        double[] weight() {
+            double[] w = new double[numIn * numOut];
+            for (int o = 0; o < numOut; o++) {
+                for (int i = 0; i < numIn; i++) {
+                    int k = o * numIn + i;
+                    w[k] = weight64 != null ? weight64[k] : weight32 != null ? weight32[k] : weight8[k] * scale[o];
+                }
+            }
+            return w;
+        }
+
+        long bytes() {
+            long weightBytes = weight64 != null ? 8L : weight32 != null ? 4L : 1L;
+            return weightBytes * numIn * numOut + 8L * numOut + (scale != null ? 4L * numOut : 0L);
+        }
+
+        /**
+         * Helper method writes activations of layer for inputs in to out --
+         * float layers copy in to inFloat once and accumulate in float with
+         * four partial sums, int8 layers quantize in to inByte (one scale per
+         * row, as the weights) and accumulate q(w) x q(in) in int
+         */
+        void forward(double[] in, double[] out, float[] inFloat, byte[] inByte) {
+            double inScale = 0.0;
+            if (weight32 != null) {
+                for (int i = 0; i < numIn; i++) {
+                    inFloat[i] = (float) in[i];
+                }
+            } else if (weight8 != null) {
+                inScale = quantizeRow(in, 0, numIn, inByte, 0);
+            }
+            int limit = numIn & ~3;
+            for (int o = 0; o < numOut; o++) {
+                int offset = o * numIn;
+                double sum;
+                if (weight64 != null) {
+                    sum = 0.0;
+                    for (int i = 0; i < numIn; i++) {
+                        sum += weight64[offset + i] * in[i];
+                    }
+                } else if (weight32 != null) {
+                    float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+                    int i = 0;
+                    for (; i < limit; i += 4) {
+                        s0 += weight32[offset + i] * inFloat[i];
+                        s1 += weight32[offset + i + 1] * inFloat[i + 1];
+                        s2 += weight32[offset + i + 2] * inFloat[i + 2];
+                        s3 += weight32[offset + i + 3] * inFloat[i + 3];
+                    }
+                    for (; i < numIn; i++) {
+                        s0 += weight32[offset + i] * inFloat[i];
+                    }
+                    sum = (s0 + s1) + (s2 + s3);
+                } else {
+                    int dot = 0;
+                    for (int i = 0; i < numIn; i++) {
+                        dot += weight8[offset + i] * inByte[i];
+                    }
+                    sum = dot * inScale * scale[o];
+                }
+                out[o] = sum + bias[o];
+            }
+            switch (activation) {
+                case RELU:
+                    for (int o = 0; o < numOut; o++) {
+                        out[o] = Math.max(0.0, out[o]);
+                    }
+                    break;
+                case SIGMOID:
+                    for (int o = 0; o < numOut; o++) {
+                        out[o] = 1.0 / (1.0 + Math.exp(-out[o]));
+                    }
+                    break;
+                case TANH:
+                    for (int o = 0; o < numOut; o++) {
+                        out[o] = Math.tanh(out[o]);
+                    }
+                    break;
+                case SOFTMAX:
+                    ReducedPrecision.softmax(out, numOut);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
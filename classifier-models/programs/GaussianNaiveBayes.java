@@ -1,12 +1,16 @@
 package com.barnwaldo.classifiers.programs;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
 import com.barnwaldo.classifiers.model.GaussNBModel;
-import com.barnwaldo.classifiers.utils.TrainTestData;
+import com.barnwaldo.classifiers.model.GaussNBScorer;
+import com.barnwaldo.classifiers.model.GaussNBStats;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -14,11 +18,19 @@ import lombok.Setter;
  * Gaussian Naive Bayes
  *
  * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset
  *
  * (2) fitModel is used to calculate prior probabilities, means, stdDevs from
- * training data set
+ * training data set in one pass -- partialFit and merge update the model from
+ * more data or from statistics (GaussNBStats) computed elsewhere, starting from
+ * the counts saved with the model (models saved without counts cannot be
+ * updated, see hasCounts)
  *
- * (3) predict is used to determine class based on input features (only)
+ * (3) predict is used to determine class based on input features (only) with a
+ * GaussNBScorer compiled from the model (log space, no per row allocation) --
+ * updates are serialized and compile the new scorer before publishing it, so
+ * predict can run on other threads while the model is updated (it never sees
+ * a partly updated model)
  *
  * (4) model can be saved by using getModel().toString() which provides a JSON
  * string with all model parameters
@@ -32,20 +44,21 @@ import lombok.Setter;
 @Getter
 @Setter
 @SuppressWarnings({"Duplicates", "JavaDoc"})
-public class GaussianNaiveBayes {
+public class GaussianNaiveBayes implements Classifier {
+
+    private static final int CHUNK_SIZE = 8192; // rows per parallel chunk
 
     private int numClass;
     private int numFeature;
     private GaussNBModel model;
-    private double[] posteriors;
-    private List<List<Continuous>> classData;
+    private GaussNBStats stats;
+    @Setter(AccessLevel.NONE)
+    private volatile GaussNBScorer scorer;
 
     public GaussianNaiveBayes(int numFeature, int numClass) {
         this.numClass = numClass;
         this.numFeature = numFeature;
-        posteriors = new double[numClass];
         model = new GaussNBModel(numFeature, numClass);
-        classData = new ArrayList<>();
     }
 
     /**
@@ -55,21 +68,28 @@ public class GaussianNaiveBayes {
      * @param data
      */
     public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
 
-        // get data by classes
-        for (int classId = 0; classId < numClass; classId++) {
-            classData.add(TrainTestData.getContinuousByClass(data, classId));
+    /**
+     * Method fits Gaussian Naive Bayes to training data... Fit is determined by
+     * finding means, stdDevs per feature per class in a single (parallel) pass
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        GaussNBStats fit = calculateStats(data);
+        synchronized (this) {
+            stats = fit;
+            stats.updateModel(model);
+            scorer = new GaussNBScorer(model);
         }
 
-        // calculate priors
-        int total = data.size();
+        int total = data.getNumRow();
         System.out.println("Train data samples: " + total);
         for (int classId = 0; classId < numClass; classId++) {
-            List<Continuous> tempData = classData.get(classId);
-            model.getPriors()[classId] = (double) tempData.size() / total;
-            calculateStats(tempData, classId);
             System.out.println("ClassId: " + classId + ", Class Sample Size: "
-                    + tempData.size() + ", Prior = " + model.getPriors()[classId]);
+                    + stats.getCounts()[classId] + ", Prior = " + model.getPriors()[classId]);
 //			System.out.println("     Means: ");
 //			for(int i = 0; i < numFeature; i++) {
 //				System.out.print("   " + model.getMeans()[i][classId]);
@@ -82,34 +102,103 @@ public class GaussianNaiveBayes {
     }
 
     /**
-     * Method calculates means and stdDevs from training data set
+     * Method updates model with additional training data (incremental fit)
      *
-     * @param con
-     * @param id
+     * @param data
      */
-    private void calculateStats(List<Continuous> con, int id) {
-        int numSamples = con.size();
+    public void partialFit(List<Continuous> data) {
+        partialFit(DoubleDataset.fromContinuous(data, numClass));
+    }
 
-        // calculate means
-        con.forEach((c) -> {
-            for (int i = 0; i < numFeature; i++) {
-                model.getMeans()[i][id] += c.getFeature()[i];
-            }
-        });
-        for (int i = 0; i < numFeature; i++) {
-            model.getMeans()[i][id] = model.getMeans()[i][id] / numSamples;
-        }
+    /**
+     * Method updates model with additional training data (incremental fit)
+     *
+     * @param data
+     */
+    public void partialFit(Dataset data) {
+        merge(calculateStats(data));
+    }
 
-        // calculate std dev
-        con.forEach((c) -> {
-            for (int i = 0; i < numFeature; i++) {
-                model.getStdDevs()[i][id] += (c.getFeature()[i] - model.getMeans()[i][id])
-                        * (c.getFeature()[i] - model.getMeans()[i][id]);
+    /**
+     * Method updates model with a single training sample (incremental fit)
+     *
+     * @param feature
+     * @param classId
+     */
+    public synchronized void partialFit(double[] feature, int classId) {
+        GaussNBStats current = currentStats();
+        current.add(feature, classId);
+        current.updateModel(model);
+        scorer = new GaussNBScorer(model);
+    }
+
+    /**
+     * Method merges statistics fit elsewhere (other thread, node or Kafka
+     * partition) into this model
+     *
+     * @param other
+     */
+    public synchronized void merge(GaussNBStats other) {
+        GaussNBStats current = currentStats();
+        current.merge(other);
+        current.updateModel(model);
+        scorer = new GaussNBScorer(model);
+    }
+
+    /**
+     * Method returns true if the model can be updated by partialFit and merge
+     * -- false for models read from files saved before counts were kept
+     *
+     * @return
+     */
+    public synchronized boolean hasCounts() {
+        return stats != null || model.getCounts() != null && model.getM2() != null;
+    }
+
+    /**
+     * Helper method returns statistics to update -- restored from the counts
+     * of the model on first update, so a loaded model is extended rather than
+     * replaced by the new samples
+     *
+     * @return
+     */
+    private GaussNBStats currentStats() {
+        if (stats == null) {
+            stats = GaussNBStats.fromModel(model);
+            if (stats == null) {
+                throw new IllegalStateException("GNB model has no sample counts (saved before counts were kept) "
+                        + "-- refit it to update it");
             }
-        });
-        for (int i = 0; i < numFeature; i++) {
-            model.getStdDevs()[i][id] = Math.sqrt(model.getStdDevs()[i][id] / (numSamples - 1));
         }
+        return stats;
+    }
+
+    /**
+     * Method calculates statistics of data set -- chunks of rows are
+     * accumulated in parallel and merged
+     *
+     * @param data
+     * @return
+     */
+    private GaussNBStats calculateStats(Dataset data) {
+        int numRows = data.getNumRow();
+        int numChunks = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return IntStream.range(0, numChunks).parallel()
+                .mapToObj(chunk -> {
+                    GaussNBStats chunkStats = new GaussNBStats(numFeature, numClass);
+                    double[] feature = new double[numFeature];
+                    int end = Math.min(numRows, (chunk + 1) * CHUNK_SIZE);
+                    for (int row = chunk * CHUNK_SIZE; row < end; row++) {
+                        data.getRow(row, feature);
+                        chunkStats.add(feature, data.getResult(row));
+                    }
+                    return chunkStats;
+                })
+                .reduce((a, b) -> {
+                    a.merge(b);
+                    return a;
+                })
+                .orElseGet(() -> new GaussNBStats(numFeature, numClass));
     }
 
     /**
@@ -119,34 +208,65 @@ public class GaussianNaiveBayes {
      * @return
      */
     public int[] predict(List<Continuous> data) {
-        int numSamples = data.size();
-        int[] predictions = new int[numSamples];
-        for (int n = 0; n < numSamples; n++) {
-            double[] feature = data.get(n).getFeature();
-            for (int id = 0; id < numClass; id++) {
-                double[] probabilities = new double[numFeature];
-                for (int i = 0; i < numFeature; i++) {
-                    double mean = model.getMeans()[i][id];
-                    double stdDev = model.getStdDevs()[i][id];
-                    probabilities[i] = Math.exp((feature[i] - mean) * (feature[i] - mean) / (2.0 * stdDev * stdDev));
-                    probabilities[i] = probabilities[i] / (stdDev * Math.sqrt(2.0 * Math.PI));
-                }
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
 
-                double likelihood = 1.0;
-                for (double p : probabilities) {
-                    likelihood *= p;
-                }
-                posteriors[id] = model.getPriors()[id] * likelihood;
-            }
-            int maxClassId = 0;
-            for (int id = 1; id < numClass; id++) {
-                if (posteriors[id] > posteriors[maxClassId]) {
-                    maxClassId = id;
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    @Override
+    public void predictBatch(Dataset data, int[] out) {
+        getScorer().predictBatch(data, out);
+    }
+
+    /**
+     * Method gets prediction for a single row of features
+     *
+     * @param feature
+     * @return
+     */
+    @Override
+    public int predict(double[] feature) {
+        return getScorer().predict(feature);
+    }
+
+    @Override
+    public void predictProba(double[] feature, double[] out) {
+        getScorer().predictProba(feature, out);
+    }
+
+    /**
+     * Method returns compiled log space scorer for current model (published by
+     * every update, compiled on first use after setModel)
+     *
+     * @return
+     */
+    public GaussNBScorer getScorer() {
+        GaussNBScorer current = scorer;
+        if (current == null) {
+            synchronized (this) {
+                if (scorer == null) {
+                    scorer = new GaussNBScorer(model);
                 }
+                current = scorer;
             }
-            predictions[n] = maxClassId;
         }
-        return predictions;
+        return current;
+    }
+
+    public synchronized void setModel(GaussNBModel model) {
+        this.model = model;
+        stats = null;       // restored from the counts of the new model on first update
+        scorer = null;
     }
 
 }
@@ -0,0 +1,461 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import com.barnwaldo.classifiers.data.BinnedDataset;
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
+import com.barnwaldo.classifiers.data.Tree;
+import com.barnwaldo.classifiers.model.GBModel;
+import com.barnwaldo.classifiers.utils.IndexSampler;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Gradient Boosted Decision Trees (histogram based)
+ *
+ * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset -- features are binned once to at most maxBins (<= 256) bins
+ * stored as bytes
+ *
+ * (2) fitModel adds numTree rounds of trees of at most maxDepth, each fit to
+ * the gradient/hessian of the log loss (logistic for two classes, softmax with
+ * one tree per class and round otherwise) -- leaf outputs are Newton steps
+ * -G / (H + regLambda) scaled by learningRate
+ *
+ * (3) split finding uses per node gradient histograms built in parallel over
+ * features -- only the smaller child is scanned, the larger child histogram is
+ * parent minus smaller (histogram subtraction)
+ *
+ * (4) trees are Tree nodes (split on value < splitValue, leaf output in value)
+ * scored through a FlatForest -- inference cost grows with numTree (times
+ * classes) and maxDepth
+ *
+ * (5) model can be saved by using getModel().toString() which provides a JSON
+ * string with all model parameters, or with ModelIO
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+public class GradientBoosting implements Classifier {
+
+    private static final int PARALLEL_GRAIN = 16384;   // node rows x features below which histograms are built serially
+    private static final double MIN_HESSIAN = 1.0e-16;
+
+    private int numFeature;
+    private int numClass;
+    private int numTree = 100;              // boosting rounds
+    private int maxDepth = 6;
+    private int minSize = 20;               // min samples per leaf
+    private double learningRate = 0.1;
+    private double regLambda = 1.0;         // L2 regularization of leaf outputs
+    private double minGain;                 // min loss reduction to split
+    private int maxBins = 255;
+    private double sampleRate = 1.0;        // rows sampled (without replacement) per round
+    private Long seed;                      // null = random seed
+    private GBModel model;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ThreadLocal<double[]> scores = new ThreadLocal<>();
+
+    public GradientBoosting(int numFeature, int numClass, int numTree) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.numTree = numTree;
+        this.model = new GBModel(numFeature, numClass, learningRate);
+    }
+
+    public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method fits boosted trees to training data
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        BinnedDataset binned = BinnedDataset.fromDataset(data, maxBins, random.split());
+        int numRows = binned.getNumRow();
+        model = new GBModel(numFeature, numClass, learningRate);
+        int numOutput = model.getNumOutput();
+        int[] results = binned.getResults();
+
+        // base score from class priors
+        double[] prior = new double[numClass];
+        for (int result : results) {
+            prior[result] += 1.0 / numRows;
+        }
+        for (int k = 0; k < numOutput; k++) {
+            double p = Math.min(Math.max(numOutput == 1 ? prior[1] : prior[k], 1.0e-6), 1.0 - 1.0e-6);
+            model.getBaseScore()[k] = numOutput == 1 ? Math.log(p / (1.0 - p)) : Math.log(p);
+        }
+        double[] score = new double[numRows * numOutput];
+        for (int row = 0; row < numRows; row++) {
+            System.arraycopy(model.getBaseScore(), 0, score, row * numOutput, numOutput);
+        }
+
+        int[] binOffset = new int[numFeature + 1];
+        for (int f = 0; f < numFeature; f++) {
+            binOffset[f + 1] = binOffset[f] + binned.getNumBins(f);
+        }
+        List<Tree> treeList = new ArrayList<>();
+        List<Integer> roots = new ArrayList<>();
+        double[][] grad = new double[numOutput][numRows];
+        double[][] hess = new double[numOutput][numRows];
+        double[] prob = new double[Math.max(numOutput, 2)];
+        int sampleSize = Math.max(1, (int) (sampleRate * numRows));
+        for (int round = 0; round < numTree; round++) {
+            // gradient and hessian of log loss at current scores
+            for (int row = 0; row < numRows; row++) {
+                probabilities(score, row * numOutput, numOutput, prob);
+                for (int k = 0; k < numOutput; k++) {
+                    double y = (numOutput == 1 ? results[row] == 1 : results[row] == k) ? 1.0 : 0.0;
+                    double p = numOutput == 1 ? prob[1] : prob[k];
+                    grad[k][row] = p - y;
+                    hess[k][row] = Math.max(p * (1.0 - p), MIN_HESSIAN);
+                }
+            }
+            int[] index = sampleSize < numRows
+                    ? IndexSampler.subsample(numRows, sampleSize, random)
+                    : null;
+            for (int k = 0; k < numOutput; k++) {
+                Tree root = new Tree(treeList.size());
+                root.setDepth(1);
+                roots.add(root.getId());
+                treeList.add(root);
+                if (index == null) {
+                    buildTree(root, treeList, binned, binOffset, grad[k], hess[k], IndexSampler.identity(numRows),
+                            score, numOutput, k);
+                } else {
+                    // tree is fit to the sample, but its output is added to the scores of all rows
+                    buildTree(root, treeList, binned, binOffset, grad[k], hess[k], index.clone(), null, numOutput, k);
+                    addScores(root, treeList, binned, score, numOutput, k);
+                }
+            }
+        }
+        model.setTrees(treeList.toArray(new Tree[0]));
+        model.setRootTreeId(roots.stream().mapToInt(Integer::intValue).toArray());
+        model.setForest(null);
+        System.out.println("Boosted " + numTree + " rounds, " + treeList.size() + " nodes in "
+                + model.getRootTreeId().length + " trees");
+    }
+
+    /**
+     * Helper method writes class probabilities at scores[offset, offset +
+     * numOutput) to prob (prob[0], prob[1] for two classes)
+     */
+    private static void probabilities(double[] score, int offset, int numOutput, double[] prob) {
+        if (numOutput == 1) {
+            prob[1] = 1.0 / (1.0 + Math.exp(-score[offset]));
+            prob[0] = 1.0 - prob[1];
+            return;
+        }
+        double max = score[offset];
+        for (int k = 1; k < numOutput; k++) {
+            max = Math.max(max, score[offset + k]);
+        }
+        double sum = 0.0;
+        for (int k = 0; k < numOutput; k++) {
+            prob[k] = Math.exp(score[offset + k] - max);
+            sum += prob[k];
+        }
+        for (int k = 0; k < numOutput; k++) {
+            prob[k] /= sum;
+        }
+    }
+
+    /**
+     * Node waiting to be split -- owns index range [start, end) and its
+     * gradient histogram
+     */
+    private static class Node {
+
+        final Tree tree;
+        final int start;
+        final int end;
+        final Histogram hist;
+
+        Node(Tree tree, int start, int end, Histogram hist) {
+            this.tree = tree;
+            this.start = start;
+            this.end = end;
+            this.hist = hist;
+        }
+    }
+
+    /**
+     * Gradient / hessian sums and row counts per (feature, bin)
+     */
+    private static class Histogram {
+
+        final double[] grad;
+        final double[] hess;
+        final int[] count;
+
+        Histogram(int size) {
+            grad = new double[size];
+            hess = new double[size];
+            count = new int[size];
+        }
+
+        void subtract(Histogram other) {
+            for (int i = 0; i < grad.length; i++) {
+                grad[i] -= other.grad[i];
+                hess[i] -= other.hess[i];
+                count[i] -= other.count[i];
+            }
+        }
+    }
+
+    /**
+     * Helper method grows tree depth first from root over rows in index and
+     * adds leaf outputs to scores of output k
+     */
+    private void buildTree(Tree root, List<Tree> treeList, BinnedDataset binned, int[] binOffset, double[] grad,
+            double[] hess, int[] index, double[] score, int numOutput, int k) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(new Node(root, 0, index.length, histogram(binned, binOffset, grad, hess, index, 0, index.length)));
+        int[] bestBin = new int[numFeature];
+        double[] bestGain = new double[numFeature];
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            Tree tree = node.tree;
+            int size = node.end - node.start;
+            // node totals from the first feature's bins
+            double g = 0.0;
+            double h = 0.0;
+            for (int b = binOffset[0]; b < binOffset[1]; b++) {
+                g += node.hist.grad[b];
+                h += node.hist.hess[b];
+            }
+            if ((maxDepth > 0 && tree.getDepth() > maxDepth) || size < 2 * minSize) {
+                setLeaf(tree, g, h, index, node.start, node.end, score, numOutput, k);
+                continue;
+            }
+            double parentGain = g * g / (h + regLambda);
+            double totalG = g;
+            double totalH = h;
+            IntStream features = IntStream.range(0, numFeature);
+            if ((long) size * numFeature >= PARALLEL_GRAIN) {
+                features = features.parallel();
+            }
+            features.forEach(f -> {
+                bestGain[f] = Double.NEGATIVE_INFINITY;
+                double gl = 0.0;
+                double hl = 0.0;
+                int nl = 0;
+                for (int b = binOffset[f]; b < binOffset[f + 1] - 1; b++) {
+                    gl += node.hist.grad[b];
+                    hl += node.hist.hess[b];
+                    nl += node.hist.count[b];
+                    if (nl < minSize) {
+                        continue;
+                    }
+                    if (size - nl < minSize) {
+                        break;
+                    }
+                    double gr = totalG - gl;
+                    double hr = totalH - hl;
+                    double gain = gl * gl / (hl + regLambda) + gr * gr / (hr + regLambda) - parentGain;
+                    if (gain > bestGain[f]) {
+                        bestGain[f] = gain;
+                        bestBin[f] = b - binOffset[f];
+                    }
+                }
+            });
+            int splitFeature = -1;
+            double splitGain = minGain;
+            for (int f = 0; f < numFeature; f++) {
+                if (bestGain[f] > splitGain) {
+                    splitGain = bestGain[f];
+                    splitFeature = f;
+                }
+            }
+            if (splitFeature < 0) {
+                setLeaf(tree, g, h, index, node.start, node.end, score, numOutput, k);
+                continue;
+            }
+            // partition rows: bin <= splitBin goes left (value < edge)
+            int splitBin = bestBin[splitFeature];
+            byte[] bins = binned.getBins();
+            int colOffset = splitFeature * binned.getNumRow();
+            int mid = node.start;
+            for (int i = node.start; i < node.end; i++) {
+                int row = index[i];
+                if ((bins[colOffset + row] & 0xFF) <= splitBin) {
+                    index[i] = index[mid];
+                    index[mid++] = row;
+                }
+            }
+            tree.setColSplit(splitFeature);
+            tree.setSplitValue(binned.getEdges()[splitFeature][splitBin]);
+            Tree left = new Tree(treeList.size());
+            treeList.add(left);
+            Tree right = new Tree(treeList.size());
+            treeList.add(right);
+            left.setDepth(tree.getDepth() + 1);
+            right.setDepth(tree.getDepth() + 1);
+            tree.setLeftTreeId(left.getId());
+            tree.setRightTreeId(right.getId());
+            // scan the smaller child, larger child histogram = parent - smaller
+            Histogram parent = node.hist;
+            if (mid - node.start <= node.end - mid) {
+                Histogram small = histogram(binned, binOffset, grad, hess, index, node.start, mid);
+                parent.subtract(small);
+                stack.push(new Node(right, mid, node.end, parent));
+                stack.push(new Node(left, node.start, mid, small));
+            } else {
+                Histogram small = histogram(binned, binOffset, grad, hess, index, mid, node.end);
+                parent.subtract(small);
+                stack.push(new Node(right, mid, node.end, small));
+                stack.push(new Node(left, node.start, mid, parent));
+            }
+        }
+    }
+
+    /**
+     * Helper method builds gradient histogram of rows index[start, end) --
+     * features are filled in parallel for large nodes
+     */
+    private Histogram histogram(BinnedDataset binned, int[] binOffset, double[] grad, double[] hess, int[] index,
+            int start, int end) {
+        Histogram hist = new Histogram(binOffset[numFeature]);
+        byte[] bins = binned.getBins();
+        int numRows = binned.getNumRow();
+        IntStream features = IntStream.range(0, numFeature);
+        if ((long) (end - start) * numFeature >= PARALLEL_GRAIN) {
+            features = features.parallel();
+        }
+        features.forEach(f -> {
+            int colOffset = f * numRows;
+            int offset = binOffset[f];
+            for (int i = start; i < end; i++) {
+                int row = index[i];
+                int b = offset + (bins[colOffset + row] & 0xFF);
+                hist.grad[b] += grad[row];
+                hist.hess[b] += hess[row];
+                hist.count[b]++;
+            }
+        });
+        return hist;
+    }
+
+    /**
+     * Helper method makes tree a leaf with Newton step output and adds output
+     * to scores of its rows (unless score is null)
+     */
+    private void setLeaf(Tree tree, double g, double h, int[] index, int start, int end, double[] score,
+            int numOutput, int k) {
+        double value = -learningRate * g / (h + regLambda);
+        tree.setTerminal(true);
+        tree.setValue(value);
+        if (score == null) {
+            return;
+        }
+        for (int i = start; i < end; i++) {
+            score[index[i] * numOutput + k] += value;
+        }
+    }
+
+    /**
+     * Helper method routes every row through the splits of the tree at root
+     * (nodes root id and above in treeList) and adds its leaf output to the
+     * scores of output k -- used when the tree was fit to a sample of rows
+     */
+    private static void addScores(Tree root, List<Tree> treeList, BinnedDataset binned, double[] score,
+            int numOutput, int k) {
+        int first = root.getId();
+        // split bin of each split node -- bin <= splitBin goes left (value < splitValue, edges are increasing)
+        int[] splitBin = new int[treeList.size() - first];
+        for (int id = first; id < treeList.size(); id++) {
+            Tree tree = treeList.get(id);
+            if (!tree.isTerminal()) {
+                splitBin[id - first] = Arrays.binarySearch(binned.getEdges()[tree.getColSplit()],
+                        tree.getSplitValue());
+            }
+        }
+        byte[] bins = binned.getBins();
+        int numRows = binned.getNumRow();
+        for (int row = 0; row < numRows; row++) {
+            Tree tree = root;
+            while (!tree.isTerminal()) {
+                int bin = bins[tree.getColSplit() * numRows + row] & 0xFF;
+                tree = treeList.get(bin <= splitBin[tree.getId() - first] ? tree.getLeftTreeId()
+                        : tree.getRightTreeId());
+            }
+            score[row * numOutput + k] += tree.getValue();
+        }
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(List<Continuous> data) {
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    @Override
+    public int predict(double[] row) {
+        double[] out = scoreBuffer();
+        model.scores(row, out);
+        if (model.getNumOutput() == 1) {
+            return out[0] > 0.0 ? 1 : 0;
+        }
+        int maxClassId = 0;
+        for (int i = 1; i < numClass; i++) {
+            if (out[i] > out[maxClassId]) {
+                maxClassId = i;
+            }
+        }
+        return maxClassId;
+    }
+
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        double[] raw = scoreBuffer();
+        model.scores(row, raw);
+        probabilities(raw, 0, model.getNumOutput(), out);
+    }
+
+    /**
+     * Helper method returns per thread score buffer of numClass
+     *
+     * @return
+     */
+    private double[] scoreBuffer() {
+        double[] buffer = scores.get();
+        if (buffer == null || buffer.length != numClass) {
+            buffer = new double[numClass];
+            scores.set(buffer);
+        }
+        return buffer;
+    }
+}
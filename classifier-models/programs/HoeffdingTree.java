@@ -0,0 +1,495 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
+import com.barnwaldo.classifiers.data.Tree;
+import com.barnwaldo.classifiers.model.FlatForest;
+import com.barnwaldo.classifiers.model.GaussNBStats;
+import com.barnwaldo.classifiers.model.RFModel;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Hoeffding Tree (VFDT) for streams of labelled data
+ *
+ * (1) partialFit takes one labelled row at a time, e.g. as records arrive on a
+ * Kafka stream -- the row is routed to its leaf and only added to the
+ * statistics of that leaf, rows are never stored
+ *
+ * (2) each leaf keeps class counts and per class Gaussian statistics (count,
+ * mean, variance) and min/max of each feature, so memory per leaf is fixed at
+ * O(numFeature x numClass) however many rows it sees
+ *
+ * (3) every gracePeriod rows a leaf evaluates numSplitPoints candidate
+ * thresholds per feature (class masses either side estimated from the
+ * Gaussians) by information gain and splits when the best feature beats the
+ * second best by more than the Hoeffding bound -- or the bound has shrunk
+ * below tieThreshold
+ *
+ * (4) tree is held as Tree nodes in an RFModel with one tree, so predict uses
+ * the same FlatForest scoring, ModelIO format and Analytics path as Random
+ * Forest -- the forest is recompiled only after a split or a leaf class change
+ *
+ * (5) model can be saved by using getModel().toString() or ModelIO -- leaf
+ * statistics are not saved, so a tree restored with setModel keeps growing
+ * from empty leaves
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+@SuppressWarnings({"Duplicates", "JavaDoc"})
+public class HoeffdingTree implements Classifier {
+
+    private int numFeature;
+    private int numClass;
+    private int gracePeriod = 200;          // rows seen by a leaf between split attempts
+    private double splitConfidence = 1.0e-7; // delta -- probability of choosing the wrong split
+    private double tieThreshold = 0.05;     // split anyway once the Hoeffding bound falls below this
+    private int numSplitPoints = 10;        // candidate thresholds per feature
+    private int maxDepth = 20;              // -1 = unlimited
+    private long numSamples;                // rows learned
+    @Setter(AccessLevel.NONE)
+    private RFModel model;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<Tree> treeList = new ArrayList<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final List<LeafStats> leafStats = new ArrayList<>(); // by tree id, null for split nodes
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile boolean changed;       // tree changed since model was last updated
+
+    public HoeffdingTree(int numFeature, int numClass) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.model = new RFModel(numFeature, numClass, 1);
+        Tree root = newLeaf(1);
+        model.getRootTreeId()[0] = root.getId();
+        changed = true;
+    }
+
+    /**
+     * Per leaf sufficient statistics
+     */
+    private static class LeafStats {
+        private final GaussNBStats stats;
+        private final double[] min;
+        private final double[] max;
+        private long lastAttempt;  // rows seen at last split attempt
+
+        LeafStats(int numFeature, int numClass) {
+            stats = new GaussNBStats(numFeature, numClass);
+            min = new double[numFeature];
+            max = new double[numFeature];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        void add(double[] feature, int classId) {
+            stats.add(feature, classId);
+            for (int i = 0; i < min.length; i++) {
+                if (feature[i] < min[i]) {
+                    min[i] = feature[i];
+                }
+                if (feature[i] > max[i]) {
+                    max[i] = feature[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Method learns from training data one row at a time (rows are visited in
+     * data order)
+     *
+     * @param data
+     */
+    public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method learns from training data one row at a time (rows are visited in
+     * data order)
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        double[] feature = new double[numFeature];
+        for (int row = 0; row < data.getNumRow(); row++) {
+            data.getRow(row, feature);
+            partialFit(feature, data.getResult(row));
+        }
+        System.out.println("Train data samples: " + data.getNumRow() + ", Tree nodes: " + treeList.size());
+    }
+
+    /**
+     * Method updates tree with a single labelled row -- may be called while
+     * other threads score
+     *
+     * @param feature
+     * @param classId
+     */
+    public synchronized void partialFit(double[] feature, int classId) {
+        if (classId < 0 || classId >= numClass) {
+            return;
+        }
+        numSamples++;
+        Tree tree = treeList.get(model.getRootTreeId()[0]);
+        while (!tree.isTerminal()) {
+            tree = treeList.get(feature[tree.getColSplit()] < tree.getSplitValue()
+                    ? tree.getLeftTreeId() : tree.getRightTreeId());
+        }
+        LeafStats leaf = leafStats.get(tree.getId());
+        leaf.add(feature, classId);
+        long[] counts = leaf.stats.getCounts();
+        if (classId != tree.getClassifier() && counts[classId] > counts[tree.getClassifier()]) {
+            tree.setClassifier(classId);
+            changed = true;
+        }
+        long total = leaf.stats.total();
+        if (total - leaf.lastAttempt >= gracePeriod && (maxDepth < 0 || tree.getDepth() < maxDepth)) {
+            leaf.lastAttempt = total;
+            attemptSplit(tree, leaf, total);
+        }
+    }
+
+    /**
+     * Helper method splits leaf if the best split is better than the second
+     * best by more than the Hoeffding bound
+     *
+     * @param tree
+     * @param leaf
+     * @param total
+     */
+    private void attemptSplit(Tree tree, LeafStats leaf, long total) {
+        long[] counts = leaf.stats.getCounts();
+        int numNonZero = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                numNonZero++;
+            }
+        }
+        if (numNonZero < 2) {
+            return;
+        }
+        double parentEntropy = entropy(counts, total);
+        double[] left = new double[numClass];
+        double bestGain = 0.0;
+        double secondGain = 0.0;  // best gain of any other feature (or of not splitting)
+        int bestFeature = -1;
+        double bestValue = 0.0;
+        for (int i = 0; i < numFeature; i++) {
+            double lo = leaf.min[i];
+            double hi = leaf.max[i];
+            if (!(hi > lo)) {
+                continue;
+            }
+            double featureGain = 0.0;
+            double featureValue = 0.0;
+            for (int k = 1; k <= numSplitPoints; k++) {
+                double value = lo + (hi - lo) * k / (numSplitPoints + 1);
+                double gain = parentEntropy - splitEntropy(leaf.stats, i, value, left);
+                if (gain > featureGain) {
+                    featureGain = gain;
+                    featureValue = value;
+                }
+            }
+            if (featureGain > bestGain) {
+                secondGain = bestGain;
+                bestGain = featureGain;
+                bestFeature = i;
+                bestValue = featureValue;
+            } else if (featureGain > secondGain) {
+                secondGain = featureGain;
+            }
+        }
+        if (bestFeature < 0) {
+            return;
+        }
+        double range = Math.log(numClass) / Math.log(2.0);
+        double bound = Math.sqrt(range * range * Math.log(1.0 / splitConfidence) / (2.0 * total));
+        if (bestGain - secondGain > bound || bound < tieThreshold) {
+            split(tree, leaf, bestFeature, bestValue, left);
+        }
+    }
+
+    /**
+     * Helper method splits leaf into two new leaves -- leaf classes are set
+     * from the estimated class masses either side of the split
+     */
+    private void split(Tree tree, LeafStats leaf, int colSplit, double splitValue, double[] left) {
+        splitEntropy(leaf.stats, colSplit, splitValue, left);
+        long[] counts = leaf.stats.getCounts();
+        Tree leftTree = newLeaf(tree.getDepth() + 1);
+        Tree rightTree = newLeaf(tree.getDepth() + 1);
+        int leftClass = 0;
+        int rightClass = 0;
+        for (int c = 1; c < numClass; c++) {
+            if (left[c] > left[leftClass]) {
+                leftClass = c;
+            }
+            if (counts[c] - left[c] > counts[rightClass] - left[rightClass]) {
+                rightClass = c;
+            }
+        }
+        leftTree.setClassifier(leftClass);
+        rightTree.setClassifier(rightClass);
+        tree.setColSplit(colSplit);
+        tree.setSplitValue(splitValue);
+        tree.setLeftTreeId(leftTree.getId());
+        tree.setRightTreeId(rightTree.getId());
+        tree.setTerminal(false);
+        leafStats.set(tree.getId(), null);
+        changed = true;
+    }
+
+    /**
+     * Helper method returns weighted entropy of the two sides of a split of
+     * feature at value -- class masses below value are estimated from the
+     * per class Gaussians and written to left
+     *
+     * @param stats
+     * @param feature
+     * @param value
+     * @param left
+     * @return
+     */
+    private double splitEntropy(GaussNBStats stats, int feature, double value, double[] left) {
+        long[] counts = stats.getCounts();
+        double leftTotal = 0.0;
+        double total = 0.0;
+        for (int c = 0; c < numClass; c++) {
+            long n = counts[c];
+            double mean = stats.getMeans()[feature][c];
+            double stdDev = n > 1 ? Math.sqrt(stats.getM2()[feature][c] / (n - 1)) : 0.0;
+            double fraction;
+            if (n == 0) {
+                fraction = 0.0;
+            } else if (stdDev > 0.0) {
+                fraction = normalCdf((value - mean) / stdDev);
+            } else {
+                fraction = mean < value ? 1.0 : 0.0;
+            }
+            left[c] = n * fraction;
+            leftTotal += left[c];
+            total += n;
+        }
+        double rightTotal = total - leftTotal;
+        double leftEntropy = 0.0;
+        double rightEntropy = 0.0;
+        for (int c = 0; c < numClass; c++) {
+            double l = left[c];
+            double r = counts[c] - l;
+            if (l > 0.0) {
+                leftEntropy -= l * Math.log(l / leftTotal);
+            }
+            if (r > 0.0) {
+                rightEntropy -= r * Math.log(r / rightTotal);
+            }
+        }
+        return (leftEntropy + rightEntropy) / (total * Math.log(2.0));
+    }
+
+    private static double entropy(long[] counts, long total) {
+        double entropy = 0.0;
+        for (long count : counts) {
+            if (count > 0) {
+                double p = (double) count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2.0);
+    }
+
+    /**
+     * Helper method returns standard normal cumulative distribution
+     * (Abramowitz and Stegun 7.1.26, error below 1.5e-7)
+     *
+     * @param z
+     * @return
+     */
+    private static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2.0);
+        double t = 1.0 / (1.0 + 0.3275911 * x);
+        double erf = 1.0 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return z >= 0 ? 0.5 * (1.0 + erf) : 0.5 * (1.0 - erf);
+    }
+
+    private Tree newLeaf(int depth) {
+        Tree tree = new Tree(treeList.size());
+        tree.setDepth(depth);
+        tree.setTerminal(true);
+        treeList.add(tree);
+        leafStats.add(new LeafStats(numFeature, numClass));
+        return tree;
+    }
+
+    /**
+     * Method returns model with a snapshot of the current tree -- the compiled
+     * forest is only rebuilt if the tree has changed
+     *
+     * @return
+     */
+    public synchronized RFModel getModel() {
+        if (changed) {
+            Tree[] trees = new Tree[treeList.size()];
+            for (int i = 0; i < trees.length; i++) {
+                trees[i] = copy(treeList.get(i));
+            }
+            model.setTrees(trees);
+            model.setForest(null);
+            model.getForest();
+            changed = false;
+        }
+        return model;
+    }
+
+    /**
+     * Method replaces tree by a saved model -- the tree is used for scoring
+     * and starts growing again from empty leaf statistics
+     *
+     * @param model
+     */
+    public synchronized void setModel(RFModel model) {
+        if (model.getNumTree() != 1) {
+            throw new IllegalArgumentException("Hoeffding Tree model must have one tree, not " + model.getNumTree());
+        }
+        this.numFeature = model.getNumFeature();
+        this.numClass = model.getNumClass();
+        Tree[] trees = model.getTrees() != null ? model.getTrees() : treesFromForest(model.getForest());
+        treeList.clear();
+        leafStats.clear();
+        for (Tree tree : trees) {
+            treeList.add(copy(tree));
+            leafStats.add(tree.isTerminal() ? new LeafStats(numFeature, numClass) : null);
+        }
+        this.model = new RFModel(numFeature, numClass, 1);
+        this.model.setHeaders(model.getHeaders());
+        this.model.getRootTreeId()[0] = model.getTrees() != null ? model.getRootTreeId()[0] : 0;
+        changed = true;
+    }
+
+    /**
+     * Helper method rebuilds Tree nodes from a compiled (one tree) forest,
+     * e.g. read by ModelIO -- node n of the forest becomes tree id n
+     *
+     * @param forest
+     * @return
+     */
+    private static Tree[] treesFromForest(FlatForest forest) {
+        int[] feature = forest.getFeature();
+        int first = forest.getRoot()[0];
+        Tree[] trees = new Tree[feature.length - first];
+        for (int n = first; n < feature.length; n++) {
+            int id = n - first;
+            Tree tree = trees[id] != null ? trees[id] : new Tree(id);
+            if (id == 0) {
+                tree.setDepth(1);
+            }
+            trees[id] = tree;
+            if (feature[n] < 0) {
+                tree.setTerminal(true);
+                tree.setClassifier((int) forest.getValue()[n]);
+                continue;
+            }
+            tree.setColSplit(feature[n]);
+            tree.setSplitValue(forest.getValue()[n]);
+            tree.setLeftTreeId(id + 1);
+            tree.setRightTreeId(forest.getRight()[n] - first);
+            // children follow their parent in preorder
+            Tree leftTree = new Tree(id + 1);
+            leftTree.setDepth(tree.getDepth() + 1);
+            trees[id + 1] = leftTree;
+            Tree rightTree = new Tree(tree.getRightTreeId());
+            rightTree.setDepth(tree.getDepth() + 1);
+            trees[tree.getRightTreeId()] = rightTree;
+        }
+        return trees;
+    }
+
+    private static Tree copy(Tree tree) {
+        Tree c = new Tree(tree.getId());
+        c.setTerminal(tree.isTerminal());
+        c.setDepth(tree.getDepth());
+        c.setLeftTreeId(tree.getLeftTreeId());
+        c.setRightTreeId(tree.getRightTreeId());
+        c.setClassifier(tree.getClassifier());
+        c.setColSplit(tree.getColSplit());
+        c.setSplitValue(tree.getSplitValue());
+        c.setValue(tree.getValue());
+        return c;
+    }
+
+    /**
+     * Method returns number of nodes in tree
+     *
+     * @return
+     */
+    public synchronized int getNumNodes() {
+        return treeList.size();
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(List<Continuous> data) {
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    @Override
+    public void predictBatch(Dataset data, int[] out) {
+        scoringModel().getForest().predictBatch(data, out);
+    }
+
+    /**
+     * Method gets prediction for a single row of features
+     *
+     * @param row
+     * @return
+     */
+    @Override
+    public int predict(double[] row) {
+        return scoringModel().getForest().predict(row);
+    }
+
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        scoringModel().getForest().predictProba(row, out);
+    }
+
+    /**
+     * Helper method returns model for scoring -- takes the lock only if the
+     * tree has changed since the last snapshot
+     */
+    private RFModel scoringModel() {
+        return changed ? getModel() : model;
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
+import com.barnwaldo.classifiers.data.Tree;
+import com.barnwaldo.classifiers.model.IForestModel;
+import com.barnwaldo.classifiers.utils.IndexSampler;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Isolation Forest (unsupervised anomaly detection)
+ *
+ * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset -- results (classIds) are not used for training
+ *
+ * (2) fitModel grows numTree trees in parallel, each on its own sub-sample of
+ * sampleSize rows, splitting on a random feature at a random value until rows
+ * are isolated or the height limit log2(sampleSize) is reached -- trees are
+ * Tree nodes as in Random Forest with the path length (edges + c(leaf size))
+ * as leaf value
+ *
+ * (3) score returns 2^(-E(h(x)) / c(sampleSize)) in O(numTree x
+ * log(sampleSize)) from the compiled FlatForest without allocation -- near 1
+ * for anomalies, well below 0.5 for normal rows
+ *
+ * (4) predict returns classId 1 (anomaly) if score is at or above the model
+ * threshold, 0 otherwise -- the threshold is set from contamination (expected
+ * fraction of anomalies in the training data) if given
+ *
+ * (5) model can be saved by using getModel().toString() or ModelIO
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+@SuppressWarnings({"Duplicates", "JavaDoc"})
+public class IsolationForest implements Classifier {
+
+    private static final int CHUNK_SIZE = 8192; // rows per parallel chunk
+
+    private int numFeature;
+    private int numClass = 2;
+    private int numTree = 100;              // Liu et al. default
+    private int sampleSize = 256;           // rows per tree -- Liu et al. default
+    private double threshold = 0.5;         // anomaly score threshold (sklearn 'auto')
+    private double contamination;           // > 0 sets threshold from training scores
+    private Long seed;                      // null = random seed
+    @Setter(AccessLevel.NONE)
+    private IForestModel model;
+
+    public IsolationForest(int numFeature, int numTree) {
+        this.numFeature = numFeature;
+        this.numTree = numTree;
+    }
+
+    public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method fits forest to data -- trees are grown in parallel, each from an
+     * independent random stream so results are reproducible from seed
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        int numRows = data.getNumRow();
+        int size = Math.min(sampleSize, numRows);
+        int heightLimit = (int) Math.ceil(Math.log(Math.max(size, 2)) / Math.log(2.0));
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        SplittableRandom[] treeRandom = new SplittableRandom[numTree];
+        for (int t = 0; t < numTree; t++) {
+            treeRandom[t] = random.split();
+        }
+        long start = System.currentTimeMillis();
+        List<List<Tree>> forest = IntStream.range(0, numTree).parallel()
+                .mapToObj(t -> buildTree(data, IndexSampler.subsample(numRows, size, treeRandom[t]), heightLimit,
+                        treeRandom[t]))
+                .collect(Collectors.toList());
+
+        // number nodes of all trees consecutively
+        IForestModel m = new IForestModel(numFeature, size, threshold);
+        List<Tree> treeList = new ArrayList<>();
+        int[] rootTreeId = new int[numTree];
+        for (int t = 0; t < numTree; t++) {
+            int offset = treeList.size();
+            rootTreeId[t] = offset;
+            for (Tree tree : forest.get(t)) {
+                tree.setId(tree.getId() + offset);
+                if (!tree.isTerminal()) {
+                    tree.setLeftTreeId(tree.getLeftTreeId() + offset);
+                    tree.setRightTreeId(tree.getRightTreeId() + offset);
+                }
+                treeList.add(tree);
+            }
+        }
+        m.setRootTreeId(rootTreeId);
+        m.setTrees(treeList.toArray(new Tree[0]));
+        model = m;
+        if (contamination > 0.0) {
+            model.setThreshold(contaminationThreshold(data));
+        }
+        long stop = System.currentTimeMillis();
+        System.out.println("Train data samples: " + numRows + ", Trees: " + numTree + ", Nodes: " + treeList.size()
+                + ", Threshold: " + model.getThreshold() + " in " + (stop - start) + " (ms)");
+    }
+
+    /**
+     * Helper method grows one isolation tree over rows index -- each node owns
+     * the range [start, end) of index, partitioned in place as in RandomForest
+     *
+     * @param data
+     * @param index
+     * @param heightLimit
+     * @param random
+     * @return nodes of tree (root first, ids from 0)
+     */
+    private List<Tree> buildTree(Dataset data, int[] index, int heightLimit, SplittableRandom random) {
+        List<Tree> nodes = new ArrayList<>();
+        Tree root = new Tree(0);
+        root.setDepth(1);
+        nodes.add(root);
+        Deque<int[]> subTrees = new ArrayDeque<>();
+        subTrees.push(new int[]{0, 0, index.length});
+
+        while (!subTrees.isEmpty()) {
+            int[] range = subTrees.pop();
+            Tree tree = nodes.get(range[0]);
+            int start = range[1];
+            int end = range[2];
+            if (end - start <= 1 || tree.getDepth() > heightLimit) {
+                setTerminal(tree, end - start);
+                continue;
+            }
+            // pick random feature that is not constant over the node rows
+            int colSplit = -1;
+            double min = 0.0;
+            double max = 0.0;
+            for (int attempt = 0; attempt < numFeature && colSplit < 0; attempt++) {
+                int col = random.nextInt(numFeature);
+                min = Double.POSITIVE_INFINITY;
+                max = Double.NEGATIVE_INFINITY;
+                for (int i = start; i < end; i++) {
+                    double v = data.get(index[i], col);
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+                if (max > min) {
+                    colSplit = col;
+                }
+            }
+            if (colSplit < 0) {
+                setTerminal(tree, end - start);
+                continue;
+            }
+            double splitValue = min + random.nextDouble() * (max - min);
+            int mid = start;
+            for (int i = start; i < end; i++) {
+                if (data.get(index[i], colSplit) < splitValue) {
+                    int temp = index[mid];
+                    index[mid] = index[i];
+                    index[i] = temp;
+                    mid++;
+                }
+            }
+            tree.setTerminal(false);
+            tree.setColSplit(colSplit);
+            tree.setSplitValue(splitValue);
+
+            Tree leftTree = new Tree(nodes.size());
+            leftTree.setDepth(tree.getDepth() + 1);
+            nodes.add(leftTree);
+            tree.setLeftTreeId(leftTree.getId());
+
+            Tree rightTree = new Tree(nodes.size());
+            rightTree.setDepth(tree.getDepth() + 1);
+            nodes.add(rightTree);
+            tree.setRightTreeId(rightTree.getId());
+
+            subTrees.push(new int[]{rightTree.getId(), mid, end});
+            subTrees.push(new int[]{leftTree.getId(), start, mid});
+        }
+        return nodes;
+    }
+
+    /**
+     * Helper method makes leaf -- value is path length to leaf plus the
+     * average path length of the rows that were not isolated
+     */
+    private static void setTerminal(Tree tree, int size) {
+        tree.setTerminal(true);
+        tree.setValue(tree.getDepth() - 1 + IForestModel.averagePathLength(size));
+    }
+
+    /**
+     * Helper method returns score above which the contamination fraction of
+     * training rows lies -- rows are scored in parallel chunks
+     */
+    private double contaminationThreshold(Dataset data) {
+        int numRows = data.getNumRow();
+        double[] scores = new double[numRows];
+        int numChunks = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            double[] row = new double[numFeature];
+            int end = Math.min(numRows, (chunk + 1) * CHUNK_SIZE);
+            for (int n = chunk * CHUNK_SIZE; n < end; n++) {
+                data.getRow(n, row);
+                scores[n] = model.score(row);
+            }
+        });
+        Arrays.sort(scores);
+        int numAnomaly = Math.max(1, (int) Math.round(contamination * numRows));
+        return scores[Math.max(0, numRows - numAnomaly)];
+    }
+
+    /**
+     * Method returns anomaly score of a row of features
+     *
+     * @param row
+     * @return
+     */
+    public double score(double[] row) {
+        return model.score(row);
+    }
+
+    /**
+     * Method gets predictions (1 = anomaly) from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(List<Continuous> data) {
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions (1 = anomaly) from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    /**
+     * Method gets prediction for a single row of features -- 1 = anomaly
+     *
+     * @param row
+     * @return
+     */
+    @Override
+    public int predict(double[] row) {
+        return model.score(row) >= model.getThreshold() ? 1 : 0;
+    }
+
+    /**
+     * Method writes 1 - score and score (as class 0 and class 1 probability)
+     *
+     * @param row
+     * @param out
+     */
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        double score = model.score(row);
+        out[0] = 1.0 - score;
+        out[1] = score;
+    }
+
+    public void setModel(IForestModel model) {
+        this.numFeature = model.getNumFeature();
+        this.sampleSize = model.getSampleSize();
+        this.threshold = model.getThreshold();
+        this.numTree = model.getRootTreeId() != null ? model.getRootTreeId().length : model.getForest().getNumTree();
+        this.model = model;
+    }
+
+}
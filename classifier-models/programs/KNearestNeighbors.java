@@ -0,0 +1,244 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
+import com.barnwaldo.classifiers.model.KnnModel;
+import com.barnwaldo.classifiers.model.Neighbors;
+import com.barnwaldo.classifiers.model.SpatialIndex;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * k Nearest Neighbors
+ *
+ * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset
+ *
+ * (2) fitModel copies training data into one row major double[] and builds a
+ * KdTree (up to KD_TREE_MAX_FEATURE features) or a BallTree over it -- set
+ * indexType to choose one explicitly
+ *
+ * (3) predict is the (optionally 1 / distance weighted) majority vote of the k
+ * nearest training rows -- searches use per thread neighbor heaps and stacks
+ * and do not allocate, predictBatch queries chunks of rows in parallel
+ *
+ * (4) eps > 0 gives approximate search -- subtrees that cannot hold a row
+ * nearer than the current k-th distance / (1 + eps) are skipped, trading
+ * recall for latency
+ *
+ * (5) model can be saved by using getModel().toString() or ModelIO (training
+ * points are saved, the index is rebuilt on first use)
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+@SuppressWarnings({"Duplicates", "JavaDoc"})
+public class KNearestNeighbors implements Classifier {
+
+    private static final int CHUNK_SIZE = 1024;         // rows per parallel chunk of queries
+    private static final int KD_TREE_MAX_FEATURE = 32;  // above this a ball tree prunes better
+
+    private int numFeature;
+    private int numClass;
+    private int k = 5;                      // sklearn default
+    private double eps;                     // 0 = exact search
+    private boolean weighted;               // sklearn weights = 'distance'
+    private int leafSize = 30;              // sklearn default
+    private KnnModel.IndexType indexType;   // null = by number of features
+    @Setter(AccessLevel.NONE)
+    private KnnModel model;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ThreadLocal<Neighbors> neighbors = ThreadLocal.withInitial(() -> new Neighbors(1));
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ThreadLocal<double[]> votes = new ThreadLocal<>();
+
+    public KNearestNeighbors(int numFeature, int numClass, int k) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.k = k;
+    }
+
+    public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method fits model -- training rows are copied and indexed
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        int numRows = data.getNumRow();
+        double[] points = new double[numRows * numFeature];
+        int[] labels = new int[numRows];
+        double[] row = new double[numFeature];
+        for (int n = 0; n < numRows; n++) {
+            data.getRow(n, row);
+            System.arraycopy(row, 0, points, n * numFeature, numFeature);
+            labels[n] = data.getResult(n);
+        }
+        KnnModel m = new KnnModel(numFeature, numClass, k);
+        m.setEps(eps);
+        m.setWeighted(weighted);
+        m.setLeafSize(leafSize);
+        m.setIndexType(indexType != null ? indexType
+                : numFeature <= KD_TREE_MAX_FEATURE ? KnnModel.IndexType.KD_TREE : KnnModel.IndexType.BALL_TREE);
+        m.setPoints(points);
+        m.setLabels(labels);
+        long start = System.currentTimeMillis();
+        SpatialIndex index = m.getIndex();
+        long stop = System.currentTimeMillis();
+        model = m;
+        System.out.println("Train data samples: " + numRows + ", " + m.getIndexType() + " nodes: "
+                + index.getNumNodes() + ", depth: " + index.getDepth() + " in " + (stop - start) + " (ms)");
+    }
+
+    /**
+     * Method finds the k nearest training rows of row -- the returned heap is
+     * reused by the next search of this thread
+     *
+     * @param row
+     * @return
+     */
+    public Neighbors kneighbors(double[] row) {
+        Neighbors out = neighbors.get();
+        out.reset(model.getK());
+        model.getIndex().search(row, model.getEps(), out);
+        return out;
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(List<Continuous> data) {
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    /**
+     * Method writes predicted classId of each row of data to out -- chunks of
+     * rows are queried in parallel
+     *
+     * @param data
+     * @param out
+     */
+    @Override
+    public void predictBatch(Dataset data, int[] out) {
+        model.getIndex();
+        int numRows = data.getNumRow();
+        int numChunks = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, numChunks).parallel().forEach(chunk -> {
+            double[] row = new double[numFeature];
+            int end = Math.min(numRows, (chunk + 1) * CHUNK_SIZE);
+            for (int n = chunk * CHUNK_SIZE; n < end; n++) {
+                data.getRow(n, row);
+                out[n] = predict(row);
+            }
+        });
+    }
+
+    /**
+     * Method gets prediction for a single row of features
+     *
+     * @param row
+     * @return
+     */
+    @Override
+    public int predict(double[] row) {
+        double[] vote = vote(row);
+        int maxIndex = 0;
+        for (int i = 1; i < numClass; i++) {
+            if (vote[i] > vote[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    /**
+     * Method writes (weighted) fraction of neighbor votes for each class to
+     * out
+     *
+     * @param row
+     * @param out
+     */
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        double[] vote = vote(row);
+        double total = 0.0;
+        for (int i = 0; i < numClass; i++) {
+            total += vote[i];
+        }
+        for (int i = 0; i < numClass; i++) {
+            out[i] = total > 0.0 ? vote[i] / total : 0.0;
+        }
+    }
+
+    /**
+     * Helper method returns (weighted) votes of the k nearest training rows --
+     * with distance weights, exact matches take all the votes (as in sklearn)
+     */
+    private double[] vote(double[] row) {
+        double[] vote = votes.get();
+        if (vote == null) {
+            vote = new double[numClass];
+            votes.set(vote);
+        }
+        for (int i = 0; i < numClass; i++) {
+            vote[i] = 0.0;
+        }
+        Neighbors found = kneighbors(row);
+        int[] labels = model.getIndex().getLabels();
+        boolean exact = false;
+        if (model.isWeighted()) {
+            for (int i = 0; i < found.getSize(); i++) {
+                if (found.getDistance()[i] == 0.0) {
+                    vote[labels[found.getIndex()[i]]] += 1.0;
+                    exact = true;
+                }
+            }
+        }
+        if (!exact) {
+            for (int i = 0; i < found.getSize(); i++) {
+                vote[labels[found.getIndex()[i]]] += model.isWeighted() ? 1.0 / Math.sqrt(found.getDistance()[i]) : 1.0;
+            }
+        }
+        return vote;
+    }
+
+    public void setModel(KnnModel model) {
+        this.numFeature = model.getNumFeature();
+        this.numClass = model.getNumClass();
+        this.k = model.getK();
+        this.eps = model.getEps();
+        this.weighted = model.isWeighted();
+        this.leafSize = model.getLeafSize();
+        this.indexType = model.getIndexType();
+        this.model = model;
+    }
+
+}
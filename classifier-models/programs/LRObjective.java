@@ -0,0 +1,174 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.barnwaldo.classifiers.data.Dataset;
+
+/**
+ * Regularized softmax cross entropy loss and gradient for Logistic Regression
+ * evaluated in parallel over rows of a Dataset
+ *
+ * Weights are flattened row major from LRModel.w -- w[feature][classId] is
+ * w[feature * numClass + classId]
+ *
+ * loss = regL1 * |w|^2 / 2 - (sum of log p(result | x)) / numRows
+ *
+ * Rows are split into ranges on a ForkJoinPool; each range accumulates its own
+ * gradient and the partial gradients are summed as tasks join
+ *
+ * @author barnwaldo
+ *
+ */
+public class LRObjective {
+
+    private static final int GRAIN_SIZE = 2048; // rows per leaf task
+
+    private final Dataset data;
+    private final int numFeature;
+    private final int numClass;
+    private final double regL1;
+    private final ForkJoinPool pool;
+
+    public LRObjective(Dataset data, int numClass, double regL1, ForkJoinPool pool) {
+        this.data = data;
+        this.numFeature = data.getNumFeature();
+        this.numClass = numClass;
+        this.regL1 = regL1;
+        this.pool = pool;
+    }
+
+    /**
+     * Method evaluates mean loss and gradient over rows index[from, to)
+     *
+     * @param w flattened weights
+     * @param index row indices, null for rows [from, to)
+     * @param from
+     * @param to
+     * @param grad gradient (output, length numFeature * numClass)
+     * @return loss
+     */
+    public double evaluate(double[] w, int[] index, int from, int to, double[] grad) {
+        int numRows = to - from;
+        Partial total = numRows > GRAIN_SIZE
+                ? pool.invoke(new GradientTask(w, index, from, to))
+                : accumulate(w, index, from, to);
+        double regLossSum = 0.0;
+        for (int i = 0; i < grad.length; i++) {
+            regLossSum += w[i] * w[i];
+            grad[i] = total.grad[i] / numRows + regL1 * w[i];
+        }
+        return regL1 * regLossSum / 2.0 - total.logLikelihood / numRows;
+    }
+
+    /**
+     * Method evaluates mean loss and gradient over all rows
+     *
+     * @param w
+     * @param grad
+     * @return loss
+     */
+    public double evaluate(double[] w, double[] grad) {
+        return evaluate(w, null, 0, data.getNumRow(), grad);
+    }
+
+    /**
+     * Helper method sums log likelihood and (unscaled) gradient of negative log
+     * likelihood over rows index[from, to) (rows [from, to) if index is null)
+     * -- softmax is computed once per row
+     */
+    private Partial accumulate(double[] w, int[] index, int from, int to) {
+        Partial partial = new Partial(numFeature * numClass);
+        double[] grad = partial.grad;
+        double[] x = new double[numFeature];
+        double[] p = new double[numClass];
+        for (int i = from; i < to; i++) {
+            int row = index == null ? i : index[i];
+            data.getRow(row, x);
+            int result = data.getResult(row);
+            // logits
+            for (int c = 0; c < numClass; c++) {
+                p[c] = 0.0;
+            }
+            for (int f = 0; f < numFeature; f++) {
+                double xf = x[f];
+                int offset = f * numClass;
+                for (int c = 0; c < numClass; c++) {
+                    p[c] += xf * w[offset + c];
+                }
+            }
+            // softmax (shifted by max logit for stability)
+            double maxLogit = p[0];
+            for (int c = 1; c < numClass; c++) {
+                maxLogit = Math.max(maxLogit, p[c]);
+            }
+            double denominator = 0.0;
+            for (int c = 0; c < numClass; c++) {
+                p[c] = Math.exp(p[c] - maxLogit);
+                denominator += p[c];
+            }
+            for (int c = 0; c < numClass; c++) {
+                p[c] /= denominator;
+            }
+            partial.logLikelihood += Math.log(p[result]);
+            p[result] -= 1.0;
+            for (int f = 0; f < numFeature; f++) {
+                double xf = x[f];
+                int offset = f * numClass;
+                for (int c = 0; c < numClass; c++) {
+                    grad[offset + c] += xf * p[c];
+                }
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * Partial sums for a range of rows
+     */
+    private static class Partial {
+
+        private final double[] grad;
+        private double logLikelihood;
+
+        Partial(int size) {
+            grad = new double[size];
+        }
+
+        Partial add(Partial other) {
+            for (int i = 0; i < grad.length; i++) {
+                grad[i] += other.grad[i];
+            }
+            logLikelihood += other.logLikelihood;
+            return this;
+        }
+    }
+
+    private class GradientTask extends RecursiveTask<Partial> {
+
+        private static final long serialVersionUID = 1L;
+        private final double[] w;
+        private final int[] index;
+        private final int from;
+        private final int to;
+
+        GradientTask(double[] w, int[] index, int from, int to) {
+            this.w = w;
+            this.index = index;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= GRAIN_SIZE) {
+                return accumulate(w, index, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            GradientTask left = new GradientTask(w, index, from, mid);
+            left.fork();
+            Partial right = new GradientTask(w, index, mid, to).compute();
+            return left.join().add(right);
+        }
+    }
+}
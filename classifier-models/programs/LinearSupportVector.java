@@ -0,0 +1,250 @@
+package com.barnwaldo.classifiers.programs;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
+import com.barnwaldo.classifiers.model.LinearSVCModel;
+import com.barnwaldo.classifiers.utils.IndexSampler;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Linear Support Vector Machine (primal weights, no kernel) for large data sets
+ *
+ * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset, normalized as for SupportVector
+ *
+ * (2) fitModel solves the L2 regularized SVM dual with coordinate descent and
+ * shrinking (Hsieh et al. 2008, as in liblinear) -- each pass is linear in the
+ * number of rows and no kernel cache is needed
+ *
+ * (3) multi-class uses one-vs-rest -- one binary problem per class, solved in
+ * parallel (two classes need a single problem)
+ *
+ * (4) squaredHinge selects L2-loss (default, liblinear -s 1) or L1-loss
+ * (hinge, liblinear -s 3)
+ *
+ * (5) model can be saved by using getModel().toString() which provides a JSON
+ * string with all model parameters
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+public class LinearSupportVector implements Classifier {
+
+    private int numFeature;
+    private int numClass;
+    private double C = 1.0;                 // penalty for margin violations
+    private double bias = 1.0;              // constant feature value (0 = no bias term)
+    private double eps = 0.1;               // stopping tolerance on projected gradient
+    private int maxIterations = 1000;       // passes over the data per binary problem
+    private boolean squaredHinge = true;    // L2-loss (true) or L1-loss (false)
+    private Long seed;                      // null = random seed
+    private LinearSVCModel model;
+
+    public LinearSupportVector(int numFeature, int numClass) {
+        this.numFeature = numFeature;
+        this.numClass = numClass;
+        this.model = new LinearSVCModel(numFeature, numClass, C, bias);
+    }
+
+    /**
+     * Method fits linear SVM to training data
+     *
+     * @param data
+     */
+    public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method fits linear SVM to training data -- rows are copied once to a
+     * row-major matrix (with bias column) shared by all binary problems
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        int numRows = data.getNumRow();
+        int stride = numFeature + 1;
+        double[] x = new double[numRows * stride];
+        double[] qd = new double[numRows];
+        double[] row = new double[numFeature];
+        for (int n = 0; n < numRows; n++) {
+            data.getRow(n, row);
+            System.arraycopy(row, 0, x, n * stride, numFeature);
+            x[n * stride + numFeature] = bias;
+            double norm = bias * bias;
+            for (int i = 0; i < numFeature; i++) {
+                norm += row[i] * row[i];
+            }
+            qd[n] = norm;
+        }
+        int[] labels = data.getResults();
+        model = new LinearSVCModel(numFeature, numClass, C, bias);
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[numClass];
+        for (int classId = 0; classId < numClass; classId++) {
+            randoms[classId] = random.split();
+        }
+        if (numClass == 2) {
+            double[] w = model.getW()[1];
+            int iter = solve(x, qd, labels, 1, w, randoms[1]);
+            for (int i = 0; i < stride; i++) {
+                model.getW()[0][i] = -w[i];
+            }
+            System.out.println("Binary problem solved in " + iter + " iterations");
+            return;
+        }
+        IntStream.range(0, numClass).parallel().forEach(classId -> {
+            int iter = solve(x, qd, labels, classId, model.getW()[classId], randoms[classId]);
+            System.out.println("ClassId: " + classId + " vs rest solved in " + iter + " iterations");
+        });
+    }
+
+    /**
+     * Helper method solves binary (positiveClass vs rest) SVM dual with
+     * coordinate descent -- weights w are kept equal to sum alpha * y * x
+     *
+     * @param x
+     * @param qd
+     * @param labels
+     * @param positiveClass
+     * @param w
+     * @param random
+     * @return iterations used
+     */
+    private int solve(double[] x, double[] qd, int[] labels, int positiveClass, double[] w, SplittableRandom random) {
+        int numRows = labels.length;
+        int stride = numFeature + 1;
+        double diag = squaredHinge ? 0.5 / C : 0.0;
+        double upper = squaredHinge ? Double.POSITIVE_INFINITY : C;
+        double[] alpha = new double[numRows];
+        int[] index = IndexSampler.identity(numRows);
+        int activeSize = numRows;
+        double maxPGOld = Double.POSITIVE_INFINITY;
+        double minPGOld = Double.NEGATIVE_INFINITY;
+        int iter = 0;
+        while (iter < maxIterations) {
+            double maxPGNew = Double.NEGATIVE_INFINITY;
+            double minPGNew = Double.POSITIVE_INFINITY;
+            for (int s = activeSize - 1; s > 0; s--) {
+                int j = random.nextInt(s + 1);
+                int temp = index[s];
+                index[s] = index[j];
+                index[j] = temp;
+            }
+            for (int s = 0; s < activeSize; s++) {
+                int n = index[s];
+                int offset = n * stride;
+                double y = labels[n] == positiveClass ? 1.0 : -1.0;
+                double g = 0.0;
+                for (int i = 0; i < stride; i++) {
+                    g += w[i] * x[offset + i];
+                }
+                g = y * g - 1.0 + alpha[n] * diag;
+                double pg = 0.0;
+                if (alpha[n] == 0.0) {
+                    if (g > maxPGOld) {
+                        // shrink -- alpha stays at lower bound
+                        activeSize--;
+                        index[s] = index[activeSize];
+                        index[activeSize] = n;
+                        s--;
+                        continue;
+                    } else if (g < 0.0) {
+                        pg = g;
+                    }
+                } else if (alpha[n] == upper) {
+                    if (g < minPGOld) {
+                        // shrink -- alpha stays at upper bound
+                        activeSize--;
+                        index[s] = index[activeSize];
+                        index[activeSize] = n;
+                        s--;
+                        continue;
+                    } else if (g > 0.0) {
+                        pg = g;
+                    }
+                } else {
+                    pg = g;
+                }
+                maxPGNew = Math.max(maxPGNew, pg);
+                minPGNew = Math.min(minPGNew, pg);
+                if (Math.abs(pg) > 1.0e-12) {
+                    double alphaOld = alpha[n];
+                    alpha[n] = Math.min(Math.max(alpha[n] - g / (qd[n] + diag), 0.0), upper);
+                    double d = (alpha[n] - alphaOld) * y;
+                    for (int i = 0; i < stride; i++) {
+                        w[i] += d * x[offset + i];
+                    }
+                }
+            }
+            iter++;
+            if (maxPGNew - minPGNew <= eps) {
+                if (activeSize == numRows) {
+                    break;
+                }
+                // converged on active set -- check all rows again
+                activeSize = numRows;
+                maxPGOld = Double.POSITIVE_INFINITY;
+                minPGOld = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            maxPGOld = maxPGNew <= 0.0 ? Double.POSITIVE_INFINITY : maxPGNew;
+            minPGOld = minPGNew >= 0.0 ? Double.NEGATIVE_INFINITY : minPGNew;
+        }
+        return iter;
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(List<Continuous> data) {
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    /**
+     * Method gets prediction for a single row of features
+     *
+     * @param feature
+     * @return
+     */
+    @Override
+    public int predict(double[] feature) {
+        return model.predict(feature);
+    }
+
+    /**
+     * Method writes 1.0 for the predicted class to out (no probability
+     * estimates for the linear SVM)
+     *
+     * @param feature
+     * @param out
+     */
+    @Override
+    public void predictProba(double[] feature, double[] out) {
+        Classifier.oneHot(model.predict(feature), out);
+    }
+}
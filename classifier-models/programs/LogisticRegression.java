@@ -1,10 +1,18 @@
 package com.barnwaldo.classifiers.programs;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
 
 import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
 import com.barnwaldo.classifiers.model.LRModel;
+import com.barnwaldo.classifiers.utils.IndexSampler;
+import com.barnwaldo.classifiers.utils.LBFGS;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -13,9 +21,12 @@ import lombok.Setter;
  * Logistic Regression
  *
  * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset
  *
- * (2) fitModel is used to calculate weights from cost function using batch
- * gradient descent and Softmax function for probabilities
+ * (2) fitModel is used to calculate weights from cost function using full or
+ * mini batch gradient descent (plain, momentum or Adam updates) or L-BFGS and
+ * Softmax function for probabilities -- gradients are evaluated in parallel and
+ * training can stop early once loss converges
  *
  * (3) predict is used to determine class based on input features (only) using
  * weights and Softmax
@@ -33,7 +44,19 @@ import lombok.Setter;
 @Setter
 @NoArgsConstructor
 @SuppressWarnings("JavaDoc")
-public class LogisticRegression {
+public class LogisticRegression implements Classifier {
+
+    /**
+     * Weight update rule applied after each (mini) batch gradient -- LBFGS is
+     * a full batch quasi-Newton solver where numEpoch limits iterations
+     */
+    public enum Optimizer {
+        GD, MOMENTUM, ADAM, LBFGS
+    }
+
+    private static final double BETA1 = 0.9;       // Adam first moment decay
+    private static final double BETA2 = 0.999;     // Adam second moment decay
+    private static final double EPSILON = 1.0e-8;  // Adam denominator offset
 
     private int numFeature;
     private int numClass;
@@ -42,7 +65,17 @@ public class LogisticRegression {
     private double regL1;
     private double[] loss;
     private LRModel model;
-    private double[][] grad;
+    private Optimizer optimizer = Optimizer.GD;
+    private int batchSize;                  // 0 = full batch
+    private boolean shuffle = true;         // shuffle rows each epoch for mini batches
+    private double momentum = 0.9;          // for MOMENTUM optimizer
+    private double tolerance;               // relative loss improvement for early stopping (0 = off)
+    private int patience = 5;               // epochs without improvement before stopping
+    private Long seed;                      // null = random seed
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ThreadLocal<double[]> scores = new ThreadLocal<>();
 
     public LogisticRegression(int numFeature, int numClass, double alpha, double regL1) {
         this.numFeature = numFeature;
@@ -50,29 +83,27 @@ public class LogisticRegression {
         this.alpha = alpha;
         this.regL1 = regL1;
         model = new LRModel(numFeature, numClass, alpha, regL1);
-        grad = new double[numFeature][numClass];
     }
 
     /**
-     * Softmax probability helper function uses input vector x, model weights w
-     * and returns p for input class
+     * Helper function computes linear scores (logits) for input vector x from
+     * model weights w -- Softmax is monotonic so the largest logit is also the
+     * most probable class
      *
      * @param x
-     * @param classId
-     * @return
+     * @param logits
      */
-    private double softMax(double[] x, int classId) {
-        double denominator = 0.0;
-        double[] p = new double[numClass];
+    private void logits(double[] x, double[] logits) {
+        double[][] w = model.getW();
         for (int id = 0; id < numClass; id++) {
-            double exponent = 0.0;
-            for (int feature = 0; feature < numFeature; feature++) {
-                exponent += x[feature] * model.getW()[feature][id];
+            logits[id] = 0.0;
+        }
+        for (int feature = 0; feature < numFeature; feature++) {
+            double[] wf = w[feature];
+            for (int id = 0; id < numClass; id++) {
+                logits[id] += x[feature] * wf[id];
             }
-            p[id] = Math.exp(exponent);
-            denominator += p[id];
         }
-        return p[classId] / denominator;
     }
 
     /**
@@ -82,44 +113,121 @@ public class LogisticRegression {
      * @param data
      */
     public void fitModel(List<Continuous> data) {
-        int numSamples = data.size();
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Fits model to data with (mini) batch gradient descent - numEpochs must be
+     * set prior to using fitModel for LR. Loss and gradient of each batch are
+     * evaluated in parallel; training stops early when loss has not improved
+     * by tolerance (relative) for patience epochs
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        LRObjective objective = new LRObjective(data, numClass, regL1, pool);
+        if (optimizer == Optimizer.LBFGS) {
+            fitLBFGS(objective);
+            return;
+        }
+        int numSamples = data.getNumRow();
+        int batch = batchSize <= 0 || batchSize > numSamples ? numSamples : batchSize;
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        int[] index = IndexSampler.identity(numSamples);
+
+        double[] w = flatten(model.getW());
+        double[] grad = new double[w.length];
+        double[] velocity = new double[w.length];   // momentum or Adam first moment
+        double[] second = new double[w.length];     // Adam second moment
+        int step = 0;
+
         loss = new double[numEpoch];
-        for (int epoch = 0; epoch < numEpoch; epoch++) {
-            // zero gradient column matrix
-            for (double[] g : grad) {
-                for (int i = 0; i < g.length; i++) {
-                    g[i] = 0;
-                }
+        double bestLoss = Double.MAX_VALUE;
+        int epochsWithoutImprovement = 0;
+        int epoch = 0;
+        while (epoch < numEpoch) {
+            if (shuffle && batch < numSamples) {
+                IndexSampler.shuffle(index, random);
             }
-            double currentLoss = 0.0;
-            // loop over each training data entry - add to grad and loss for each entry
-            for (Continuous d : data) {
-                // cycle through classes (columns)
-                for (int clid = 0; clid < numClass; clid++) {
-                    double[] x = d.getFeature();
-                    double prob = softMax(x, clid);
-                    for (int n = 0; n < numFeature; n++) {
-                        if (clid == d.getResult()) {
-                            grad[n][clid] += x[n] * (1 - prob);
-                            currentLoss += Math.log(prob);
-                        } else {
-                            grad[n][clid] -= x[n] * (prob);
-                        }
-                    }
-                }
+            double epochLoss = 0.0;
+            for (int from = 0; from < numSamples; from += batch) {
+                int to = Math.min(from + batch, numSamples);
+                epochLoss += objective.evaluate(w, index, from, to, grad) * (to - from);
+                step++;
+                update(w, grad, velocity, second, step);
             }
-            // scale gradient by number of samples (batch) and update weights
-            double regLossSum = 0.0;
-            for (int j = 0; j < numClass; j++) {
-                for (int i = 0; i < numFeature; i++) {
-                    regLossSum += model.getW()[i][j] * model.getW()[i][j];
-                    grad[i][j] = grad[i][j] / numSamples + regL1 * model.getW()[i][j];
-                    model.getW()[i][j] += alpha * grad[i][j];
+            loss[epoch] = epochLoss / numSamples;
+            // System.out.println("Epoch: " + epoch + ", loss = " + loss[epoch]);
+            epoch++;
+            // early stopping on convergence of loss
+            if (tolerance > 0.0) {
+                if (bestLoss - loss[epoch - 1] > tolerance * Math.max(1.0, Math.abs(bestLoss))) {
+                    epochsWithoutImprovement = 0;
+                } else if (++epochsWithoutImprovement >= patience) {
+                    break;
                 }
+                bestLoss = Math.min(bestLoss, loss[epoch - 1]);
             }
-            // update loss function
-            loss[epoch] = regL1 * regLossSum / 2.0 - currentLoss / numSamples;
-            // System.out.println("Epoch: " + epoch + ", loss = " + loss[epoch]);
+        }
+        loss = Arrays.copyOf(loss, epoch);
+        unflatten(w, model.getW());
+    }
+
+    /**
+     * Helper method fits weights with L-BFGS -- each iteration is usually one
+     * full (parallel) pass over data, a few more when line search backtracks
+     *
+     * @param objective
+     */
+    private void fitLBFGS(LRObjective objective) {
+        LBFGS lbfgs = new LBFGS();
+        lbfgs.setMaxIterations(numEpoch);
+        if (tolerance > 0.0) {
+            lbfgs.setTolerance(tolerance);
+        }
+        double[] w = flatten(model.getW());
+        loss = lbfgs.minimize(objective::evaluate, w);
+        unflatten(w, model.getW());
+    }
+
+    /**
+     * Helper method applies optimizer update to weights for gradient of loss
+     */
+    private void update(double[] w, double[] grad, double[] velocity, double[] second, int step) {
+        switch (optimizer) {
+            case MOMENTUM:
+                for (int i = 0; i < w.length; i++) {
+                    velocity[i] = momentum * velocity[i] - alpha * grad[i];
+                    w[i] += velocity[i];
+                }
+                break;
+            case ADAM:
+                double correction1 = 1.0 - Math.pow(BETA1, step);
+                double correction2 = 1.0 - Math.pow(BETA2, step);
+                for (int i = 0; i < w.length; i++) {
+                    velocity[i] = BETA1 * velocity[i] + (1.0 - BETA1) * grad[i];
+                    second[i] = BETA2 * second[i] + (1.0 - BETA2) * grad[i] * grad[i];
+                    w[i] -= alpha * (velocity[i] / correction1) / (Math.sqrt(second[i] / correction2) + EPSILON);
+                }
+                break;
+            default:
+                for (int i = 0; i < w.length; i++) {
+                    w[i] -= alpha * grad[i];
+                }
+        }
+    }
+
+    private double[] flatten(double[][] weights) {
+        double[] w = new double[numFeature * numClass];
+        for (int i = 0; i < numFeature; i++) {
+            System.arraycopy(weights[i], 0, w, i * numClass, numClass);
+        }
+        return w;
+    }
+
+    private void unflatten(double[] w, double[][] weights) {
+        for (int i = 0; i < numFeature; i++) {
+            System.arraycopy(w, i * numClass, weights[i], 0, numClass);
         }
     }
 
@@ -130,24 +238,75 @@ public class LogisticRegression {
      * @return
      */
     public int[] predict(List<Continuous> data) {
-        int numSamples = data.size();
-        int[] predictions = new int[numSamples];
-        for (int n = 0; n < numSamples; n++) {
-            Continuous d = data.get(n);
-            double[] prob = new double[numClass];
-            for (int clid = 0; clid < numClass; clid++) {
-                prob[clid] = softMax(d.getFeature(), clid);
-            }
-            double maxProb = prob[0];
-            predictions[n] = 0;
-            for (int i = 1; i < numClass; i++) {
-                if (prob[i] > maxProb) {
-                    maxProb = prob[i];
-                    predictions[n] = i;
-                }
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
+        return predictions;
+    }
+
+    /**
+     * Method gets prediction for a single row of features (largest logit)
+     *
+     * @param row
+     * @return
+     */
+    @Override
+    public int predict(double[] row) {
+        double[] logits = scoreBuffer();
+        logits(row, logits);
+        int maxClassId = 0;
+        for (int i = 1; i < numClass; i++) {
+            if (logits[i] > logits[maxClassId]) {
+                maxClassId = i;
             }
         }
-        return predictions;
+        return maxClassId;
+    }
+
+    /**
+     * Method writes Softmax probabilities for a single row of features to out
+     *
+     * @param row
+     * @param out
+     */
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        logits(row, out);
+        double max = out[0];
+        for (int i = 1; i < numClass; i++) {
+            max = Math.max(max, out[i]);
+        }
+        double sum = 0.0;
+        for (int i = 0; i < numClass; i++) {
+            out[i] = Math.exp(out[i] - max);
+            sum += out[i];
+        }
+        for (int i = 0; i < numClass; i++) {
+            out[i] /= sum;
+        }
+    }
+
+    /**
+     * Helper method returns per thread logits buffer of numClass
+     *
+     * @return
+     */
+    private double[] scoreBuffer() {
+        double[] buffer = scores.get();
+        if (buffer == null || buffer.length != numClass) {
+            buffer = new double[numClass];
+            scores.set(buffer);
+        }
+        return buffer;
     }
 
 }
@@ -1,12 +1,15 @@
 package com.barnwaldo.classifiers.programs;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import com.barnwaldo.classifiers.data.Category;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
 import com.barnwaldo.classifiers.model.MultiNBModel;
-import com.barnwaldo.classifiers.utils.TrainTestData;
+import com.barnwaldo.classifiers.model.MultiNBScorer;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -14,12 +17,15 @@ import lombok.Setter;
  * Multinomial Naive Bayes
  *
  * (1) Train/Test/Predict data must be transferred to Category (Data) objects
- * where features are tracked as integer levels 0 thru numLevel - 1
+ * (or a Dataset) where features are tracked as integer levels 0 thru
+ * numLevel - 1
  *
  * (2) fitModel is used to calculate prior probabilities, likelihoods from
- * training data set
+ * integer counts of the training data set in one pass -- partialFit and merge
+ * update the counts from more data or from a model fit elsewhere
  *
- * (3) predict is used to determine class based on input features (only)
+ * (3) predict is used to determine class based on input features (only) with a
+ * MultiNBScorer compiled from the model (log space, no underflow)
  *
  * (4) model can be saved by using getModel().toString() which provides a JSON
  * string with all model parameters
@@ -32,20 +38,20 @@ import lombok.Setter;
  */
 @Getter
 @Setter
-public class MultinomialNaiveBayes {
+public class MultinomialNaiveBayes implements Classifier {
+
+    private static final int CHUNK_SIZE = 8192; // rows per parallel chunk
 
     private int numClass;
     private int numFeature;
     private MultiNBModel model;
-    private double[] posteriors;
-    private List<List<Category>> classData;
+    @Setter(AccessLevel.NONE)
+    private volatile MultiNBScorer scorer;
 
     public MultinomialNaiveBayes(int numFeature, int numClass, int[] numLevel) {
         this.numFeature = numFeature;
         this.numClass = numClass;
         this.model = new MultiNBModel(numFeature, numClass, numLevel);
-        posteriors = new double[numClass];
-        classData = new ArrayList<>();
     }
 
     /**
@@ -56,18 +62,28 @@ public class MultinomialNaiveBayes {
      * @param data
      */
     public void fitModel(List<Category> data) {
-        // get data by classes
-        for (int classId = 0; classId < numClass; classId++) {
-            classData.add(TrainTestData.getCategoryByClass(data, classId));
-        }
-        // calculate priors
-        int total = data.size();
-        System.out.println("Train data samples: " + total);
+        fitModel(DoubleDataset.fromCategory(data, numClass));
+    }
+
+    /**
+     * Method fits Multinomial Naive Bayes to training data where feature values
+     * are levels 0 thru numLevel - 1...
+     *
+     * Fit is determined by counting levels per feature per class in a single
+     * (parallel) pass and finding frequencies (probabilities) from the counts
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        MultiNBModel counts = calculateCounts(data);
+        model.resetCounts();
+        model.mergeCounts(counts);
+        model.updateFrequencies();
+        scorer = null;
+
+        System.out.println("Train data samples: " + data.getNumRow());
         for (int classId = 0; classId < numClass; classId++) {
-            List<Category> tempData = classData.get(classId);
-            model.getPriors()[classId] = (double) tempData.size() / total;
-            calculateFreqs(tempData, classId);
-            System.out.println("ClassId: " + classId + ", Class Sample Size: " + tempData.size()
+            System.out.println("ClassId: " + classId + ", Class Sample Size: " + model.getClassCount()[classId]
                     + ", Prior = " + model.getPriors()[classId]);
 //			for (int i = 0; i < numFeature; i++) {
 //				System.out.println(model.getHeaders()[i] + ": ");
@@ -79,26 +95,75 @@ public class MultinomialNaiveBayes {
     }
 
     /**
-     * Calculate likelihoods from training data
+     * Method updates model with additional training data (incremental fit)
      *
-     * @param cat
+     * @param data
+     */
+    public void partialFit(List<Category> data) {
+        partialFit(DoubleDataset.fromCategory(data, numClass));
+    }
+
+    /**
+     * Method updates model with additional training data (incremental fit)
+     *
+     * @param data
+     */
+    public void partialFit(Dataset data) {
+        merge(calculateCounts(data));
+    }
+
+    /**
+     * Method updates model with a single training sample (incremental fit)
+     *
+     * @param level
      * @param classId
      */
-    private void calculateFreqs(List<Category> cat, int classId) {
-        int numSamples = cat.size();
-        for (int i = 0; i < numFeature; i++) {
-            int[] ctr = new int[model.getNumLevel()[i]];
-            for (Category c : cat) {
-                int feature = c.getFeature()[i];
-                if (feature < model.getNumLevel()[i]) {
-                    ctr[feature] += 1;
-                }
-            }
-            // calculate frequency with Laplace smoothing
-            for (int j = 0; j < model.getNumLevel()[i]; j++) {
-                model.getFrequency()[i][classId][j] = (double) (ctr[j] + 1) / (numSamples + numFeature);
-            }
-        }
+    public void partialFit(int[] level, int classId) {
+        model.addCounts(level, classId);
+        model.updateFrequencies();
+        scorer = null;
+    }
+
+    /**
+     * Method merges counts of a model fit elsewhere (other thread, node or
+     * Kafka partition) into this model
+     *
+     * @param other
+     */
+    public void merge(MultiNBModel other) {
+        model.mergeCounts(other);
+        model.updateFrequencies();
+        scorer = null;
+    }
+
+    /**
+     * Method counts levels of data set -- chunks of rows are counted in
+     * parallel and merged
+     *
+     * @param data
+     * @return model holding counts only
+     */
+    private MultiNBModel calculateCounts(Dataset data) {
+        int numRows = data.getNumRow();
+        int numChunks = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        return IntStream.range(0, numChunks).parallel()
+                .mapToObj(chunk -> {
+                    MultiNBModel chunkCounts = new MultiNBModel(numFeature, numClass, model.getNumLevel());
+                    int[] level = new int[numFeature];
+                    int end = Math.min(numRows, (chunk + 1) * CHUNK_SIZE);
+                    for (int row = chunk * CHUNK_SIZE; row < end; row++) {
+                        for (int i = 0; i < numFeature; i++) {
+                            level[i] = (int) data.get(row, i);
+                        }
+                        chunkCounts.addCounts(level, data.getResult(row));
+                    }
+                    return chunkCounts;
+                })
+                .reduce((a, b) -> {
+                    a.mergeCounts(b);
+                    return a;
+                })
+                .orElseGet(() -> new MultiNBModel(numFeature, numClass, model.getNumLevel()));
     }
 
     /**
@@ -108,26 +173,82 @@ public class MultinomialNaiveBayes {
      * @return
      */
     public int[] predict(List<Category> data) {
-        int numSamples = data.size();
-        int[] predictions = new int[numSamples];
-        for (int n = 0; n < numSamples; n++) {
-            int[] feature = data.get(n).getFeature();
-            for (int classId = 0; classId < numClass; classId++) {
-                double likelihood = 1.0;
-                for (int index = 0; index < numFeature; index++) {
-                    likelihood *= model.getFrequency()[index][classId][feature[index]];
-                }
-                posteriors[classId] = model.getPriors()[classId] * likelihood;
-            }
-            int maxClassId = 0;
-            for (int classId = 1; classId < numClass; classId++) {
-                if (posteriors[classId] > posteriors[maxClassId]) {
-                    maxClassId = classId;
-                }
-            }
-            predictions[n] = maxClassId;
-        }
+        return predict(DoubleDataset.fromCategory(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features (levels) based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
         return predictions;
     }
 
+    @Override
+    public void predictBatch(Dataset data, int[] out) {
+        getScorer().predictBatch(data, out);
+    }
+
+    /**
+     * Method gets prediction for a single row of feature levels (held as
+     * doubles, as in a Dataset)
+     *
+     * @param row
+     * @return
+     */
+    @Override
+    public int predict(double[] row) {
+        return getScorer().predict(row);
+    }
+
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        getScorer().predictProba(row, out);
+    }
+
+    /**
+     * Method gets prediction for a single row of feature levels
+     *
+     * @param level
+     * @return
+     */
+    public int predict(int[] level) {
+        return getScorer().predict(level);
+    }
+
+    /**
+     * Method gets prediction for a single row of raw continuous features which
+     * are mapped to levels with model thresholds
+     *
+     * @param value
+     * @return
+     */
+    public int predictRaw(double[] value) {
+        return getScorer().predictRaw(value);
+    }
+
+    /**
+     * Method returns compiled log space scorer for current model (compiled on
+     * first use after model changes)
+     *
+     * @return
+     */
+    public MultiNBScorer getScorer() {
+        MultiNBScorer current = scorer;
+        if (current == null) {
+            current = new MultiNBScorer(model);
+            scorer = current;
+        }
+        return current;
+    }
+
+    public void setModel(MultiNBModel model) {
+        this.model = model;
+        scorer = null;
+    }
+
 }
@@ -1,12 +1,18 @@
 package com.barnwaldo.classifiers.programs;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
 import com.barnwaldo.classifiers.data.Tree;
 import com.barnwaldo.classifiers.model.RFModel;
-import com.barnwaldo.classifiers.utils.TrainTestData;
+import com.barnwaldo.classifiers.utils.IndexSampler;
 
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -16,6 +22,7 @@ import lombok.Setter;
  * Random Forest
  *
  * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects
+ * or a Dataset
  *
  * (2) fitModel is used to calculate forest of trees where splits and left/right
  * trees are saved for predictions
@@ -33,7 +40,7 @@ import lombok.Setter;
  */
 @Getter
 @Setter
-public class RandomForest {
+public class RandomForest implements Classifier {
 
     private int numTree; // sklearn default = 100
     private int maxDepth; // sklearn default = None (here use -1)
@@ -41,6 +48,8 @@ public class RandomForest {
     private int numFeature;
     private int numClass;
     private double sampleRate; // suggest default to 0.8 or 0.9
+    private boolean bootstrap; // sklearn default = true (sample with replacement), here false (subsample)
+    private Long seed; // null = random seed
     private RFModel model;
     @Getter(AccessLevel.NONE)
     @Setter(AccessLevel.NONE)
@@ -55,63 +64,78 @@ public class RandomForest {
     }
 
     public void fitModel(List<Continuous> data) {
+        fitModel(DoubleDataset.fromContinuous(data, numClass));
+    }
 
+    /**
+     * Method fits forest to training data -- all trees share data and only hold
+     * sample indices into it
+     *
+     * @param data
+     */
+    public void fitModel(Dataset data) {
+        int numRows = data.getNumRow();
+        int sampleSize = numRows - (int) ((1.0 - sampleRate) * numRows);
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
         for (int treeIndex = 0; treeIndex < numTree; treeIndex++) {
-            // get random shuffled split from training data
-            List<Continuous> trainData = TrainTestData.sampleContinuousData(data, sampleRate);
-            // System.out.println("-----> Starting new tree -- index: " + treeIndex + " DataSize: " + trainData.size());
+            // get random sample of row indices from training data
+            SplittableRandom treeRandom = random.split();
+            int[] index = bootstrap
+                    ? IndexSampler.bootstrap(numRows, sampleSize, treeRandom)
+                    : IndexSampler.subsample(numRows, sampleSize, treeRandom);
+            // System.out.println("-----> Starting new tree -- index: " + treeIndex + " DataSize: " + sampleSize);
             Tree root = new Tree(treeList.size());
             root.setDepth(1);
-            root.setData(TrainTestData.copyListToArray(trainData));
             model.getRootTreeId()[treeIndex] = root.getId();
             treeList.add(root);
-            buildTree(root);
+            buildTree(root, data, index);
         }
         // save treeList to model
-        Tree[] trees = new Tree[treeList.size()];
-        for (int i = 0; i < treeList.size(); i++) {
-            Tree tree = treeList.get(i);
-            tree.setData(null);
-            trees[i] = tree;
-        }
-        model.setTrees(trees);
+        model.setTrees(treeList.toArray(new Tree[0]));
+        model.setForest(null);
     }
 
     /**
-     * Method build tree starting from root (where data sample is passed with
-     * root tree)
+     * Method build tree starting from root -- tree is grown depth first where
+     * each node owns the range [start, end) of the shared index array. Ranges
+     * are partitioned in place (as in quicksort) so no node keeps a copy of its
+     * data and only the pending ranges are held on the stack
      *
      * @param root
+     * @param data
+     * @param index
      */
-    private void buildTree(Tree root) {
+    private void buildTree(Tree root, Dataset data, int[] index) {
         // System.out.println("Enter buildTree...");
-        List<Integer> subTrees = new ArrayList<>();
-        subTrees.add(root.getId());
+        Deque<int[]> subTrees = new ArrayDeque<>();
+        subTrees.push(new int[]{root.getId(), 0, index.length});
 
         // loop through all subtrees
-        while (subTrees.size() > 0) {
-            int treeId = subTrees.remove(0);
-            Tree tree = treeList.get(treeId);
-            getSplit(tree);
-            // split data into right/left groups based on best split
-            List<Continuous> leftList = new ArrayList<>();
-            List<Continuous> rightList = new ArrayList<>();
-            Continuous[] data = tree.getData();
-            for (Continuous data1 : data) {
-                if (data1.getFeature()[tree.getColSplit()] < tree.getSplitValue()) {
-                    leftList.add(data1);
-                } else {
-                    rightList.add(data1);
-                }
+        while (!subTrees.isEmpty()) {
+            int[] range = subTrees.pop();
+            Tree tree = treeList.get(range[0]);
+            int start = range[1];
+            int end = range[2];
+
+            if (isPure(data, index, start, end)) {
+                setTerminal(tree, data, index, start, end);
+                continue;
             }
-            Continuous[] leftData = TrainTestData.copyListToArray(leftList);
-            Continuous[] rightData = TrainTestData.copyListToArray(rightList);
-            int leftSize = leftData.length;
-            int rightSize = rightData.length;
+            getSplit(tree, data, index, start, end);
+            // split data into left/right ranges based on best split
+            int mid = partition(data, index, start, end, tree.getColSplit(), tree.getSplitValue());
+            int leftSize = mid - start;
+            int rightSize = end - mid;
 
             // System.out.println("SplitPoint: " + tree.getRowSplit() + " " + tree.getColSplit() + "  treeId: "
             //		+ tree.getId() + "   'depth: " + tree.getDepth());
             // System.out.println("Left Tree Size: " + leftSize + "  Right Tree Size: " + rightSize);
+            if (leftSize == 0 || rightSize == 0) {
+                setTerminal(tree, data, index, start, end);
+                // System.out.println("--->> Terminal node reached... Group size criterion...");
+                continue;
+            }
+
             tree.setTerminal(false);
             // add new left and trees
             Tree leftTree = new Tree(treeList.size());
@@ -124,83 +148,86 @@ public class RandomForest {
             treeList.add(rightTree);
             tree.setRightTreeId(rightTree.getId());
 
-            if (leftSize == 0 || rightSize == 0) {
-                int classifier = getClassWithMostSamples(tree);
-                leftTree.setData(tree.getData());
-                rightTree.setData(tree.getData());
-                leftTree.setClassifier(classifier);
-                rightTree.setClassifier(classifier);
-                leftTree.setTerminal(true);
-                rightTree.setTerminal(true);
-                // System.out.println("--->> Terminal node reached... Group size criterion...");
-                continue;
-            }
-
-            leftTree.setData(leftData);
-            rightTree.setData(rightData);
             if (tree.getDepth() > maxDepth) {
-                int leftClassifier = getClassWithMostSamples(leftTree);
-                leftTree.setClassifier(leftClassifier);
-                leftTree.setTerminal(true);
-                int rightClassifier = getClassWithMostSamples(rightTree);
-                rightTree.setClassifier(rightClassifier);
-                rightTree.setTerminal(true);
+                setTerminal(leftTree, data, index, start, mid);
+                setTerminal(rightTree, data, index, mid, end);
                 // System.out.println("--->> Terminal node reached... Max depth criterion...");
                 continue;
             }
 
+            // push right first so that left subtree is built first (depth first)
+            if (rightSize < minSize) {
+                setTerminal(rightTree, data, index, mid, end);
+                // System.out.println("--->> Right Terminal node reached... Min size criterion...");
+            } else {
+                subTrees.push(new int[]{rightTree.getId(), mid, end});
+            }
             if (leftSize < minSize) {
-                int leftClassifier = getClassWithMostSamples(leftTree);
-                leftTree.setClassifier(leftClassifier);
-                leftTree.setTerminal(true);
+                setTerminal(leftTree, data, index, start, mid);
                 // System.out.println("--->> Left Terminal node reached... Min size criterion...");
             } else {
-                subTrees.add(leftTree.getId());
-                // System.out.println("Add left child subtree...");
+                subTrees.push(new int[]{leftTree.getId(), start, mid});
             }
-            if (rightSize < minSize) {
-                int rightClassifier = getClassWithMostSamples(rightTree);
-                rightTree.setClassifier(rightClassifier);
-                rightTree.setTerminal(true);
-                // System.out.println("--->> Right Terminal node reached... Min size criterion...");
-            } else {
-                subTrees.add(rightTree.getId());
-                // System.out.println("Add right child subtree...");
+        }
+    }
+
+    /**
+     * Helper method partitions index[start, end) in place so that rows with
+     * feature colSplit below splitValue come first
+     *
+     * @param data
+     * @param index
+     * @param start
+     * @param end
+     * @param colSplit
+     * @param splitValue
+     * @return first index of right partition
+     */
+    private int partition(Dataset data, int[] index, int start, int end, int colSplit, double splitValue) {
+        int mid = start;
+        for (int i = start; i < end; i++) {
+            if (data.get(index[i], colSplit) < splitValue) {
+                int temp = index[mid];
+                index[mid] = index[i];
+                index[i] = temp;
+                mid++;
             }
         }
+        return mid;
     }
 
     /**
      * Helper method finds optimal tree split based on lowest GINI index
      *
      * @param tree
+     * @param data
+     * @param index
+     * @param start
+     * @param end
      */
-    private void getSplit(Tree tree) {
+    private void getSplit(Tree tree, Dataset data, int[] index, int start, int end) {
         double gini = 1.0;
-        Continuous[] data = tree.getData();
-        List<Continuous> leftData = new ArrayList<>();
-        List<Continuous> rightData = new ArrayList<>();
-        for (int i = 0; i < data.length; i++) {
+        int[] leftClassCtr = new int[numClass];
+        int[] rightClassCtr = new int[numClass];
+        for (int i = start; i < end; i++) {
             for (int j = 0; j < numFeature; j++) {
-                double splitValue = data[i].getFeature()[j];
-                // split data into left - right for test
-                leftData.clear();
-                rightData.clear();
-                for (Continuous data1 : data) {
-                    if (data1.getFeature()[j] < splitValue) {
-                        leftData.add(data1);
+                double splitValue = data.get(index[i], j);
+                // count classes left - right for test split
+                Arrays.fill(leftClassCtr, 0);
+                Arrays.fill(rightClassCtr, 0);
+                for (int k = start; k < end; k++) {
+                    if (data.get(index[k], j) < splitValue) {
+                        leftClassCtr[data.getResult(index[k])]++;
                     } else {
-                        rightData.add(data1);
+                        rightClassCtr[data.getResult(index[k])]++;
                     }
                 }
-                Continuous[] left = TrainTestData.copyListToArray(leftData);
-                Continuous[] right = TrainTestData.copyListToArray(rightData);
                 // determine GINI index for test split
-                double testGini = giniIndex(left, right);
+                double testGini = giniIndex(leftClassCtr, rightClassCtr);
                 // save split to node if testGini < nodeGini
                 if (testGini < gini) {
                     gini = testGini;
-                    tree.setRowSplit(i);
+                    tree.setRowSplit(i - start);
                     tree.setColSplit(j);
                     tree.setSplitValue(splitValue);
                 }
@@ -210,35 +237,32 @@ public class RandomForest {
 
     /**
      * Helper method calculates GINI index for a left/right data split at
-     * current tree level
+     * current tree level from class counts on each side
      *
-     * @param left
-     * @param right
+     * @param leftClassCtr
+     * @param rightClassCtr
      * @return
      */
-    private double giniIndex(Continuous[] left, Continuous[] right) {
-        int numLeft = left.length;
-        int numRight = right.length;
-        int numTotal = numRight + numLeft;
-        int[] leftClassCtr = new int[numClass];
-        int[] rightClassCtr = new int[numClass];
-
-        for (Continuous left1 : left) {
-            leftClassCtr[left1.getResult()] += 1;
-        }
-        for (Continuous right1 : right) {
-            rightClassCtr[right1.getResult()] += 1;
+    private double giniIndex(int[] leftClassCtr, int[] rightClassCtr) {
+        int numLeft = 0;
+        int numRight = 0;
+        for (int i = 0; i < numClass; i++) {
+            numLeft += leftClassCtr[i];
+            numRight += rightClassCtr[i];
         }
+        int numTotal = numRight + numLeft;
         double leftTerm = 1.0;
         if (numLeft != 0) {
             for (int i = 0; i < numClass; i++) {
-                leftTerm -= (leftClassCtr[i] / numLeft) * (leftClassCtr[i] / numLeft);
+                double p = (double) leftClassCtr[i] / numLeft;
+                leftTerm -= p * p;
             }
         }
         double rightTerm = 1.0;
         if (numRight != 0) {
             for (int i = 0; i < numClass; i++) {
-                rightTerm -= (rightClassCtr[i] / numRight) * (rightClassCtr[i] / numRight);
+                double p = (double) rightClassCtr[i] / numRight;
+                rightTerm -= p * p;
             }
         }
         // return GINI index for split
@@ -246,18 +270,44 @@ public class RandomForest {
     }
 
     /**
-     * Helper method to get classId for class with most samples at terminal node
-     * of tree
+     * Helper method checks if all samples in index[start, end) have same class
+     * -- an empty range (e.g. a zero sample size) is pure
      *
-     * @param tree
+     * @param data
+     * @param index
+     * @param start
+     * @param end
      * @return
      */
-    private int getClassWithMostSamples(Tree tree) {
-        Continuous[] data = tree.getData();
+    private boolean isPure(Dataset data, int[] index, int start, int end) {
+        if (start >= end) {
+            return true;
+        }
+        int classId = data.getResult(index[start]);
+        for (int i = start + 1; i < end; i++) {
+            if (data.getResult(index[i]) != classId) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to mark tree as terminal (leaf) node with classId for class
+     * with most samples in index[start, end)
+     *
+     * @param tree
+     * @param data
+     * @param index
+     * @param start
+     * @param end
+     */
+    private void setTerminal(Tree tree, Dataset data, int[] index, int start, int end) {
         int[] ctr = new int[numClass];
-        for (Continuous c : data) {
-            if (c.getResult() < numClass) {
-                ctr[c.getResult()]++;
+        for (int i = start; i < end; i++) {
+            int result = data.getResult(index[i]);
+            if (result < numClass) {
+                ctr[result]++;
             }
         }
         int maxCtrIndex = 0;
@@ -266,7 +316,8 @@ public class RandomForest {
                 maxCtrIndex = i;
             }
         }
-        return maxCtrIndex;
+        tree.setClassifier(maxCtrIndex);
+        tree.setTerminal(true);
     }
 
     /**
@@ -276,54 +327,46 @@ public class RandomForest {
      * @return
      */
     public int[] predict(List<Continuous> data) {
-        // System.out.println("--- Predictions ---");
-        int numSamples = data.size();
-        int[] predictions = new int[numSamples];
-        for (int n = 0; n < numSamples; n++) {
-            Continuous c = data.get(n);
-            int[] ctr = new int[numClass];
-            for (int i = 0; i < numTree; i++) {
-                int rootTreeId = model.getRootTreeId()[i];
-                int classId = predictClass(model.getTrees()[rootTreeId], c);
-                ctr[classId]++;
-            }
-            int maxCtrIndex = 0;
-            for (int i = 1; i < numClass; i++) {
-                if (ctr[i] > ctr[maxCtrIndex]) {
-                    maxCtrIndex = i;
-                }
-            }
-            predictions[n] = maxCtrIndex;
-            // System.out.println("Sample " + n + "   classId: " + maxCtrIndex);
-        }
+        return predict(DoubleDataset.fromContinuous(data, numClass));
+    }
+
+    /**
+     * Method gets predictions from features based on model fit
+     *
+     * @param data
+     * @return
+     */
+    public int[] predict(Dataset data) {
+        int[] predictions = new int[data.getNumRow()];
+        predictBatch(data, predictions);
         return predictions;
     }
 
+    @Override
+    public void predictBatch(Dataset data, int[] out) {
+        model.getForest().predictBatch(data, out);
+    }
+
     /**
-     * Helper method to get predicted classId for a given data entry and tree
+     * Method gets prediction for a single row of features
      *
-     * @param root
      * @param row
      * @return
      */
-    private int predictClass(Tree root, Continuous row) {
-        List<Integer> subTrees = new ArrayList<>();
-        subTrees.add(root.getId());
-        Tree tree = root;
-        // loop through all subtrees
-        while (subTrees.size() > 0) {
-            int treeId = subTrees.remove(0);
-            tree = model.getTrees()[treeId];
-            if (tree.isTerminal()) {
-                break;
-            }
-            if (row.getFeature()[tree.getColSplit()] < tree.getSplitValue()) {
-                subTrees.add(tree.getLeftTreeId());
-            } else {
-                subTrees.add(tree.getRightTreeId());
-            }
-        }
-        return tree.getClassifier();
+    @Override
+    public int predict(double[] row) {
+        return model.getForest().predict(row);
+    }
+
+    /**
+     * Method writes fraction of tree votes for each class to out
+     *
+     * @param row
+     * @param out
+     */
+    @Override
+    public void predictProba(double[] row, double[] out) {
+        model.getForest().predictProba(row, out);
     }
 
 }
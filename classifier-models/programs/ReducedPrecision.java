@@ -0,0 +1,627 @@
+package com.barnwaldo.classifiers.programs;
+
+import com.barnwaldo.classifiers.model.FlatForest;
+import com.barnwaldo.classifiers.model.GBModel;
+import com.barnwaldo.classifiers.model.GaussNBScorer;
+import com.barnwaldo.classifiers.model.IForestModel;
+import com.barnwaldo.classifiers.model.LRModel;
+import com.barnwaldo.classifiers.model.LinearSVCModel;
+import com.barnwaldo.classifiers.model.MultiNBScorer;
+import com.barnwaldo.classifiers.model.SVCScorer;
+
+/**
+ * Reduced precision scoring -- compiles a fitted classifier into a Classifier
+ * that keeps its parameters as float (float32) or as int8 with one scale per
+ * weight row (int8), halving or quartering the memory read per row
+ *
+ * (1) float32 -- weights, split values, leaf values, means, precisions, log
+ * frequencies and support vectors are stored as float, arithmetic is still
+ * done in double so the only change is the rounding of the parameters
+ *
+ * (2) int8 -- linear weights (LR, LSVC) and dense network weights are
+ * quantized symmetrically per row (per class or per output unit): scale =
+ * max |w| / 127 and q = round(w / scale), a dot product is sum(q * x) * scale
+ * -- dense networks also quantize each layer input so their dot products are
+ * integer (see DenseNetwork)
+ *
+ * (3) inputs stay double[] rows so reduced models can be used wherever a
+ * Classifier is -- reduce(classifier, precision) selects by Precision and
+ * PrecisionReport compares them to the double baseline
+ *
+ * k Nearest Neighbors is not supported -- its points are the index itself
+ * (see SpatialIndex) rather than compiled parameters
+ *
+ * @author barnwaldo
+ *
+ */
+public class ReducedPrecision {
+
+    public enum Precision {
+        FLOAT64, FLOAT32, INT8
+    }
+
+    /**
+     * Method returns classifier at precision -- FLOAT64 returns classifier
+     *
+     * @param classifier
+     * @param precision
+     * @return
+     */
+    public static Classifier reduce(Classifier classifier, Precision precision) {
+        switch (precision) {
+            case FLOAT32:
+                return float32(classifier);
+            case INT8:
+                return int8(classifier);
+            default:
+                return classifier;
+        }
+    }
+
+    /**
+     * Method returns float32 version of fitted classifier
+     *
+     * @param classifier
+     * @return
+     */
+    public static Classifier float32(Classifier classifier) {
+        if (classifier instanceof LogisticRegression) {
+            return new LinearFloat(Linear.of(((LogisticRegression) classifier).getModel()));
+        }
+        if (classifier instanceof LinearSupportVector) {
+            return new LinearFloat(Linear.of(((LinearSupportVector) classifier).getModel()));
+        }
+        if (classifier instanceof RandomForest) {
+            return ForestFloat.vote(((RandomForest) classifier).getModel().getForest());
+        }
+        if (classifier instanceof HoeffdingTree) {
+            return ForestFloat.vote(((HoeffdingTree) classifier).getModel().getForest());
+        }
+        if (classifier instanceof GradientBoosting) {
+            return ForestFloat.boosted(((GradientBoosting) classifier).getModel());
+        }
+        if (classifier instanceof IsolationForest) {
+            return ForestFloat.isolation(((IsolationForest) classifier).getModel());
+        }
+        if (classifier instanceof GaussianNaiveBayes) {
+            return new GaussNBFloat(((GaussianNaiveBayes) classifier).getScorer());
+        }
+        if (classifier instanceof MultinomialNaiveBayes) {
+            return new MultiNBFloat(((MultinomialNaiveBayes) classifier).getScorer());
+        }
+        if (classifier instanceof SupportVector) {
+            SupportVector svc = (SupportVector) classifier;
+            return new SVCFloat(new SVCScorer(svc.getModel(), true), svc.getNumFeature(), svc.getNumClass());
+        }
+        if (classifier instanceof DenseNetwork) {
+            return ((DenseNetwork) classifier).toFloat32();
+        }
+        throw new IllegalArgumentException("No float32 scoring for " + classifier.getClass().getSimpleName());
+    }
+
+    /**
+     * Method returns int8 (per row scaled) version of fitted classifier -- LR,
+     * LSVC and dense networks only
+     *
+     * @param classifier
+     * @return
+     */
+    public static Classifier int8(Classifier classifier) {
+        if (classifier instanceof LogisticRegression) {
+            return new LinearInt8(Linear.of(((LogisticRegression) classifier).getModel()));
+        }
+        if (classifier instanceof LinearSupportVector) {
+            return new LinearInt8(Linear.of(((LinearSupportVector) classifier).getModel()));
+        }
+        if (classifier instanceof DenseNetwork) {
+            return ((DenseNetwork) classifier).toInt8();
+        }
+        throw new IllegalArgumentException("No int8 scoring for " + classifier.getClass().getSimpleName());
+    }
+
+    /**
+     * Helper method writes softmax of out[0, n) in place
+     */
+    static void softmax(double[] out, int n) {
+        double max = out[0];
+        for (int i = 1; i < n; i++) {
+            max = Math.max(max, out[i]);
+        }
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            out[i] = Math.exp(out[i] - max);
+            sum += out[i];
+        }
+        for (int i = 0; i < n; i++) {
+            out[i] /= sum;
+        }
+    }
+
+    static int argMax(double[] values, int n) {
+        int maxIndex = 0;
+        for (int i = 1; i < n; i++) {
+            if (values[i] > values[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    /**
+     * Per thread buffer of n doubles
+     */
+    static double[] buffer(ThreadLocal<double[]> local, int n) {
+        double[] buffer = local.get();
+        if (buffer == null || buffer.length < n) {
+            buffer = new double[n];
+            local.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Weights of a linear model in double -- one row of numFeature + 1 weights
+     * per class (bias weight last, multiplied by the bias feature value)
+     */
+    static class Linear {
+
+        final int numFeature;
+        final int numClass;
+        final double[] w;           // [classId * (numFeature + 1) + feature]
+        final double bias;          // bias feature value (0 = none)
+        final boolean softmax;      // LR probabilities, otherwise one hot
+
+        private Linear(int numFeature, int numClass, double bias, boolean softmax) {
+            this.numFeature = numFeature;
+            this.numClass = numClass;
+            this.w = new double[numClass * (numFeature + 1)];
+            this.bias = bias;
+            this.softmax = softmax;
+        }
+
+        static Linear of(LRModel model) {
+            Linear linear = new Linear(model.getNumFeature(), model.getNumClass(), 0.0, true);
+            for (int f = 0; f < linear.numFeature; f++) {
+                for (int c = 0; c < linear.numClass; c++) {
+                    linear.w[c * (linear.numFeature + 1) + f] = model.getW()[f][c];
+                }
+            }
+            return linear;
+        }
+
+        static Linear of(LinearSVCModel model) {
+            Linear linear = new Linear(model.getNumFeature(), model.getNumClass(), model.getBias(), false);
+            for (int c = 0; c < linear.numClass; c++) {
+                System.arraycopy(model.getW()[c], 0, linear.w, c * (linear.numFeature + 1), linear.numFeature + 1);
+            }
+            return linear;
+        }
+    }
+
+    /**
+     * Linear model with float weights
+     */
+    static class LinearFloat implements Classifier {
+
+        final int numFeature;
+        final int numClass;
+        final float[] w;            // [classId * (numFeature + 1) + feature]
+        final double bias;
+        final boolean softmax;
+        final ThreadLocal<double[]> scores = new ThreadLocal<>();
+
+        LinearFloat(Linear linear) {
+            this.numFeature = linear.numFeature;
+            this.numClass = linear.numClass;
+            this.bias = linear.bias;
+            this.softmax = linear.softmax;
+            this.w = new float[linear.w.length];
+            for (int i = 0; i < w.length; i++) {
+                w[i] = (float) linear.w[i];
+            }
+        }
+
+        void scores(double[] row, double[] out) {
+            for (int c = 0; c < numClass; c++) {
+                int offset = c * (numFeature + 1);
+                double sum = w[offset + numFeature] * bias;
+                for (int f = 0; f < numFeature; f++) {
+                    sum += w[offset + f] * row[f];
+                }
+                out[c] = sum;
+            }
+        }
+
+        @Override
+        public int getNumFeature() {
+            return numFeature;
+        }
+
+        @Override
+        public int getNumClass() {
+            return numClass;
+        }
+
+        @Override
+        public int predict(double[] row) {
+            double[] out = buffer(scores, numClass);
+            scores(row, out);
+            return argMax(out, numClass);
+        }
+
+        @Override
+        public void predictProba(double[] row, double[] out) {
+            if (softmax) {
+                scores(row, out);
+                softmax(out, numClass);
+            } else {
+                Classifier.oneHot(predict(row), out);
+            }
+        }
+    }
+
+    /**
+     * Linear model with int8 weights and one float scale per class row -- the
+     * bias term is kept in double
+     */
+    static class LinearInt8 implements Classifier {
+
+        final int numFeature;
+        final int numClass;
+        final byte[] q;             // [classId * numFeature + feature]
+        final float[] scale;        // per class
+        final double[] biasScore;   // bias weight x bias feature value, per class
+        final boolean softmax;
+        final ThreadLocal<double[]> scores = new ThreadLocal<>();
+
+        LinearInt8(Linear linear) {
+            this.numFeature = linear.numFeature;
+            this.numClass = linear.numClass;
+            this.q = new byte[numClass * numFeature];
+            this.scale = new float[numClass];
+            this.biasScore = new double[numClass];
+            this.softmax = linear.softmax;
+            for (int c = 0; c < numClass; c++) {
+                int offset = c * (numFeature + 1);
+                scale[c] = DenseNetwork.quantizeRow(linear.w, offset, numFeature, q, c * numFeature);
+                biasScore[c] = linear.w[offset + numFeature] * linear.bias;
+            }
+        }
+
+        void scores(double[] row, double[] out) {
+            for (int c = 0; c < numClass; c++) {
+                int offset = c * numFeature;
+                double sum = 0.0;
+                for (int f = 0; f < numFeature; f++) {
+                    sum += q[offset + f] * row[f];
+                }
+                out[c] = sum * scale[c] + biasScore[c];
+            }
+        }
+
+        @Override
+        public int getNumFeature() {
+            return numFeature;
+        }
+
+        @Override
+        public int getNumClass() {
+            return numClass;
+        }
+
+        @Override
+        public int predict(double[] row) {
+            double[] out = buffer(scores, numClass);
+            scores(row, out);
+            return argMax(out, numClass);
+        }
+
+        @Override
+        public void predictProba(double[] row, double[] out) {
+            if (softmax) {
+                scores(row, out);
+                softmax(out, numClass);
+            } else {
+                Classifier.oneHot(predict(row), out);
+            }
+        }
+    }
+
+    /**
+     * Compiled forest with float split and leaf values -- node structure
+     * (root, feature, right) is shared with the double FlatForest
+     */
+    static class ForestFloat implements Classifier {
+
+        enum Mode {
+            VOTE, BOOSTED, ISOLATION
+        }
+
+        final Mode mode;
+        final int numFeature;
+        final int numClass;
+        final int[] root;
+        final int[] feature;
+        final int[] right;
+        final float[] value;
+        final int numOutput;        // BOOSTED
+        final double[] baseScore;   // BOOSTED
+        final double threshold;     // ISOLATION
+        final double pathNorm;      // ISOLATION -- c(sampleSize)
+        final ThreadLocal<double[]> scores = new ThreadLocal<>();
+
+        private ForestFloat(Mode mode, FlatForest forest, int numOutput, double[] baseScore, double threshold,
+                double pathNorm) {
+            this.mode = mode;
+            this.numFeature = forest.getNumFeature();
+            this.numClass = forest.getNumClass();
+            this.root = forest.getRoot();
+            this.feature = forest.getFeature();
+            this.right = forest.getRight();
+            this.value = new float[forest.getValue().length];
+            for (int n = 0; n < value.length; n++) {
+                value[n] = (float) forest.getValue()[n];
+            }
+            this.numOutput = numOutput;
+            this.baseScore = baseScore;
+            this.threshold = threshold;
+            this.pathNorm = pathNorm;
+        }
+
+        static ForestFloat vote(FlatForest forest) {
+            return new ForestFloat(Mode.VOTE, forest, 0, null, 0.0, 0.0);
+        }
+
+        static ForestFloat boosted(GBModel model) {
+            return new ForestFloat(Mode.BOOSTED, model.getForest(), model.getNumOutput(), model.getBaseScore(),
+                    0.0, 0.0);
+        }
+
+        static ForestFloat isolation(IForestModel model) {
+            return new ForestFloat(Mode.ISOLATION, model.getForest(), 0, null, model.getThreshold(),
+                    IForestModel.averagePathLength(model.getSampleSize()));
+        }
+
+        int leaf(int t, double[] row) {
+            int n = root[t];
+            while (feature[n] >= 0) {
+                n = row[feature[n]] < value[n] ? n + 1 : right[n];
+            }
+            return n;
+        }
+
+        /**
+         * Helper method writes votes (VOTE), raw scores (BOOSTED) or total
+         * path length (ISOLATION) to out
+         */
+        void sum(double[] row, double[] out) {
+            if (mode == Mode.BOOSTED) {
+                System.arraycopy(baseScore, 0, out, 0, numOutput);
+                for (int t = 0; t < root.length; t++) {
+                    out[t % numOutput] += value[leaf(t, row)];
+                }
+            } else if (mode == Mode.VOTE) {
+                for (int c = 0; c < numClass; c++) {
+                    out[c] = 0.0;
+                }
+                for (int t = 0; t < root.length; t++) {
+                    out[(int) value[leaf(t, row)]] += 1.0;
+                }
+            } else {
+                double pathLength = 0.0;
+                for (int t = 0; t < root.length; t++) {
+                    pathLength += value[leaf(t, row)];
+                }
+                out[0] = Math.pow(2.0, -pathLength / root.length / pathNorm);
+            }
+        }
+
+        @Override
+        public int getNumFeature() {
+            return numFeature;
+        }
+
+        @Override
+        public int getNumClass() {
+            return numClass;
+        }
+
+        @Override
+        public int predict(double[] row) {
+            double[] out = buffer(scores, numClass);
+            sum(row, out);
+            if (mode == Mode.ISOLATION) {
+                return out[0] >= threshold ? 1 : 0;
+            }
+            if (mode == Mode.BOOSTED && numOutput == 1) {
+                return out[0] > 0.0 ? 1 : 0;
+            }
+            return argMax(out, numClass);
+        }
+
+        @Override
+        public void predictProba(double[] row, double[] out) {
+            sum(row, out);
+            if (mode == Mode.ISOLATION) {
+                out[1] = out[0];
+                out[0] = 1.0 - out[1];
+            } else if (mode == Mode.BOOSTED && numOutput == 1) {
+                out[1] = 1.0 / (1.0 + Math.exp(-out[0]));
+                out[0] = 1.0 - out[1];
+            } else if (mode == Mode.BOOSTED) {
+                softmax(out, numOutput);
+            } else {
+                for (int c = 0; c < numClass; c++) {
+                    out[c] /= root.length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gaussian Naive Bayes scorer with float means and precisions
+     */
+    static class GaussNBFloat implements Classifier {
+
+        final int numFeature;
+        final int numClass;
+        final double[] logNorm;
+        final float[] means;
+        final float[] halfPrecision;
+        final ThreadLocal<double[]> scores = new ThreadLocal<>();
+
+        GaussNBFloat(GaussNBScorer scorer) {
+            this.numFeature = scorer.getNumFeature();
+            this.numClass = scorer.getNumClass();
+            this.logNorm = scorer.getLogNorm();
+            this.means = new float[scorer.getMeans().length];
+            this.halfPrecision = new float[means.length];
+            for (int i = 0; i < means.length; i++) {
+                means[i] = (float) scorer.getMeans()[i];
+                halfPrecision[i] = (float) scorer.getHalfPrecision()[i];
+            }
+        }
+
+        void logPosteriors(double[] row, double[] out) {
+            for (int c = 0; c < numClass; c++) {
+                int offset = c * numFeature;
+                double sum = 0.0;
+                for (int i = 0; i < numFeature; i++) {
+                    double d = row[i] - means[offset + i];
+                    sum += d * d * halfPrecision[offset + i];
+                }
+                out[c] = logNorm[c] - sum;
+            }
+        }
+
+        @Override
+        public int getNumFeature() {
+            return numFeature;
+        }
+
+        @Override
+        public int getNumClass() {
+            return numClass;
+        }
+
+        @Override
+        public int predict(double[] row) {
+            double[] out = buffer(scores, numClass);
+            logPosteriors(row, out);
+            return argMax(out, numClass);
+        }
+
+        @Override
+        public void predictProba(double[] row, double[] out) {
+            logPosteriors(row, out);
+            softmax(out, numClass);
+        }
+    }
+
+    /**
+     * Multinomial Naive Bayes scorer with float log frequencies -- rows are
+     * feature levels held as doubles, as in MultinomialNaiveBayes
+     */
+    static class MultiNBFloat implements Classifier {
+
+        final int numFeature;
+        final int numClass;
+        final int[] numLevel;
+        final double[] logPriors;
+        final float[][] logFrequency;
+        final ThreadLocal<double[]> scores = new ThreadLocal<>();
+
+        MultiNBFloat(MultiNBScorer scorer) {
+            this.numFeature = scorer.getNumFeature();
+            this.numClass = scorer.getNumClass();
+            this.numLevel = scorer.getNumLevel();
+            this.logPriors = scorer.getLogPriors();
+            this.logFrequency = new float[numFeature][];
+            for (int i = 0; i < numFeature; i++) {
+                double[] table = scorer.getLogFrequency()[i];
+                logFrequency[i] = new float[table.length];
+                for (int k = 0; k < table.length; k++) {
+                    logFrequency[i][k] = (float) table[k];
+                }
+            }
+        }
+
+        void logPosteriors(double[] row, double[] out) {
+            System.arraycopy(logPriors, 0, out, 0, numClass);
+            for (int i = 0; i < numFeature; i++) {
+                int l = (int) row[i];
+                if (l >= 0 && l < numLevel[i]) {
+                    float[] table = logFrequency[i];
+                    int offset = l * numClass;
+                    for (int j = 0; j < numClass; j++) {
+                        out[j] += table[offset + j];
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int getNumFeature() {
+            return numFeature;
+        }
+
+        @Override
+        public int getNumClass() {
+            return numClass;
+        }
+
+        @Override
+        public int predict(double[] row) {
+            double[] out = buffer(scores, numClass);
+            logPosteriors(row, out);
+            return argMax(out, numClass);
+        }
+
+        @Override
+        public void predictProba(double[] row, double[] out) {
+            logPosteriors(row, out);
+            softmax(out, numClass);
+        }
+    }
+
+    /**
+     * Support vector classifier scored by an SVCScorer compiled with float
+     * support vectors
+     */
+    static class SVCFloat implements Classifier {
+
+        final SVCScorer scorer;
+        final int numFeature;
+        final int numClass;
+
+        SVCFloat(SVCScorer scorer, int numFeature, int numClass) {
+            this.scorer = scorer;
+            this.numFeature = numFeature;
+            this.numClass = numClass;
+        }
+
+        @Override
+        public int getNumFeature() {
+            return numFeature;
+        }
+
+        @Override
+        public int getNumClass() {
+            return numClass;
+        }
+
+        @Override
+        public int predict(double[] row) {
+            return scorer.predict(row);
+        }
+
+        @Override
+        public void predictProba(double[] row, double[] out) {
+            if (scorer.isProbability()) {
+                scorer.predictProba(row, out);
+            } else {
+                Classifier.oneHot(scorer.predict(row), out);
+            }
+        }
+    }
+}
@@ -1,15 +1,17 @@
 package com.barnwaldo.classifiers.programs;
 
-import java.util.Arrays;
 import java.util.List;
 
 import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
 import com.barnwaldo.classifiers.model.SVCModel;
+import com.barnwaldo.classifiers.model.SVCScorer;
 
 import libsvm.svm;
 import libsvm.svm_node;
-import libsvm.svm_parameter;
 import libsvm.svm_problem;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -17,12 +19,13 @@ import lombok.Setter;
 /**
  * Support Vector Machine
  * 
- * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects and normalized [-1, 1] by calling normalize on
- * each Continuous data object
+ * (1) Train/Test/Predict data must be transferred to Continuous (Data) objects (or a Dataset) and normalized [-1, 1] by
+ * calling normalize on each Continuous data object
  * 
  * (2) fitModel is used to determine libSVM model from training data
  * 
- * (3) predict is used to determine class based on input features (only) and saved libSVM model
+ * (3) predict is used to determine class based on input features (only) and saved libSVM model -- rows are scored with
+ * an SVCScorer compiled from the model (same predictions as libSVM, no per row allocation)
  * 
  * (4) model can be saved by using getModel().toString() which provides a JSON string with all model parameters
  * 
@@ -33,13 +36,15 @@ import lombok.Setter;
  */
 @Getter
 @Setter
-public class SupportVector {
+public class SupportVector implements Classifier {
 	private int numFeature;
 	private int numClass;
 	private int cv;
 	private String errorMessage;
 	private svm_problem svmProblem;
 	private SVCModel model;
+	@Setter(AccessLevel.NONE)
+	private volatile SVCScorer scorer;
 
 	public SupportVector(int numFeature, int numClass) {
 		this.numFeature = numFeature;
@@ -54,21 +59,28 @@ public class SupportVector {
 	 * @param data
 	 */
 	public void fitModel(List<Continuous> data) {
-		int numSample = data.size();
+		fitModel(DoubleDataset.fromContinuous(data, numClass));
+	}
+
+	/**
+	 * Method fits SVM Classifier to training data
+	 * 
+	 * @param data
+	 */
+	public void fitModel(Dataset data) {
+		int numSample = data.getNumRow();
 		svmProblem.l = numSample;
 		svmProblem.x = new svm_node[numSample][numFeature];
 		svmProblem.y = new double[numSample];
-		// convert Continuous class data to svm_problem (and node) class data
+		// convert Dataset rows to svm_problem (and node) class data
 		for (int i = 0; i < numSample; i++) {
-			Continuous d = data.get(i);
-			double[] attr = d.getFeature();
-			svm_node s = new svm_node();
 			for (int j = 0; j < numFeature; j++) {
+				svm_node s = new svm_node();
 				s.index = j;
-				s.value = attr[j];
+				s.value = data.get(i, j);
 				svmProblem.x[i][j] = s;
 			}
-			svmProblem.y[i] = (double) d.getResult();
+			svmProblem.y[i] = (double) data.getResult(i);
 		}
 
 		errorMessage = svm.svm_check_parameter(svmProblem, model.getSvmParameter());
@@ -82,6 +94,7 @@ public class SupportVector {
 			crossValidation();
 		} else {
 			model.setSvmModel(svm.svm_train(svmProblem, model.getSvmParameter()));
+			scorer = null;
 		}
 	}
 
@@ -92,33 +105,73 @@ public class SupportVector {
 	 * @return
 	 */
 	public int[] predict(List<Continuous> data) {
-		int numSamples = data.size();
-		int[] predictions = new int[numSamples];
-		int[] labels = new int[numClass];
-		double[] probEstimates = new double[numClass];
-		svm.svm_get_labels(model.getSvmModel(), labels);
-
-		for (int n = 0; n < numSamples; n++) {
-			Continuous d = data.get(n);
-			double[] attr = d.getFeature();
-			svm_node[] x = new svm_node[numFeature];
-			for(int i = 0; i < numFeature; i++) {
-				x[i] = new svm_node();
-				x[i].index = i;
-				x[i].value =  attr[i];
-			}
-			svm_parameter svmp = model.getSvmParameter();
-			if (svmp.probability == 1 && (svmp.svm_type == svm_parameter.C_SVC
-					|| svmp.svm_type == svm_parameter.NU_SVC)) {
-				predictions[n] = (int)svm.svm_predict_probability(model.getSvmModel(), x, probEstimates);
-				System.out.println("ClassId: " + predictions[n] + ", Probabilities: " + Arrays.toString(probEstimates));
-			} else {
-				predictions[n] = (int)svm.svm_predict(model.getSvmModel(), x);
-			}
-		}
+		return predict(DoubleDataset.fromContinuous(data, numClass));
+	}
+
+	/**
+	 * Method gets predictions from features based on model fit
+	 * 
+	 * @param data
+	 * @return
+	 */
+	public int[] predict(Dataset data) {
+		int[] predictions = new int[data.getNumRow()];
+		predictBatch(data, predictions);
 		return predictions;
 	}
 
+	@Override
+	public void predictBatch(Dataset data, int[] out) {
+		getScorer().predictBatch(data, out);
+	}
+
+	/**
+	 * Method gets prediction for a single row of features
+	 * 
+	 * @param feature
+	 * @return
+	 */
+	@Override
+	public int predict(double[] feature) {
+		return getScorer().predict(feature);
+	}
+
+	/**
+	 * Method writes class probabilities to out -- libSVM estimates if the model was trained with probability = 1,
+	 * otherwise 1.0 for the predicted class
+	 * 
+	 * @param feature
+	 * @param out
+	 */
+	@Override
+	public void predictProba(double[] feature, double[] out) {
+		SVCScorer current = getScorer();
+		if (current.isProbability()) {
+			current.predictProba(feature, out);
+		} else {
+			Classifier.oneHot(current.predict(feature), out);
+		}
+	}
+
+	/**
+	 * Method returns compiled scorer for current libSVM model (compiled on first use after model changes)
+	 * 
+	 * @return
+	 */
+	public SVCScorer getScorer() {
+		SVCScorer current = scorer;
+		if (current == null) {
+			current = new SVCScorer(model);
+			scorer = current;
+		}
+		return current;
+	}
+
+	public void setModel(SVCModel model) {
+		this.model = model;
+		scorer = null;
+	}
+
 	/**
 	 * Helper method to perform cross validation if option is enabled -- cv > 2
 	 */
@@ -0,0 +1,199 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.barnwaldo.classifiers.data.Dataset;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Model agnostic k-fold cross validation and grid search
+ *
+ * (1) a model is given as a FitPredict function -- build the classifier from
+ * params, fit it to train and return predictions for test, e.g.
+ * (train, test, p) -> { RandomForest rf = new RandomForest(...);
+ * rf.setMaxDepth(p.get("maxDepth").intValue()); rf.fitModel(train); return
+ * rf.predict(test); }
+ *
+ * (2) folds are row indices (stratified by default) and train/test folds are
+ * Dataset views -- training data is shared read-only by all tasks, never
+ * copied
+ *
+ * (3) every (parameter combination, fold) pair is a task on a bounded pool of
+ * numThreads -- models that are parallel themselves (e.g. LogisticRegression)
+ * share the cores, so numThreads may need to be lowered for them
+ *
+ * (4) accuracy per fold is TrainTestData.accuracy (percent) and grid search
+ * results are sorted best mean accuracy first
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+public class CrossValidation {
+
+    /**
+     * Fits a model built from params to train and returns predictions for test
+     */
+    @FunctionalInterface
+    public interface FitPredict {
+
+        int[] fitPredict(Dataset train, Dataset test, Map<String, Double> params);
+    }
+
+    /**
+     * Cross validation result for one parameter combination
+     */
+    @Getter
+    public static class Result {
+
+        private final Map<String, Double> params;
+        private final double[] foldAccuracy;
+        private final double meanAccuracy;
+        private final double stdAccuracy;
+
+        Result(Map<String, Double> params, double[] foldAccuracy) {
+            this.params = params;
+            this.foldAccuracy = foldAccuracy;
+            double sum = 0.0;
+            for (double acc : foldAccuracy) {
+                sum += acc;
+            }
+            this.meanAccuracy = sum / foldAccuracy.length;
+            double sumSq = 0.0;
+            for (double acc : foldAccuracy) {
+                sumSq += (acc - meanAccuracy) * (acc - meanAccuracy);
+            }
+            this.stdAccuracy = Math.sqrt(sumSq / foldAccuracy.length);
+        }
+
+        @Override
+        public String toString() {
+            return params + " -> accuracy = " + String.format("%.3f", meanAccuracy) + "% (+/- "
+                    + String.format("%.3f", stdAccuracy) + ")";
+        }
+    }
+
+    private int numFolds = 5;
+    private boolean stratified = true;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private Long seed;                      // null = random seed
+
+    /**
+     * Method cross validates one parameter combination
+     *
+     * @param data
+     * @param params
+     * @param model
+     * @return
+     */
+    public Result crossValidate(Dataset data, Map<String, Double> params, FitPredict model) {
+        return search(data, Collections.singletonList(params), model).get(0);
+    }
+
+    /**
+     * Method cross validates every combination of the parameter grid (all
+     * values of each parameter)
+     *
+     * @param data
+     * @param grid
+     * @param model
+     * @return results sorted by mean accuracy (best first)
+     */
+    public List<Result> gridSearch(Dataset data, Map<String, double[]> grid, FitPredict model) {
+        List<Result> results = search(data, combinations(grid), model);
+        results.sort(Comparator.comparingDouble(Result::getMeanAccuracy).reversed());
+        return results;
+    }
+
+    /**
+     * Method cross validates a list of parameter combinations -- all (params,
+     * fold) tasks run on a bounded pool and share the fold views of data
+     *
+     * @param data
+     * @param paramList
+     * @param model
+     * @return results in paramList order
+     */
+    public List<Result> search(Dataset data, List<Map<String, Double>> paramList, FitPredict model) {
+        SplittableRandom random = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        int[][] folds = stratified
+                ? IndexSampler.stratifiedKFold(data.getResults(), data.getNumClass(), numFolds, random)
+                : IndexSampler.kFold(data.getNumRow(), numFolds, random);
+        Dataset[] trainFolds = new Dataset[numFolds];
+        Dataset[] testFolds = new Dataset[numFolds];
+        for (int fold = 0; fold < numFolds; fold++) {
+            trainFolds[fold] = data.select(IndexSampler.complement(data.getNumRow(), folds[fold]));
+            testFolds[fold] = data.select(folds[fold]);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        try {
+            List<List<Future<Double>>> futures = new ArrayList<>();
+            for (Map<String, Double> params : paramList) {
+                List<Future<Double>> foldFutures = new ArrayList<>(numFolds);
+                for (int fold = 0; fold < numFolds; fold++) {
+                    Dataset train = trainFolds[fold];
+                    Dataset test = testFolds[fold];
+                    foldFutures.add(pool.submit(() ->
+                            TrainTestData.accuracy(model.fitPredict(train, test, params), test.getResults())));
+                }
+                futures.add(foldFutures);
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < paramList.size(); i++) {
+                double[] foldAccuracy = new double[numFolds];
+                for (int fold = 0; fold < numFolds; fold++) {
+                    foldAccuracy[fold] = futures.get(i).get(fold).get();
+                }
+                Result result = new Result(paramList.get(i), foldAccuracy);
+                System.out.println("Cross Validation: " + result);
+                results.add(result);
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("cross validation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("cross validation failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Helper method expands parameter grid to all combinations (first
+     * parameter varies slowest)
+     *
+     * @param grid
+     * @return
+     */
+    public static List<Map<String, Double>> combinations(Map<String, double[]> grid) {
+        List<Map<String, Double>> combos = new ArrayList<>();
+        combos.add(new LinkedHashMap<>());
+        for (Map.Entry<String, double[]> entry : grid.entrySet()) {
+            List<Map<String, Double>> expanded = new ArrayList<>();
+            for (Map<String, Double> combo : combos) {
+                for (double value : entry.getValue()) {
+                    Map<String, Double> params = new LinkedHashMap<>(combo);
+                    params.put(entry.getKey(), value);
+                    expanded.add(params);
+                }
+            }
+            combos = expanded;
+        }
+        return combos;
+    }
+}
@@ -0,0 +1,313 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.barnwaldo.classifiers.data.DoubleDataset;
+import com.barnwaldo.classifiers.data.MappedDataset;
+import com.barnwaldo.classifiers.data.WritableDataset;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Streaming ingest of numeric CSV files -- each line holds numFeature values
+ * followed by the classId (result) as the last column
+ *
+ * (1) file is cut into numThreads segments on line boundaries
+ *
+ * (2) first pass counts rows per segment so every segment knows its first row
+ *
+ * (3) second pass parses each segment in fixed size chunks with
+ * FastDoubleParser and writes values straight into a binary data set file
+ * (toBinaryFile) or a DoubleDataset (toDataset)
+ *
+ * Heap use is one chunk buffer per thread regardless of file size (plus the
+ * DoubleDataset itself for toDataset)
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+public class CsvIngest {
+
+    private byte delimiter = ',';
+    private boolean header;                 // skip first line
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 1 << 20;        // bytes read per chunk
+
+    /**
+     * Method converts CSV file to binary data set file and returns it mapped
+     * read-only
+     *
+     * @param csvFilename
+     * @param binFilename
+     * @param columnType MappedDataset.FLOAT64 or FLOAT32
+     * @return
+     * @throws IOException
+     */
+    public MappedDataset toBinaryFile(String csvFilename, String binFilename, byte columnType) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFilename), StandardOpenOption.READ)) {
+            long[] segments = findSegments(channel);
+            int[] firstRow = countRows(channel, segments);
+            int numRow = firstRow[firstRow.length - 1];
+            byte[] columnTypes = new byte[countFeatures(channel, segments[0])];
+            Arrays.fill(columnTypes, columnType);
+            MappedDataset target = DatasetFile.create(binFilename, numRow, 0, columnTypes);
+            int numClass = parse(channel, segments, firstRow, target);
+            DatasetFile.writeNumClass(binFilename, numClass);
+        }
+        return DatasetFile.open(binFilename);
+    }
+
+    /**
+     * Method reads CSV file into a column major DoubleDataset
+     *
+     * @param csvFilename
+     * @return
+     * @throws IOException
+     */
+    public DoubleDataset toDataset(String csvFilename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(csvFilename), StandardOpenOption.READ)) {
+            long[] segments = findSegments(channel);
+            int[] firstRow = countRows(channel, segments);
+            int numRow = firstRow[firstRow.length - 1];
+            int numFeature = countFeatures(channel, segments[0]);
+            DoubleDataset target = new DoubleDataset(numRow, numFeature, 0);
+            int numClass = parse(channel, segments, firstRow, target);
+            return new DoubleDataset(numRow, numFeature, numClass, target.getValues(), target.getResults());
+        }
+    }
+
+    /**
+     * Helper method cuts file into segments that start at beginning of a line
+     *
+     * @param channel
+     * @return segment boundaries -- segment i is [segments[i], segments[i + 1])
+     * @throws IOException
+     */
+    private long[] findSegments(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long start = header ? nextLineStart(channel, 0) : 0;
+        int numSegments = (int) Math.max(1, Math.min(numThreads, (size - start) / chunkSize + 1));
+        long[] segments = new long[numSegments + 1];
+        segments[0] = start;
+        for (int i = 1; i < numSegments; i++) {
+            long nominal = start + (size - start) * i / numSegments;
+            segments[i] = Math.max(segments[i - 1], nextLineStart(channel, nominal - 1));
+        }
+        segments[numSegments] = size;
+        return segments;
+    }
+
+    /**
+     * Helper method returns position after next new line at or after position
+     */
+    private long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long size = channel.size();
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            for (int i = 0; i < n; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * Helper method counts number of delimited fields in first line of data
+     * less the result column
+     */
+    private int countFeatures(FileChannel channel, long start) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        channel.read(buffer, start);
+        int numField = 1;
+        for (int i = 0; i < buffer.position() && buffer.get(i) != '\n'; i++) {
+            if (buffer.get(i) == delimiter) {
+                numField++;
+            }
+        }
+        return numField - 1;
+    }
+
+    /**
+     * Helper method counts non blank lines in each segment (in parallel)
+     *
+     * @return first row of each segment -- last entry is total row count
+     */
+    private int[] countRows(FileChannel channel, long[] segments) throws IOException {
+        int numSegments = segments.length - 1;
+        List<Long> counts = runSegments(numSegments, segment -> {
+            long[] count = new long[1];
+            scan(channel, segments[segment], segments[segment + 1], (line, start, end) -> count[0]++);
+            return count[0];
+        });
+        int[] firstRow = new int[numSegments + 1];
+        long total = 0;
+        for (int i = 0; i < numSegments; i++) {
+            firstRow[i] = (int) total;
+            total += counts.get(i);
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("CSV file has too many rows: " + total);
+        }
+        firstRow[numSegments] = (int) total;
+        return firstRow;
+    }
+
+    /**
+     * Helper method parses each segment (in parallel) into target
+     *
+     * @return number of classes (max classId + 1)
+     */
+    private int parse(FileChannel channel, long[] segments, int[] firstRow, WritableDataset target)
+            throws IOException {
+        int numFeature = target.getNumFeature();
+        List<Long> maxResults = runSegments(segments.length - 1, segment -> {
+            int[] row = {firstRow[segment]};
+            int[] maxResult = {-1};
+            scan(channel, segments[segment], segments[segment + 1], (line, start, end) -> {
+                int col = 0;
+                int fieldStart = start;
+                for (int i = start; i <= end; i++) {
+                    if (i == end || line[i] == delimiter) {
+                        if (col > numFeature) {
+                            throw new IOException("Too many fields in row " + row[0]);
+                        }
+                        double value = FastDoubleParser.parse(line, fieldStart, i);
+                        if (col < numFeature) {
+                            target.set(row[0], col, value);
+                        } else {
+                            int result = (int) value;
+                            target.setResult(row[0], result);
+                            maxResult[0] = Math.max(maxResult[0], result);
+                        }
+                        col++;
+                        fieldStart = i + 1;
+                    }
+                }
+                if (col != numFeature + 1) {
+                    throw new IOException("Expected " + (numFeature + 1) + " fields in row " + row[0]
+                            + " but found " + col);
+                }
+                row[0]++;
+            });
+            return (long) maxResult[0];
+        });
+        long maxResult = -1;
+        for (long m : maxResults) {
+            maxResult = Math.max(maxResult, m);
+        }
+        return (int) maxResult + 1;
+    }
+
+    /**
+     * Helper method reads [start, end) in chunks and passes each non blank line
+     * (without line terminator) to consumer -- a line that does not fit in a
+     * chunk grows the buffer
+     */
+    private void scan(FileChannel channel, long start, long end, LineConsumer consumer) throws IOException {
+        byte[] bytes = new byte[chunkSize];
+        int length = 0;
+        long position = start;
+        while (position < end || length > 0) {
+            if (position < end) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, length, (int) Math.min(bytes.length - length, end - position));
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new IOException("Unexpected end of CSV file");
+                }
+                position += n;
+                length += n;
+            }
+            boolean last = position >= end;
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] == '\n') {
+                    acceptLine(bytes, lineStart, i, consumer);
+                    lineStart = i + 1;
+                }
+            }
+            if (last) {
+                acceptLine(bytes, lineStart, length, consumer);
+                length = 0;
+            } else {
+                // carry partial line over to next chunk
+                System.arraycopy(bytes, lineStart, bytes, 0, length - lineStart);
+                length -= lineStart;
+            }
+        }
+    }
+
+    private void acceptLine(byte[] bytes, int start, int end, LineConsumer consumer) throws IOException {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') {
+                consumer.accept(bytes, start, end);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Helper method runs task for each segment on a pool of numThreads threads
+     */
+    private List<Long> runSegments(int numSegments, SegmentTask task) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, numSegments)));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < numSegments; i++) {
+                int segment = i;
+                futures.add(executor.submit(() -> task.run(segment)));
+            }
+            List<Long> results = new ArrayList<>();
+            for (Future<Long> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("CSV ingest interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface LineConsumer {
+
+        void accept(byte[] line, int start, int end) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface SegmentTask {
+
+        long run(int segment) throws IOException;
+    }
+}
@@ -0,0 +1,218 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.MappedDataset;
+
+/**
+ * Binary column major data set file read through memory mapped buffers
+ *
+ * File layout (little endian):
+ *
+ * (1) header -- int magic 'BWDS', int version, long numRow, int numFeature,
+ * int numClass, byte[numFeature] column types (FLOAT64 = 0, FLOAT32 = 1)
+ *
+ * (2) one section per feature column of numRow values followed by a section of
+ * numRow int results -- each section starts on an 8 byte boundary
+ *
+ * Each section is mapped separately so a column may be up to 2GB (268M rows of
+ * doubles) and the file as a whole may exceed the heap
+ *
+ * @author barnwaldo
+ *
+ */
+public class DatasetFile {
+
+    public static final int MAGIC = 0x42574453; // 'BWDS'
+    public static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 24;
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Method opens data set file read-only -- columns are mapped, not read
+     *
+     * @param filename
+     * @return
+     * @throws IOException
+     */
+    public static MappedDataset open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a binary data set file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported data set file version " + version + " in " + filename);
+            }
+            long numRow = header.getLong();
+            int numFeature = header.getInt();
+            int numClass = header.getInt();
+            if (numRow > Integer.MAX_VALUE) {
+                throw new IOException("Data set file " + filename + " has too many rows: " + numRow);
+            }
+            ByteBuffer types = ByteBuffer.allocate(numFeature);
+            readFully(channel, types, FIXED_HEADER_SIZE);
+            byte[] columnTypes = types.array();
+            return map(channel, FileChannel.MapMode.READ_ONLY, (int) numRow, numClass, columnTypes);
+        }
+    }
+
+    /**
+     * Method creates (pre-sized) data set file and maps it read-write so
+     * columns can be filled in any order, e.g. by parallel CSV ingest
+     *
+     * @param filename
+     * @param numRow
+     * @param numClass
+     * @param columnTypes
+     * @return
+     * @throws IOException
+     */
+    public static MappedDataset create(String filename, int numRow, int numClass, byte[] columnTypes)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            writeHeader(channel, numRow, numClass, columnTypes);
+            return map(channel, FileChannel.MapMode.READ_WRITE, numRow, numClass, columnTypes);
+        }
+    }
+
+    /**
+     * Method updates number of classes in header of existing data set file,
+     * e.g. once all results have been written
+     *
+     * @param filename
+     * @param numClass
+     * @throws IOException
+     */
+    public static void writeNumClass(String filename, int numClass) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(numClass);
+            value.flip();
+            channel.write(value, FIXED_HEADER_SIZE - Integer.BYTES);
+        }
+    }
+
+    /**
+     * Method writes any Dataset to a binary data set file with all feature
+     * columns of the given type (MappedDataset.FLOAT64 or FLOAT32)
+     *
+     * @param data
+     * @param filename
+     * @param columnType
+     * @throws IOException
+     */
+    public static void write(Dataset data, String filename, byte columnType) throws IOException {
+        int numRow = data.getNumRow();
+        byte[] columnTypes = new byte[data.getNumFeature()];
+        Arrays.fill(columnTypes, columnType);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(channel, numRow, data.getNumClass(), columnTypes);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            long offset = dataOffset(columnTypes.length);
+            for (int col = 0; col < columnTypes.length; col++) {
+                channel.position(offset);
+                for (int row = 0; row < numRow; row++) {
+                    if (buffer.remaining() < Double.BYTES) {
+                        flush(channel, buffer);
+                    }
+                    if (columnType == MappedDataset.FLOAT32) {
+                        buffer.putFloat((float) data.get(row, col));
+                    } else {
+                        buffer.putDouble(data.get(row, col));
+                    }
+                }
+                flush(channel, buffer);
+                offset += sectionSize(numRow, MappedDataset.typeSize(columnType));
+            }
+            channel.position(offset);
+            for (int row = 0; row < numRow; row++) {
+                if (buffer.remaining() < Integer.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putInt(data.getResult(row));
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Helper method maps each column section and the results section
+     */
+    private static MappedDataset map(FileChannel channel, FileChannel.MapMode mode, int numRow, int numClass,
+            byte[] columnTypes) throws IOException {
+        ByteBuffer[] columns = new ByteBuffer[columnTypes.length];
+        long offset = dataOffset(columnTypes.length);
+        for (int col = 0; col < columnTypes.length; col++) {
+            long size = (long) numRow * MappedDataset.typeSize(columnTypes[col]);
+            columns[col] = mapSection(channel, mode, offset, size);
+            offset += sectionSize(numRow, MappedDataset.typeSize(columnTypes[col]));
+        }
+        ByteBuffer results = mapSection(channel, mode, offset, (long) numRow * Integer.BYTES);
+        return new MappedDataset(numRow, numClass, columnTypes, columns, results);
+    }
+
+    private static MappedByteBuffer mapSection(FileChannel channel, FileChannel.MapMode mode, long offset, long size)
+            throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Data set column section too large to map: " + size + " bytes");
+        }
+        MappedByteBuffer buffer = channel.map(mode, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static void writeHeader(FileChannel channel, int numRow, int numClass, byte[] columnTypes)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE + columnTypes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(numRow).putInt(columnTypes.length).putInt(numClass);
+        header.put(columnTypes);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * Helper method returns file offset of first column section
+     */
+    private static long dataOffset(int numFeature) {
+        return align(FIXED_HEADER_SIZE + numFeature);
+    }
+
+    private static long sectionSize(int numRow, int typeSize) {
+        return align((long) numRow * typeSize);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of data set file");
+            }
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,105 @@
+package com.barnwaldo.classifiers.utils;
+
+import lombok.Getter;
+
+/**
+ * Maps a continuous feature value to a level 0 thru numLevel - 1
+ *
+ * (1) threshold holds numLevel + 1 bin edges {min, t1, ..., max} -- level l
+ * covers threshold[l] <= value < threshold[l + 1], values outside [min, max]
+ * go to the first/last level
+ *
+ * (2) equal-width bins are found arithmetically in O(1), other bins (e.g.
+ * quantile bins from a QuantileSketch) by binary search in O(log numLevel)
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class Discretizer {
+
+    private static final double UNIFORM_TOLERANCE = 1.0e-9;
+
+    private final double[] threshold;
+    private final int numLevel;
+    private final boolean uniform;
+    private final double scale;     // numLevel / (max - min) for uniform bins
+
+    /**
+     * Constructor from bin edges -- equal-width edges (within tolerance) use
+     * arithmetic lookup
+     *
+     * @param threshold
+     */
+    public Discretizer(double[] threshold) {
+        this.threshold = threshold;
+        this.numLevel = threshold.length - 1;
+        double range = threshold[numLevel] - threshold[0];
+        double delta = range / numLevel;
+        boolean equalWidth = true;
+        for (int i = 1; i <= numLevel && equalWidth; i++) {
+            equalWidth = Math.abs(threshold[i] - (threshold[0] + i * delta)) <= UNIFORM_TOLERANCE * Math.max(1.0, Math.abs(range));
+        }
+        this.uniform = equalWidth;
+        this.scale = range > 0.0 ? numLevel / range : 0.0;
+    }
+
+    /**
+     * Method returns discretizer with numLevel equal-width bins over [min, max]
+     *
+     * @param min
+     * @param max
+     * @param numLevel
+     * @return
+     */
+    public static Discretizer equalWidth(double min, double max, int numLevel) {
+        double[] threshold = new double[numLevel + 1];
+        double delta = (max - min) / numLevel;
+        threshold[0] = min;
+        for (int i = 0; i < numLevel; i++) {
+            threshold[i + 1] = min + (i + 1) * delta;
+        }
+        return new Discretizer(threshold);
+    }
+
+    /**
+     * Method returns discretizer with numLevel (approximately) equal-frequency
+     * bins from quantiles of a sketch
+     *
+     * @param sketch
+     * @param numLevel
+     * @return
+     */
+    public static Discretizer quantile(QuantileSketch sketch, int numLevel) {
+        double[] fractions = new double[numLevel + 1];
+        for (int i = 0; i <= numLevel; i++) {
+            fractions[i] = (double) i / numLevel;
+        }
+        return new Discretizer(sketch.quantiles(fractions));
+    }
+
+    /**
+     * Method returns level of value
+     *
+     * @param value
+     * @return
+     */
+    public int level(double value) {
+        if (uniform) {
+            int level = (int) ((value - threshold[0]) * scale);
+            return level < 0 ? 0 : (level >= numLevel ? numLevel - 1 : level);
+        }
+        // count inner edges t1 ... t(numLevel - 1) that are <= value
+        int lo = 1;
+        int hi = numLevel;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (threshold[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+}
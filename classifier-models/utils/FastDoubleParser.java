@@ -0,0 +1,129 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Single pass double parser working directly on bytes of a text buffer -- no
+ * String is created for ordinary decimal numbers
+ *
+ * Numbers with at most 18 significant digits, a mantissa below 2^53 and a
+ * decimal exponent within [-22, 22] are converted exactly with one multiply or
+ * divide (Clinger fast path). All other input falls back to
+ * Double.parseDouble so results always match it
+ *
+ * @author barnwaldo
+ *
+ */
+public class FastDoubleParser {
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Method parses number in buffer[start, end) -- surrounding blanks and
+     * double quotes are ignored
+     *
+     * @param buffer
+     * @param start
+     * @param end
+     * @return
+     * @throws NumberFormatException
+     */
+    public static double parse(byte[] buffer, int start, int end) {
+        // trim blanks and quotes
+        while (start < end && isTrimmed(buffer[start])) {
+            start++;
+        }
+        while (end > start && isTrimmed(buffer[end - 1])) {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        // integer part
+        while (i < end && isDigit(buffer[i])) {
+            anyDigit = true;
+            if (numDigits < 18) {
+                if (mantissa != 0 || buffer[i] != '0') {
+                    mantissa = 10 * mantissa + (buffer[i] - '0');
+                    numDigits++;
+                }
+            } else {
+                exponent++;
+                if (buffer[i] != '0') {
+                    return fallback(buffer, start, end);
+                }
+            }
+            i++;
+        }
+        // fraction part
+        if (i < end && buffer[i] == '.') {
+            i++;
+            while (i < end && isDigit(buffer[i])) {
+                anyDigit = true;
+                if (numDigits < 18) {
+                    if (mantissa != 0 || buffer[i] != '0') {
+                        numDigits++;
+                    }
+                    mantissa = 10 * mantissa + (buffer[i] - '0');
+                    exponent--;
+                } else if (buffer[i] != '0') {
+                    return fallback(buffer, start, end);
+                }
+                i++;
+            }
+        }
+        if (!anyDigit) {
+            return fallback(buffer, start, end);
+        }
+        // exponent part
+        if (i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+                negativeExponent = buffer[i] == '-';
+                i++;
+            }
+            if (i == end) {
+                return fallback(buffer, start, end);
+            }
+            int exp = 0;
+            while (i < end && isDigit(buffer[i])) {
+                if (exp > 9999) {
+                    return fallback(buffer, start, end);
+                }
+                exp = 10 * exp + (buffer[i] - '0');
+                i++;
+            }
+            exponent += negativeExponent ? -exp : exp;
+        }
+        if (i != end || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return fallback(buffer, start, end);
+        }
+        double value = mantissa;
+        value = exponent < 0 ? value / POWERS_OF_TEN[-exponent] : value * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean isTrimmed(byte b) {
+        return b == ' ' || b == '\t' || b == '"' || b == '\r';
+    }
+
+    private static double fallback(byte[] buffer, int start, int end) {
+        return Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+    }
+}
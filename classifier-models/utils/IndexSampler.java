@@ -0,0 +1,316 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Sampling helpers that work on int[] row indices rather than on the data
+ * itself -- source data is never copied, reordered or modified
+ *
+ * (1) shuffleSplit / stratifiedSplit return {trainIndex, testIndex}
+ *
+ * (2) subsample (without replacement) and bootstrap (with replacement) return
+ * sample indices for ensemble training
+ *
+ * (3) kFold / stratifiedKFold return test indices for each fold -- train
+ * indices for a fold are found with complement
+ *
+ * (4) select provides a read-only List view of data at given indices
+ *
+ * All methods take a SplittableRandom so results are reproducible from a seed
+ * and independent streams can be handed to parallel tasks with split()
+ *
+ * @author barnwaldo
+ *
+ */
+public class IndexSampler {
+
+    /**
+     * Method returns index array 0 thru numRows - 1
+     *
+     * @param numRows
+     * @return
+     */
+    public static int[] identity(int numRows) {
+        int[] index = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            index[i] = i;
+        }
+        return index;
+    }
+
+    /**
+     * Method shuffles index array in place (Fisher-Yates)
+     *
+     * @param index
+     * @param random
+     */
+    public static void shuffle(int[] index, SplittableRandom random) {
+        for (int i = index.length - 1; i > 0; i--) {
+            swap(index, i, random.nextInt(i + 1));
+        }
+    }
+
+    /**
+     * Method shuffles and splits row indices into train/test indices where
+     * train size is (int) (trainSplitFraction * numRows)
+     *
+     * @param numRows
+     * @param trainSplitFraction
+     * @param random
+     * @return {trainIndex, testIndex}
+     */
+    public static int[][] shuffleSplit(int numRows, double trainSplitFraction, SplittableRandom random) {
+        int trainSize = (int) (trainSplitFraction * numRows);
+        int[] index = identity(numRows);
+        shuffle(index, random);
+        return new int[][]{Arrays.copyOfRange(index, 0, trainSize), Arrays.copyOfRange(index, trainSize, numRows)};
+    }
+
+    /**
+     * Method splits row indices into train/test indices keeping class
+     * proportions the same in both (classId must be 0 thru numClass - 1)
+     *
+     * @param labels
+     * @param numClass
+     * @param trainSplitFraction
+     * @param random
+     * @return {trainIndex, testIndex}
+     */
+    public static int[][] stratifiedSplit(int[] labels, int numClass, double trainSplitFraction,
+            SplittableRandom random) {
+        int[][] byClass = groupByClass(labels, numClass);
+        int trainSize = 0;
+        for (int[] group : byClass) {
+            trainSize += (int) (trainSplitFraction * group.length);
+        }
+        int[] train = new int[trainSize];
+        int[] test = new int[labels.length - trainSize];
+        int trainCtr = 0;
+        int testCtr = 0;
+        for (int[] group : byClass) {
+            shuffle(group, random);
+            int groupTrainSize = (int) (trainSplitFraction * group.length);
+            System.arraycopy(group, 0, train, trainCtr, groupTrainSize);
+            System.arraycopy(group, groupTrainSize, test, testCtr, group.length - groupTrainSize);
+            trainCtr += groupTrainSize;
+            testCtr += group.length - groupTrainSize;
+        }
+        shuffle(train, random);
+        shuffle(test, random);
+        return new int[][]{train, test};
+    }
+
+    /**
+     * Method samples sampleSize row indices without replacement (partial
+     * Fisher-Yates shuffle, or Floyd's algorithm in O(sampleSize) when the
+     * sample is a small fraction of the rows, e.g. isolation trees)
+     *
+     * @param numRows
+     * @param sampleSize
+     * @param random
+     * @return
+     */
+    public static int[] subsample(int numRows, int sampleSize, SplittableRandom random) {
+        if (sampleSize > numRows) {
+            throw new IllegalArgumentException("sampleSize " + sampleSize + " > numRows " + numRows);
+        }
+        if ((long) sampleSize * 8 < numRows) {
+            Set<Integer> chosen = new HashSet<>(2 * sampleSize);
+            int[] index = new int[sampleSize];
+            int ctr = 0;
+            for (int j = numRows - sampleSize; j < numRows; j++) {
+                int row = random.nextInt(j + 1);
+                if (!chosen.add(row)) {
+                    row = j;
+                    chosen.add(row);
+                }
+                index[ctr++] = row;
+            }
+            shuffle(index, random);
+            return index;
+        }
+        int[] index = identity(numRows);
+        for (int i = 0; i < sampleSize; i++) {
+            swap(index, i, i + random.nextInt(numRows - i));
+        }
+        return sampleSize == numRows ? index : Arrays.copyOf(index, sampleSize);
+    }
+
+    /**
+     * Method samples sampleSize row indices with replacement (bootstrap)
+     *
+     * @param numRows
+     * @param sampleSize
+     * @param random
+     * @return
+     */
+    public static int[] bootstrap(int numRows, int sampleSize, SplittableRandom random) {
+        int[] index = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            index[i] = random.nextInt(numRows);
+        }
+        return index;
+    }
+
+    /**
+     * Method assigns shuffled row indices to k folds of (nearly) equal size
+     *
+     * @param numRows
+     * @param k
+     * @param random
+     * @return test indices for each fold
+     */
+    public static int[][] kFold(int numRows, int k, SplittableRandom random) {
+        if (k < 2 || k > numRows) {
+            throw new IllegalArgumentException("k = " + k + " must be in [2, numRows]");
+        }
+        int[] index = identity(numRows);
+        shuffle(index, random);
+        int[][] folds = new int[k][];
+        int start = 0;
+        for (int fold = 0; fold < k; fold++) {
+            int end = start + numRows / k + (fold < numRows % k ? 1 : 0);
+            folds[fold] = Arrays.copyOfRange(index, start, end);
+            start = end;
+        }
+        return folds;
+    }
+
+    /**
+     * Method assigns row indices to k folds keeping class proportions the same
+     * in each fold (classId must be 0 thru numClass - 1)
+     *
+     * @param labels
+     * @param numClass
+     * @param k
+     * @param random
+     * @return test indices for each fold
+     */
+    public static int[][] stratifiedKFold(int[] labels, int numClass, int k, SplittableRandom random) {
+        if (k < 2 || k > labels.length) {
+            throw new IllegalArgumentException("k = " + k + " must be in [2, numRows]");
+        }
+        // deal shuffled rows of each class round robin into the folds
+        int[] foldSize = new int[k];
+        int[] foldOf = new int[labels.length];
+        int fold = 0;
+        for (int[] group : groupByClass(labels, numClass)) {
+            shuffle(group, random);
+            for (int row : group) {
+                foldOf[row] = fold;
+                foldSize[fold]++;
+                fold = (fold + 1) % k;
+            }
+        }
+        int[][] folds = new int[k][];
+        for (int i = 0; i < k; i++) {
+            folds[i] = new int[foldSize[i]];
+        }
+        int[] ctr = new int[k];
+        for (int row = 0; row < labels.length; row++) {
+            folds[foldOf[row]][ctr[foldOf[row]]++] = row;
+        }
+        for (int[] f : folds) {
+            shuffle(f, random);
+        }
+        return folds;
+    }
+
+    /**
+     * Method returns (sorted) row indices in 0 thru numRows - 1 that are not in
+     * subset, e.g. train indices for a k-fold test fold
+     *
+     * @param numRows
+     * @param subset
+     * @return
+     */
+    public static int[] complement(int numRows, int[] subset) {
+        boolean[] inSubset = new boolean[numRows];
+        int numUnique = 0;
+        for (int row : subset) {
+            if (!inSubset[row]) {
+                inSubset[row] = true;
+                numUnique++;
+            }
+        }
+        int[] index = new int[numRows - numUnique];
+        int ctr = 0;
+        for (int row = 0; row < numRows; row++) {
+            if (!inSubset[row]) {
+                index[ctr++] = row;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Method returns read-only view of data at the given row indices (no copy)
+     *
+     * @param <T>
+     * @param data
+     * @param index
+     * @return
+     */
+    public static <T> List<T> select(List<T> data, int[] index) {
+        return new IndexedList<>(data, index);
+    }
+
+    /**
+     * Method groups row indices by classId
+     *
+     * @param labels
+     * @param numClass
+     * @return row indices for each classId
+     */
+    public static int[][] groupByClass(int[] labels, int numClass) {
+        int[] classSize = new int[numClass];
+        for (int label : labels) {
+            classSize[label]++;
+        }
+        int[][] byClass = new int[numClass][];
+        for (int classId = 0; classId < numClass; classId++) {
+            byClass[classId] = new int[classSize[classId]];
+        }
+        int[] ctr = new int[numClass];
+        for (int row = 0; row < labels.length; row++) {
+            byClass[labels[row]][ctr[labels[row]]++] = row;
+        }
+        return byClass;
+    }
+
+    private static void swap(int[] index, int i, int j) {
+        int temp = index[i];
+        index[i] = index[j];
+        index[j] = temp;
+    }
+
+    /**
+     * Read-only List view over source data at given row indices
+     */
+    private static class IndexedList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final List<T> data;
+        private final int[] index;
+
+        IndexedList(List<T> data, int[] index) {
+            this.data = data;
+            this.index = index;
+        }
+
+        @Override
+        public T get(int i) {
+            return data.get(index[i]);
+        }
+
+        @Override
+        public int size() {
+            return index.length;
+        }
+    }
+}
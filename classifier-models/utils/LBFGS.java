@@ -0,0 +1,171 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.util.Arrays;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Limited memory BFGS minimizer with backtracking (Armijo) line search
+ *
+ * (1) the last memory correction pairs s = x(k+1) - x(k), y = g(k+1) - g(k)
+ * approximate the inverse Hessian (two loop recursion)
+ *
+ * (2) a pair is skipped when s.y is not positive so the direction is always a
+ * descent direction
+ *
+ * (3) minimize stops after maxIterations or when the relative loss decrease of
+ * an iteration falls below tolerance or the gradient vanishes
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+@Setter
+public class LBFGS {
+
+    private static final double ARMIJO = 1.0e-4;        // sufficient decrease constant
+    private static final double BACKTRACK = 0.5;        // step reduction per line search trial
+
+    private int memory = 10;
+    private int maxIterations = 100;
+    private int maxLineSearch = 30;
+    private double tolerance = 1.0e-6;
+    private int numEvaluations;                         // function evaluations in last minimize
+
+    /**
+     * Differentiable function -- returns value at x and writes gradient at x
+     */
+    @FunctionalInterface
+    public interface DiffFunction {
+
+        double evaluate(double[] x, double[] grad);
+    }
+
+    /**
+     * Method minimizes f starting from x (updated in place)
+     *
+     * @param f
+     * @param x
+     * @return loss after each iteration
+     */
+    public double[] minimize(DiffFunction f, double[] x) {
+        int n = x.length;
+        double[][] s = new double[memory][n];
+        double[][] y = new double[memory][n];
+        double[] rho = new double[memory];
+        double[] a = new double[memory];
+        double[] grad = new double[n];
+        double[] newGrad = new double[n];
+        double[] newX = new double[n];
+        double[] direction = new double[n];
+        double[] sNew = new double[n];
+        double[] yNew = new double[n];
+        double[] history = new double[maxIterations];
+
+        numEvaluations = 1;
+        double value = f.evaluate(x, grad);
+        int numPairs = 0;
+        int latest = -1;
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            double gradNorm = Math.sqrt(dot(grad, grad));
+            if (gradNorm < 1.0e-12) {
+                break;
+            }
+            // two loop recursion for direction = -H * grad
+            for (int i = 0; i < n; i++) {
+                direction[i] = -grad[i];
+            }
+            for (int k = 0; k < numPairs; k++) {
+                int j = Math.floorMod(latest - k, memory);
+                a[j] = rho[j] * dot(s[j], direction);
+                axpy(-a[j], y[j], direction);
+            }
+            if (numPairs > 0) {
+                double gamma = dot(s[latest], y[latest]) / dot(y[latest], y[latest]);
+                for (int i = 0; i < n; i++) {
+                    direction[i] *= gamma;
+                }
+            }
+            for (int k = numPairs - 1; k >= 0; k--) {
+                int j = Math.floorMod(latest - k, memory);
+                double b = rho[j] * dot(y[j], direction);
+                axpy(a[j] - b, s[j], direction);
+            }
+            double slope = dot(grad, direction);
+            if (slope >= 0.0) {
+                // not a descent direction -- restart from steepest descent
+                numPairs = 0;
+                for (int i = 0; i < n; i++) {
+                    direction[i] = -grad[i];
+                }
+                slope = -gradNorm * gradNorm;
+            }
+
+            // backtracking line search -- first iteration starts with unit length step
+            double step = numPairs == 0 ? Math.min(1.0, 1.0 / gradNorm) : 1.0;
+            double newValue = Double.NaN;
+            boolean accepted = false;
+            for (int trial = 0; trial < maxLineSearch; trial++) {
+                for (int i = 0; i < n; i++) {
+                    newX[i] = x[i] + step * direction[i];
+                }
+                newValue = f.evaluate(newX, newGrad);
+                numEvaluations++;
+                if (newValue <= value + ARMIJO * step * slope) {
+                    accepted = true;
+                    break;
+                }
+                step *= BACKTRACK;
+            }
+            if (!accepted) {
+                break;
+            }
+
+            // store correction pair -- built in sNew, yNew and swapped into the ring only if it is kept, so a
+            // rejected pair never overwrites the oldest kept pair
+            for (int i = 0; i < n; i++) {
+                sNew[i] = newX[i] - x[i];
+                yNew[i] = newGrad[i] - grad[i];
+            }
+            double sy = dot(sNew, yNew);
+            if (sy > 1.0e-10) {
+                int next = (latest + 1) % memory;
+                double[] swap = s[next];
+                s[next] = sNew;
+                sNew = swap;
+                swap = y[next];
+                y[next] = yNew;
+                yNew = swap;
+                rho[next] = 1.0 / sy;
+                latest = next;
+                numPairs = Math.min(numPairs + 1, memory);
+            }
+
+            double decrease = value - newValue;
+            System.arraycopy(newX, 0, x, 0, n);
+            System.arraycopy(newGrad, 0, grad, 0, n);
+            value = newValue;
+            history[iteration++] = value;
+            if (decrease <= tolerance * Math.max(1.0, Math.abs(value))) {
+                break;
+            }
+        }
+        return Arrays.copyOf(history, iteration);
+    }
+
+    private static double dot(double[] u, double[] v) {
+        double sum = 0.0;
+        for (int i = 0; i < u.length; i++) {
+            sum += u[i] * v[i];
+        }
+        return sum;
+    }
+
+    private static void axpy(double alpha, double[] u, double[] v) {
+        for (int i = 0; i < u.length; i++) {
+            v[i] += alpha * u[i];
+        }
+    }
+}
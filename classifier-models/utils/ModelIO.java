@@ -0,0 +1,533 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import com.barnwaldo.classifiers.model.FlatForest;
+import com.barnwaldo.classifiers.model.GBModel;
+import com.barnwaldo.classifiers.model.GaussNBModel;
+import com.barnwaldo.classifiers.model.IForestModel;
+import com.barnwaldo.classifiers.model.KnnModel;
+import com.barnwaldo.classifiers.model.LRModel;
+import com.barnwaldo.classifiers.model.LinearSVCModel;
+import com.barnwaldo.classifiers.model.MultiNBModel;
+import com.barnwaldo.classifiers.model.RFModel;
+import com.barnwaldo.classifiers.model.SVCModel;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+
+/**
+ * Compact binary model file -- an alternative to the JSON toString of the
+ * model classes that loads with bulk primitive reads
+ *
+ * File layout (little endian):
+ *
+ * (1) header -- int magic 'BWMD', int version, int model type, int
+ * numFeature, int numClass, headers (int count, -1 = none, then int length
+ * and UTF-8 bytes per header)
+ *
+ * (2) model sections -- scalars and flat primitive arrays (int length, -1 =
+ * null, then values), 2d arrays as int rows then one array per row
+ *
+ * RFModel, GBModel and IForestModel are written in FlatForest form (no Tree objects) and
+ * read back with only the forest set -- trees are not restored
+ *
+ * @author barnwaldo
+ *
+ */
+public class ModelIO {
+
+    public static final int MAGIC = 0x42574D44; // 'BWMD'
+    public static final int VERSION = 2;     // 2 adds counts and m2 to GaussNBModel, version 1 is still read
+
+    public static final int RANDOM_FOREST = 1;
+    public static final int LOGISTIC_REGRESSION = 2;
+    public static final int GAUSSIAN_NB = 3;
+    public static final int MULTINOMIAL_NB = 4;
+    public static final int SUPPORT_VECTOR = 5;
+    public static final int LINEAR_SUPPORT_VECTOR = 6;
+    public static final int GRADIENT_BOOSTING = 7;
+    public static final int ISOLATION_FOREST = 8;
+    public static final int K_NEAREST_NEIGHBORS = 9;
+
+    /**
+     * Method writes model (any of the model classes) to binary model file
+     *
+     * @param model
+     * @param filename
+     * @throws IOException
+     */
+    public static void write(Object model, String filename) throws IOException {
+        Output out = new Output();
+        if (model instanceof RFModel) {
+            RFModel m = (RFModel) model;
+            writeHeader(out, RANDOM_FOREST, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            writeForest(out, m.getForest());
+        } else if (model instanceof GBModel) {
+            GBModel m = (GBModel) model;
+            writeHeader(out, GRADIENT_BOOSTING, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putDouble(m.getLearningRate());
+            out.putDoubleArray(m.getBaseScore());
+            writeForest(out, m.getForest());
+        } else if (model instanceof IForestModel) {
+            IForestModel m = (IForestModel) model;
+            writeHeader(out, ISOLATION_FOREST, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putInt(m.getSampleSize());
+            out.putDouble(m.getThreshold());
+            writeForest(out, m.getForest());
+        } else if (model instanceof KnnModel) {
+            KnnModel m = (KnnModel) model;
+            writeHeader(out, K_NEAREST_NEIGHBORS, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putInt(m.getK());
+            out.putDouble(m.getEps());
+            out.putInt(m.isWeighted() ? 1 : 0);
+            out.putInt(m.getLeafSize());
+            out.putInt(m.getIndexType() == null ? -1 : m.getIndexType().ordinal());
+            out.putDoubleArray(m.getPoints());
+            out.putIntArray(m.getLabels());
+        } else if (model instanceof LRModel) {
+            LRModel m = (LRModel) model;
+            writeHeader(out, LOGISTIC_REGRESSION, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putDouble(m.getAlpha());
+            out.putDouble(m.getRegL1());
+            out.putDoubleMatrix(m.getW());
+        } else if (model instanceof GaussNBModel) {
+            GaussNBModel m = (GaussNBModel) model;
+            writeHeader(out, GAUSSIAN_NB, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putDoubleArray(m.getPriors());
+            out.putDoubleMatrix(m.getMeans());
+            out.putDoubleMatrix(m.getStdDevs());
+            out.putLongArray(m.getCounts());
+            out.putDoubleMatrix(m.getM2());
+        } else if (model instanceof MultiNBModel) {
+            MultiNBModel m = (MultiNBModel) model;
+            writeHeader(out, MULTINOMIAL_NB, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putIntArray(m.getNumLevel());
+            out.putDoubleArray(m.getPriors());
+            for (double[][] frequency : m.getFrequency()) {
+                out.putDoubleMatrix(frequency);
+            }
+            out.putDoubleMatrix(m.getThreshold());
+            out.putLongArray(m.getClassCount());
+            out.putInt(m.getCount() == null ? -1 : m.getCount().length);
+            if (m.getCount() != null) {
+                for (long[] count : m.getCount()) {
+                    out.putLongArray(count);
+                }
+            }
+        } else if (model instanceof SVCModel) {
+            SVCModel m = (SVCModel) model;
+            writeHeader(out, SUPPORT_VECTOR, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            writeSvmParameter(out, m.getSvmParameter());
+            writeSvmModel(out, m.getSvmModel());
+        } else if (model instanceof LinearSVCModel) {
+            LinearSVCModel m = (LinearSVCModel) model;
+            writeHeader(out, LINEAR_SUPPORT_VECTOR, m.getNumFeature(), m.getNumClass(), m.getHeaders());
+            out.putDouble(m.getC());
+            out.putDouble(m.getBias());
+            out.putDoubleMatrix(m.getW());
+        } else {
+            throw new IllegalArgumentException("Unsupported model class " + model.getClass().getName());
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = out.buffer;
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Method reads model of the expected class from binary model file
+     *
+     * @param <T>
+     * @param filename
+     * @param modelClass
+     * @return
+     * @throws IOException
+     */
+    public static <T> T read(String filename, Class<T> modelClass) throws IOException {
+        Object model = read(filename);
+        if (!modelClass.isInstance(model)) {
+            throw new IOException(filename + " holds a " + model.getClass().getSimpleName() + ", not a "
+                    + modelClass.getSimpleName());
+        }
+        return modelClass.cast(model);
+    }
+
+    /**
+     * Method reads model from binary model file -- the file is memory mapped
+     * and arrays are bulk read
+     *
+     * @param filename
+     * @return model object (RFModel, GBModel, IForestModel, KnnModel, LRModel,
+     * GaussNBModel, MultiNBModel, SVCModel or LinearSVCModel)
+     * @throws IOException
+     */
+    public static Object read(String filename) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (in.remaining() < 20 || in.getInt() != MAGIC) {
+            throw new IOException(filename + " is not a binary model file");
+        }
+        int version = in.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported model file version " + version + " in " + filename);
+        }
+        int modelType = in.getInt();
+        int numFeature = in.getInt();
+        int numClass = in.getInt();
+        String[] headers = getHeaders(in);
+        switch (modelType) {
+            case RANDOM_FOREST: {
+                FlatForest forest = readForest(in, numFeature, numClass);
+                RFModel m = new RFModel(numFeature, numClass, forest.getNumTree());
+                m.setHeaders(headers);
+                m.setRootTreeId(null);
+                m.setForest(forest);
+                return m;
+            }
+            case GRADIENT_BOOSTING: {
+                GBModel m = new GBModel(numFeature, numClass, in.getDouble());
+                m.setHeaders(headers);
+                m.setBaseScore(getDoubleArray(in));
+                m.setForest(readForest(in, numFeature, numClass));
+                return m;
+            }
+            case ISOLATION_FOREST: {
+                IForestModel m = new IForestModel(numFeature, in.getInt(), in.getDouble());
+                m.setHeaders(headers);
+                m.setForest(readForest(in, numFeature, numClass));
+                return m;
+            }
+            case K_NEAREST_NEIGHBORS: {
+                KnnModel m = new KnnModel(numFeature, numClass, in.getInt());
+                m.setHeaders(headers);
+                m.setEps(in.getDouble());
+                m.setWeighted(in.getInt() != 0);
+                m.setLeafSize(in.getInt());
+                int indexType = in.getInt();
+                m.setIndexType(indexType < 0 ? null : KnnModel.IndexType.values()[indexType]);
+                m.setPoints(getDoubleArray(in));
+                m.setLabels(getIntArray(in));
+                return m;
+            }
+            case LOGISTIC_REGRESSION: {
+                LRModel m = new LRModel(numFeature, numClass, in.getDouble(), in.getDouble());
+                m.setHeaders(headers);
+                m.setW(getDoubleMatrix(in));
+                return m;
+            }
+            case GAUSSIAN_NB: {
+                GaussNBModel m = new GaussNBModel(numFeature, numClass);
+                m.setHeaders(headers);
+                m.setPriors(getDoubleArray(in));
+                m.setMeans(getDoubleMatrix(in));
+                m.setStdDevs(getDoubleMatrix(in));
+                m.setCounts(version < 2 ? null : getLongArray(in));
+                m.setM2(version < 2 ? null : getDoubleMatrix(in));
+                return m;
+            }
+            case MULTINOMIAL_NB: {
+                MultiNBModel m = new MultiNBModel(numFeature, numClass, getIntArray(in));
+                m.setHeaders(headers);
+                m.setPriors(getDoubleArray(in));
+                for (int i = 0; i < numFeature; i++) {
+                    m.getFrequency()[i] = getDoubleMatrix(in);
+                }
+                m.setThreshold(getDoubleMatrix(in));
+                m.setClassCount(getLongArray(in));
+                int rows = in.getInt();
+                long[][] count = rows < 0 ? null : new long[rows][];
+                for (int i = 0; i < rows; i++) {
+                    count[i] = getLongArray(in);
+                }
+                m.setCount(count);
+                return m;
+            }
+            case SUPPORT_VECTOR: {
+                SVCModel m = new SVCModel(numFeature, numClass);
+                m.setHeaders(headers);
+                m.setSvmParameter(readSvmParameter(in));
+                m.setSvmModel(readSvmModel(in));
+                return m;
+            }
+            case LINEAR_SUPPORT_VECTOR: {
+                LinearSVCModel m = new LinearSVCModel(numFeature, numClass, in.getDouble(), in.getDouble());
+                m.setHeaders(headers);
+                m.setW(getDoubleMatrix(in));
+                return m;
+            }
+            default:
+                throw new IOException("Unknown model type " + modelType + " in " + filename);
+        }
+    }
+
+    private static void writeHeader(Output out, int modelType, int numFeature, int numClass, String[] headers) {
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(modelType);
+        out.putInt(numFeature);
+        out.putInt(numClass);
+        out.putInt(headers == null ? -1 : headers.length);
+        if (headers != null) {
+            for (String header : headers) {
+                byte[] bytes = header.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.ensure(bytes.length);
+                out.buffer.put(bytes);
+            }
+        }
+    }
+
+    private static String[] getHeaders(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0) {
+            return null;
+        }
+        String[] headers = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            headers[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return headers;
+    }
+
+    private static void writeForest(Output out, FlatForest forest) {
+        out.putIntArray(forest.getRoot());
+        out.putIntArray(forest.getFeature());
+        out.putDoubleArray(forest.getValue());
+        out.putIntArray(forest.getRight());
+    }
+
+    private static FlatForest readForest(ByteBuffer in, int numFeature, int numClass) {
+        return new FlatForest(numFeature, numClass, getIntArray(in), getIntArray(in), getDoubleArray(in),
+                getIntArray(in));
+    }
+
+    private static void writeSvmParameter(Output out, svm_parameter p) {
+        out.putInt(p.svm_type);
+        out.putInt(p.kernel_type);
+        out.putInt(p.degree);
+        out.putDouble(p.gamma);
+        out.putDouble(p.coef0);
+        out.putDouble(p.cache_size);
+        out.putDouble(p.eps);
+        out.putDouble(p.C);
+        out.putInt(p.nr_weight);
+        out.putIntArray(p.weight_label);
+        out.putDoubleArray(p.weight);
+        out.putDouble(p.nu);
+        out.putDouble(p.p);
+        out.putInt(p.shrinking);
+        out.putInt(p.probability);
+    }
+
+    private static svm_parameter readSvmParameter(ByteBuffer in) {
+        svm_parameter p = new svm_parameter();
+        p.svm_type = in.getInt();
+        p.kernel_type = in.getInt();
+        p.degree = in.getInt();
+        p.gamma = in.getDouble();
+        p.coef0 = in.getDouble();
+        p.cache_size = in.getDouble();
+        p.eps = in.getDouble();
+        p.C = in.getDouble();
+        p.nr_weight = in.getInt();
+        p.weight_label = getIntArray(in);
+        p.weight = getDoubleArray(in);
+        p.nu = in.getDouble();
+        p.p = in.getDouble();
+        p.shrinking = in.getInt();
+        p.probability = in.getInt();
+        return p;
+    }
+
+    /**
+     * Helper method writes libSVM model -- sparse support vectors as node
+     * counts followed by all indices and all values
+     */
+    private static void writeSvmModel(Output out, svm_model model) {
+        writeSvmParameter(out, model.param);
+        out.putInt(model.nr_class);
+        out.putInt(model.l);
+        int[] svLength = new int[model.l];
+        int numNodes = 0;
+        for (int k = 0; k < model.l; k++) {
+            svLength[k] = model.SV[k].length;
+            numNodes += svLength[k];
+        }
+        int[] index = new int[numNodes];
+        double[] value = new double[numNodes];
+        int ctr = 0;
+        for (int k = 0; k < model.l; k++) {
+            for (svm_node node : model.SV[k]) {
+                index[ctr] = node.index;
+                value[ctr++] = node.value;
+            }
+        }
+        out.putIntArray(svLength);
+        out.putIntArray(index);
+        out.putDoubleArray(value);
+        out.putDoubleMatrix(model.sv_coef);
+        out.putDoubleArray(model.rho);
+        out.putDoubleArray(model.probA);
+        out.putDoubleArray(model.probB);
+        out.putIntArray(model.sv_indices);
+        out.putIntArray(model.label);
+        out.putIntArray(model.nSV);
+    }
+
+    private static svm_model readSvmModel(ByteBuffer in) {
+        svm_model model = new svm_model();
+        model.param = readSvmParameter(in);
+        model.nr_class = in.getInt();
+        model.l = in.getInt();
+        int[] svLength = getIntArray(in);
+        int[] index = getIntArray(in);
+        double[] value = getDoubleArray(in);
+        model.SV = new svm_node[model.l][];
+        int ctr = 0;
+        for (int k = 0; k < model.l; k++) {
+            model.SV[k] = new svm_node[svLength[k]];
+            for (int i = 0; i < svLength[k]; i++) {
+                svm_node node = new svm_node();
+                node.index = index[ctr];
+                node.value = value[ctr++];
+                model.SV[k][i] = node;
+            }
+        }
+        model.sv_coef = getDoubleMatrix(in);
+        model.rho = getDoubleArray(in);
+        model.probA = getDoubleArray(in);
+        model.probB = getDoubleArray(in);
+        model.sv_indices = getIntArray(in);
+        model.label = getIntArray(in);
+        model.nSV = getIntArray(in);
+        return model;
+    }
+
+    private static int[] getIntArray(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        int[] array = new int[length];
+        in.asIntBuffer().get(array);
+        in.position(in.position() + length * Integer.BYTES);
+        return array;
+    }
+
+    private static long[] getLongArray(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        long[] array = new long[length];
+        in.asLongBuffer().get(array);
+        in.position(in.position() + length * Long.BYTES);
+        return array;
+    }
+
+    private static double[] getDoubleArray(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        double[] array = new double[length];
+        in.asDoubleBuffer().get(array);
+        in.position(in.position() + length * Double.BYTES);
+        return array;
+    }
+
+    private static double[][] getDoubleMatrix(ByteBuffer in) {
+        int rows = in.getInt();
+        if (rows < 0) {
+            return null;
+        }
+        double[][] matrix = new double[rows][];
+        for (int i = 0; i < rows; i++) {
+            matrix[i] = getDoubleArray(in);
+        }
+        return matrix;
+    }
+
+    /**
+     * Growable little endian output buffer with bulk array writes
+     */
+    private static class Output {
+
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                int capacity = buffer.capacity();
+                while (capacity - buffer.position() < bytes) {
+                    capacity *= 2;
+                }
+                ByteBuffer larger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+
+        void putInt(int value) {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void putIntArray(int[] array) {
+            putInt(array == null ? -1 : array.length);
+            if (array != null) {
+                ensure(array.length * Integer.BYTES);
+                buffer.asIntBuffer().put(array);
+                buffer.position(buffer.position() + array.length * Integer.BYTES);
+            }
+        }
+
+        void putLongArray(long[] array) {
+            putInt(array == null ? -1 : array.length);
+            if (array != null) {
+                ensure(array.length * Long.BYTES);
+                buffer.asLongBuffer().put(array);
+                buffer.position(buffer.position() + array.length * Long.BYTES);
+            }
+        }
+
+        void putDoubleArray(double[] array) {
+            putInt(array == null ? -1 : array.length);
+            if (array != null) {
+                ensure(array.length * Double.BYTES);
+                buffer.asDoubleBuffer().put(array);
+                buffer.position(buffer.position() + array.length * Double.BYTES);
+            }
+        }
+
+        void putDoubleMatrix(double[][] matrix) {
+            putInt(matrix == null ? -1 : matrix.length);
+            if (matrix != null) {
+                for (double[] row : matrix) {
+                    putDoubleArray(row);
+                }
+            }
+        }
+    }
+}
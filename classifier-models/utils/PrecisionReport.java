@@ -0,0 +1,115 @@
+package com.barnwaldo.classifiers.utils;
+
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.programs.Classifier;
+
+import lombok.Getter;
+
+/**
+ * Accuracy and latency of a reduced precision classifier (see
+ * ReducedPrecision) against its double precision baseline
+ *
+ * (1) both classifiers score every row of a labelled Dataset -- agreement is
+ * the percent of rows with the same prediction, accuracies are percent
+ * (TrainTestData.accuracy) and accuracy delta is reduced - baseline
+ *
+ * (2) max probability delta is the largest absolute difference of any class
+ * probability over all rows
+ *
+ * (3) timing is single threaded predict(row) over the data in nanoseconds per
+ * row -- best of TIMING_PASSES passes, alternating baseline and reduced so
+ * both see the same JIT and cache state
+ *
+ * @author barnwaldo
+ *
+ */
+@Getter
+public class PrecisionReport {
+
+    private static final int TIMING_PASSES = 5;
+
+    private final int numRows;
+    private final double agreement;
+    private final double baselineAccuracy;
+    private final double reducedAccuracy;
+    private final double accuracyDelta;
+    private final double maxProbabilityDelta;
+    private final double baselineNanos;
+    private final double reducedNanos;
+
+    private PrecisionReport(int numRows, double agreement, double baselineAccuracy, double reducedAccuracy,
+            double maxProbabilityDelta, double baselineNanos, double reducedNanos) {
+        this.numRows = numRows;
+        this.agreement = agreement;
+        this.baselineAccuracy = baselineAccuracy;
+        this.reducedAccuracy = reducedAccuracy;
+        this.accuracyDelta = reducedAccuracy - baselineAccuracy;
+        this.maxProbabilityDelta = maxProbabilityDelta;
+        this.baselineNanos = baselineNanos;
+        this.reducedNanos = reducedNanos;
+    }
+
+    /**
+     * Method compares reduced to baseline classifier on data
+     *
+     * @param baseline
+     * @param reduced
+     * @param data
+     * @return
+     */
+    public static PrecisionReport compare(Classifier baseline, Classifier reduced, Dataset data) {
+        int numRows = data.getNumRow();
+        int numClass = baseline.getNumClass();
+        int[] baselinePredict = new int[numRows];
+        int[] reducedPredict = new int[numRows];
+        double[] row = new double[baseline.getNumFeature()];
+        double[] baselineProba = new double[numClass];
+        double[] reducedProba = new double[numClass];
+        double maxDelta = 0.0;
+        for (int n = 0; n < numRows; n++) {
+            data.getRow(n, row);
+            baseline.predictProba(row, baselineProba);
+            reduced.predictProba(row, reducedProba);
+            for (int c = 0; c < numClass; c++) {
+                maxDelta = Math.max(maxDelta, Math.abs(baselineProba[c] - reducedProba[c]));
+            }
+        }
+        double baselineNanos = Double.MAX_VALUE;
+        double reducedNanos = Double.MAX_VALUE;
+        for (int pass = 0; pass < TIMING_PASSES; pass++) {
+            baselineNanos = Math.min(baselineNanos, time(baseline, data, row, baselinePredict));
+            reducedNanos = Math.min(reducedNanos, time(reduced, data, row, reducedPredict));
+        }
+
+        int[] results = data.getResults();
+        PrecisionReport report = new PrecisionReport(numRows,
+                TrainTestData.accuracy(reducedPredict, baselinePredict),
+                TrainTestData.accuracy(baselinePredict, results), TrainTestData.accuracy(reducedPredict, results),
+                maxDelta, baselineNanos, reducedNanos);
+        System.out.println("Precision Report: " + report);
+        return report;
+    }
+
+    /**
+     * Helper method predicts every row of data to out and returns nanoseconds
+     * per row
+     */
+    private static double time(Classifier classifier, Dataset data, double[] row, int[] out) {
+        int numRows = data.getNumRow();
+        long start = System.nanoTime();
+        for (int n = 0; n < numRows; n++) {
+            data.getRow(n, row);
+            out[n] = classifier.predict(row);
+        }
+        return (double) (System.nanoTime() - start) / Math.max(1, numRows);
+    }
+
+    @Override
+    public String toString() {
+        return "rows = " + numRows + ", agreement = " + String.format("%.3f", agreement) + "%, accuracy = "
+                + String.format("%.3f", baselineAccuracy) + "% -> " + String.format("%.3f", reducedAccuracy)
+                + "% (delta " + String.format("%+.3f", accuracyDelta) + "), max probability delta = "
+                + String.format("%.2e", maxProbabilityDelta) + ", ns/row = " + String.format("%.0f", baselineNanos)
+                + " -> " + String.format("%.0f", reducedNanos);
+    }
+}
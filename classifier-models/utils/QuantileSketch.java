@@ -0,0 +1,225 @@
+package com.barnwaldo.classifiers.utils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import lombok.Getter;
+
+/**
+ * Streaming quantile sketch (KLL, Karnin, Lang and Liberty) -- approximate
+ * quantiles of a stream in O(k log(n / k)) memory
+ *
+ * (1) items enter compactor level 0 with weight 1 -- a full level is sorted and
+ * every other item (random offset) moves up one level with twice the weight
+ *
+ * (2) level capacities shrink geometrically (2/3) from the top level down so
+ * rank error is about 1.7 / k of n
+ *
+ * (3) sketches of disjoint streams (threads, nodes, Kafka partitions) can be
+ * merged -- min and max are kept exactly
+ *
+ * @author barnwaldo
+ *
+ */
+public class QuantileSketch {
+
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    @Getter
+    private final int k;            // accuracy parameter (capacity of top level)
+    @Getter
+    private long n;                 // items seen
+    @Getter
+    private double min = Double.POSITIVE_INFINITY;
+    @Getter
+    private double max = Double.NEGATIVE_INFINITY;
+    private double[][] items;       // retained items per level (weight 2^level)
+    private int[] size;             // retained items per level
+    private int numLevels;
+    private int numRetained;        // retained items over all levels
+    private int maxRetained;        // sum of level capacities
+    private final SplittableRandom random;
+
+    public QuantileSketch() {
+        this(200);
+    }
+
+    public QuantileSketch(int k) {
+        this(k, new SplittableRandom());
+    }
+
+    public QuantileSketch(int k, SplittableRandom random) {
+        this.k = k;
+        this.random = random;
+        this.items = new double[1][k];
+        this.size = new int[1];
+        this.numLevels = 1;
+        this.maxRetained = capacity(0);
+    }
+
+    /**
+     * Method adds a value to the sketch (NaN is ignored)
+     *
+     * @param value
+     */
+    public void update(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        n++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        append(0, value);
+        compress();
+    }
+
+    /**
+     * Method merges another sketch (of a disjoint stream) into this sketch
+     *
+     * @param other
+     */
+    public void merge(QuantileSketch other) {
+        if (other.n == 0) {
+            return;
+        }
+        while (numLevels < other.numLevels) {
+            addLevel();
+        }
+        for (int h = 0; h < other.numLevels; h++) {
+            for (int i = 0; i < other.size[h]; i++) {
+                append(h, other.items[h][i]);
+            }
+        }
+        n += other.n;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        compress();
+    }
+
+    /**
+     * Method returns approximate value at fraction (0 thru 1) of sorted stream
+     *
+     * @param fraction
+     * @return
+     */
+    public double quantile(double fraction) {
+        return quantiles(new double[]{fraction})[0];
+    }
+
+    /**
+     * Method returns approximate values at fractions (ascending, 0 thru 1) of
+     * sorted stream -- fraction 0 and 1 return exact min and max
+     *
+     * @param fractions
+     * @return
+     */
+    public double[] quantiles(double[] fractions) {
+        double[] result = new double[fractions.length];
+        if (n == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+        // merge sorted levels into sorted values with cumulative weights
+        int retained = numRetained;
+        double[] values = new double[retained];
+        long[] cumWeight = new long[retained];
+        double[][] sorted = new double[numLevels][];
+        for (int h = 0; h < numLevels; h++) {
+            sorted[h] = Arrays.copyOf(items[h], size[h]);
+            Arrays.sort(sorted[h]);
+        }
+        int[] pos = new int[numLevels];
+        long totalWeight = 0;
+        for (int i = 0; i < retained; i++) {
+            int next = -1;
+            for (int h = 0; h < numLevels; h++) {
+                if (pos[h] < size[h] && (next < 0 || sorted[h][pos[h]] < sorted[next][pos[next]])) {
+                    next = h;
+                }
+            }
+            values[i] = sorted[next][pos[next]++];
+            totalWeight += 1L << next;
+            cumWeight[i] = totalWeight;
+        }
+        for (int j = 0; j < fractions.length; j++) {
+            if (fractions[j] <= 0.0) {
+                result[j] = min;
+            } else if (fractions[j] >= 1.0) {
+                result[j] = max;
+            } else {
+                long rank = (long) Math.ceil(fractions[j] * totalWeight);
+                int index = Arrays.binarySearch(cumWeight, rank);
+                result[j] = values[index >= 0 ? index : -index - 1];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method returns capacity of level h (top level has capacity k)
+     *
+     * @param h
+     * @return
+     */
+    private int capacity(int h) {
+        return (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, numLevels - h - 1)) + 1;
+    }
+
+    /**
+     * Helper method compacts levels until retained items fit total capacity
+     */
+    private void compress() {
+        if (numRetained < maxRetained) {
+            return;
+        }
+        for (int h = 0; h < numLevels; h++) {
+            if (size[h] >= capacity(h)) {
+                if (h + 1 >= numLevels) {
+                    addLevel();
+                }
+                compact(h);
+                if (numRetained < maxRetained) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method sorts level h and moves every other item to level h + 1 --
+     * with an odd count the smallest item stays at level h
+     *
+     * @param h
+     */
+    private void compact(int h) {
+        double[] level = items[h];
+        int count = size[h];
+        Arrays.sort(level, 0, count);
+        int start = count & 1;
+        int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = start + offset; i < count; i += 2) {
+            append(h + 1, level[i]);
+        }
+        numRetained -= count - start;
+        size[h] = start;
+    }
+
+    private void append(int h, double value) {
+        if (size[h] == items[h].length) {
+            items[h] = Arrays.copyOf(items[h], Math.max(2, items[h].length * 2));
+        }
+        items[h][size[h]++] = value;
+        numRetained++;
+    }
+
+    private void addLevel() {
+        items = Arrays.copyOf(items, numLevels + 1);
+        size = Arrays.copyOf(size, numLevels + 1);
+        items[numLevels] = new double[k];
+        numLevels++;
+        maxRetained = 0;
+        for (int h = 0; h < numLevels; h++) {
+            maxRetained += capacity(h);
+        }
+    }
+}
@@ -2,13 +2,15 @@ package com.barnwaldo.classifiers.utils;
 
 import com.barnwaldo.classifiers.data.Category;
 import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.data.Dataset;
+import com.barnwaldo.classifiers.data.DoubleDataset;
 import com.opencsv.CSVReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.stream.IntStream;
 
 public class TrainTestData {
@@ -33,72 +35,79 @@ public class TrainTestData {
 
     /**
      * Method to split training data into train/test data for model training and
-     * validation
+     * validation -- test rows are removed from train and returned
      *
      * @param train
      * @param trainSplitFraction
      * @return
      */
     public static List<String[]> splitStringData(List<String[]> train, double trainSplitFraction) {
-        int trainSize = train.size();
-        int trainSplitSize = (int) (trainSplitFraction * trainSize);
-        List<String[]> test = new ArrayList<>();
-        Random random = new Random();
-        while (trainSize > trainSplitSize) {
-            int randomIndex = random.nextInt(trainSize);
-            test.add(train.get(randomIndex));
-            train.remove(randomIndex);
-            trainSize = train.size();
-        }
-        return test;
+        return splitData(train, trainSplitFraction, new SplittableRandom());
     }
 
     /**
      * Method to split training data into train/test data for model training and
-     * validation
+     * validation -- test rows are removed from train and returned
      *
      * @param train
      * @param trainSplitFraction
      * @return
      */
     public static List<Continuous> splitContinuousData(List<Continuous> train, double trainSplitFraction) {
-        int trainSize = train.size();
-        int trainSplitSize = (int) (trainSplitFraction * trainSize);
-        List<Continuous> test = new ArrayList<>();
-        Random random = new Random();
-        while (trainSize > trainSplitSize) {
-            int randomIndex = random.nextInt(trainSize);
-            test.add(train.get(randomIndex));
-            train.remove(randomIndex);
-            trainSize = train.size();
-        }
-        return test;
+        return splitData(train, trainSplitFraction, new SplittableRandom());
     }
 
     /**
      * Method to split training data into train/test data for model training and
-     * validation
+     * validation -- test rows are removed from train and returned
      *
      * @param train
      * @param trainSplitFraction
      * @return
      */
     public static List<Category> splitCategoryData(List<Category> train, double trainSplitFraction) {
+        return splitData(train, trainSplitFraction, new SplittableRandom());
+    }
+
+    /**
+     * Method to split training data into train/test data with a seedable random
+     * source in O(n) -- test rows are removed from train (which otherwise keeps
+     * its order) and returned in random order
+     *
+     * @param <T>
+     * @param train
+     * @param trainSplitFraction
+     * @param random
+     * @return
+     */
+    public static <T> List<T> splitData(List<T> train, double trainSplitFraction, SplittableRandom random) {
         int trainSize = train.size();
-        int trainSplitSize = (int) (trainSplitFraction * trainSize);
-        List<Category> test = new ArrayList<>();
-        Random random = new Random();
-        while (trainSize > trainSplitSize) {
-            int randomIndex = random.nextInt(trainSize);
-            test.add(train.get(randomIndex));
-            train.remove(randomIndex);
-            trainSize = train.size();
-        }
+        int[] testIndex = IndexSampler.shuffleSplit(trainSize, trainSplitFraction, random)[1];
+        List<T> test = new ArrayList<>(IndexSampler.select(train, testIndex));
+        int[] trainIndex = IndexSampler.complement(trainSize, testIndex);
+        List<T> remaining = new ArrayList<>(IndexSampler.select(train, trainIndex));
+        train.clear();
+        train.addAll(remaining);
         return test;
     }
 
     /**
-     * Method to sample training data for random forest model training
+     * Method to split a data set into train/test views (no copy) for model
+     * training and validation
+     *
+     * @param data
+     * @param trainSplitFraction
+     * @param random
+     * @return {train, test}
+     */
+    public static Dataset[] splitDataset(Dataset data, double trainSplitFraction, SplittableRandom random) {
+        int[][] index = IndexSampler.shuffleSplit(data.getNumRow(), trainSplitFraction, random);
+        return new Dataset[]{data.select(index[0]), data.select(index[1])};
+    }
+
+    /**
+     * Method to sample training data for random forest model training -- sample
+     * is drawn without replacement and train is left unchanged
      *
      * @param train
      * @param sampleRate
@@ -106,18 +115,29 @@ public class TrainTestData {
      */
     public static List<Continuous> sampleContinuousData(List<Continuous> train, double sampleRate) {
         int trainSize = train.size();
-        int trainSplitSize = (int) ((1.0 - sampleRate) * trainSize);
-        List<Continuous> test = new ArrayList<>();
-        Random random = new Random();
-        while (trainSize > trainSplitSize) {
-            int randomIndex = random.nextInt(trainSize);
-            test.add(train.get(randomIndex));
-            train.remove(randomIndex);
-            trainSize = train.size();
-        }
-        // add test data back to original sample (for random forest sampling)
-        train.addAll(test);
-        return test;
+        int sampleSize = trainSize - (int) ((1.0 - sampleRate) * trainSize);
+        int[] index = IndexSampler.subsample(trainSize, sampleSize, new SplittableRandom());
+        return new ArrayList<>(IndexSampler.select(train, index));
+    }
+
+    /**
+     * Method to get classIds (results) of continuous data entries
+     *
+     * @param data
+     * @return
+     */
+    public static int[] getContinuousResults(List<Continuous> data) {
+        return data.stream().mapToInt(Continuous::getResult).toArray();
+    }
+
+    /**
+     * Method to get classIds (results) of category data entries
+     *
+     * @param data
+     * @return
+     */
+    public static int[] getCategoryResults(List<Category> data) {
+        return data.stream().mapToInt(Category::getResult).toArray();
     }
 
     /**
@@ -199,6 +219,28 @@ public class TrainTestData {
         IntStream.range(0, numData).forEachOrdered(index -> data.get(index).normalize(minVals, maxVals));
     }
 
+    /**
+     * Method to normalize (in place) each feature column of data set to [-1, 1]
+     *
+     * @param data
+     */
+    public static void normalizeDataset(DoubleDataset data) {
+        int numRow = data.getNumRow();
+        double[] values = data.getValues();
+        for (int col = 0; col < data.getNumFeature(); col++) {
+            int offset = data.columnOffset(col);
+            double minVal = 1.0e10;
+            double maxVal = -1.0e10;
+            for (int i = offset; i < offset + numRow; i++) {
+                minVal = Math.min(minVal, values[i]);
+                maxVal = Math.max(maxVal, values[i]);
+            }
+            for (int i = offset; i < offset + numRow; i++) {
+                values[i] = 2.0 * (values[i] - minVal) / (maxVal - minVal) - 1.0;
+            }
+        }
+    }
+
     /**
      * Helper method to copy continuous data lists to arrays for random forest
      * model
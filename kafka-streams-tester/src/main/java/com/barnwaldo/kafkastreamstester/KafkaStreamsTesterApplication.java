@@ -2,8 +2,10 @@ package com.barnwaldo.kafkastreamstester;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.context.ApplicationListener;
 
-import com.barnwaldo.kafkastreamstester.model.Analytics;
+import com.barnwaldo.kafkastreamstester.utils.ExecutionConfig;
 
 /**
  * Spring Boot Spring Cloud Kafka Streams test application to demonstrate the application of machine and deep
@@ -17,9 +19,12 @@ import com.barnwaldo.kafkastreamstester.model.Analytics;
 public class KafkaStreamsTesterApplication {
 
 	public static void main(String[] args) {
-       // Analytics.getInstance().initLRModel();
-        Analytics.getInstance().initNNModel();
-		SpringApplication.run(KafkaStreamsTesterApplication.class, args);
+		// model served by Analytics is initialized from application.yml (see AnalyticsConfig)
+		SpringApplication application = new SpringApplication(KafkaStreamsTesterApplication.class);
+		// stream threads are set from the execution core split before the Kafka Streams binder is configured
+		application.addListeners((ApplicationListener<ApplicationEnvironmentPreparedEvent>) event ->
+				ExecutionConfig.configureStreamThreads(event.getEnvironment()));
+		application.run(args);
 	}
 
 }
@@ -1,18 +1,58 @@
 package com.barnwaldo.kafkastreamstester.model;
 
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.classifiers.model.GBModel;
+import com.barnwaldo.classifiers.model.GaussNBModel;
+import com.barnwaldo.classifiers.model.IForestModel;
+import com.barnwaldo.classifiers.model.KnnModel;
+import com.barnwaldo.classifiers.model.LRModel;
+import com.barnwaldo.classifiers.model.LinearSVCModel;
+import com.barnwaldo.classifiers.model.MultiNBModel;
+import com.barnwaldo.classifiers.model.RFModel;
+import com.barnwaldo.classifiers.model.SVCModel;
+import com.barnwaldo.classifiers.programs.Classifier;
+import com.barnwaldo.classifiers.programs.DenseNetwork;
+import com.barnwaldo.classifiers.programs.GaussianNaiveBayes;
+import com.barnwaldo.classifiers.programs.GradientBoosting;
+import com.barnwaldo.classifiers.programs.HoeffdingTree;
+import com.barnwaldo.classifiers.programs.IsolationForest;
+import com.barnwaldo.classifiers.programs.KNearestNeighbors;
+import com.barnwaldo.classifiers.programs.LinearSupportVector;
+import com.barnwaldo.classifiers.programs.LogisticRegression;
+import com.barnwaldo.classifiers.programs.MultinomialNaiveBayes;
+import com.barnwaldo.classifiers.programs.RandomForest;
+import com.barnwaldo.classifiers.programs.ReducedPrecision;
+import com.barnwaldo.classifiers.programs.SupportVector;
+import com.barnwaldo.classifiers.utils.ModelIO;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.layers.BaseLayer;
 import org.deeplearning4j.nn.modelimport.keras.KerasModelImport;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurationException;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.activations.impl.ActivationIdentity;
+import org.nd4j.linalg.activations.impl.ActivationReLU;
+import org.nd4j.linalg.activations.impl.ActivationSigmoid;
+import org.nd4j.linalg.activations.impl.ActivationSoftmax;
+import org.nd4j.linalg.activations.impl.ActivationTanH;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -21,10 +61,30 @@ import org.nd4j.linalg.factory.Nd4j;
  * 
  * For test purposes, have included 
  * 
- *      (1) Logistic Regression model written in Java with model parameter fit from another application
+ *      (1) any classifier-models model (LR, RF, GB, GNB, MNB, SVC, LSVC, KNN) with model parameters fit in another
+ *          application and saved as JSON (model toString) or binary model file (ModelIO)
  * 		(2) Neural Net model trained in Keras and save to 'h5' file which is read in by DL4J methods and then used
  * 			for streaming classification 
  * 
+ *      (3) Hoeffding Tree (HT) grown on the stream from labelled records -- starts empty or from a saved tree
+ * 
+ * The model type and file are chosen in application.yml (analytics.model-type, analytics.model-file). With
+ * analytics.online-learning each record is scored and then learned from (HT and GNB models)
+ * 
+ * An Isolation Forest (analytics.anomaly-model-file) can be added as a scoring stage ahead of the classifier -- 
+ * anomalous records are tagged (classified as ANOMALY) or branched to a separate topic (analytics.anomaly-mode)
+ *
+ * With analytics.precision FLOAT32 (or INT8 for LR, LSVC and NN models) the model is scored with reduced precision
+ * parameters (see ReducedPrecision) -- NN models are then copied from DL4J to a DenseNetwork and scored without ND4J
+ *
+ * With analytics.model-store set, records are scored by the model of their tenant -- the record key (or the
+ * analytics.tenant-header header) is 'tenant' or 'tenant:modelId' and models are loaded on first use into a
+ * ModelCache from model-store/tenant/modelId (.bin, .json or .h5) -- records of tenants without a model are scored
+ * by the default model above
+ *
+ * NN models are scored by DL4J on a per thread copy of the network that shares the parameters of modelNN -- the
+ * input array of each thread is allocated once and overwritten in bulk with each record, activations and output are
+ * allocated in a per thread ND4J workspace that is reused by every record (no off-heap allocation per record)
  *
  * @author barnwaldo
  * @version
@@ -34,12 +94,71 @@ import org.nd4j.linalg.factory.Nd4j;
 @Setter
 public class Analytics {
 
-    private LogisticRegression lr;
-    private List<Continuous> test;
+    /**
+     * Model served on the stream
+     */
+    public enum ModelType {
+        NN, LR, RF, GB, GNB, MNB, SVC, LSVC, KNN, HT
+    }
+
+    /**
+     * Handling of records the anomaly detector flags
+     */
+    public enum AnomalyMode {
+        NONE, TAG, BRANCH
+    }
+
+    public static final String ANOMALY = "ANOMALY";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.-]*");   // tenant and model id
+    private static final String NN_WORKSPACE = "NN_OUTPUT";
+    // sized by the first record (FIRST_LOOP), then reset at the start of every record (BLOCK_LEFT)
+    private static final WorkspaceConfiguration NN_WORKSPACE_CONFIG = WorkspaceConfiguration.builder()
+            .initialSize(0)
+            .policyAllocation(AllocationPolicy.STRICT)
+            .policyLearning(LearningPolicy.FIRST_LOOP)
+            .policyReset(ResetPolicy.BLOCK_LEFT)
+            .policySpill(SpillPolicy.REALLOCATE)
+            .build();
+
+    /**
+     * Per thread NN inference state -- DL4J layers keep their input between calls, so each thread scores on its own
+     * copy of the network (parameters are shared with modelNN, not copied) with its own input array
+     */
+    static class NNScratch {
+
+        final MultiLayerNetwork source;
+        final WorkspaceMode workspaceMode;
+        final MultiLayerNetwork network;
+        final INDArray input;
+
+        NNScratch(MultiLayerNetwork source, WorkspaceMode workspaceMode, int numFeature) {
+            this.source = source;
+            this.workspaceMode = workspaceMode;
+            network = new MultiLayerNetwork(source.getLayerWiseConfigurations().clone());
+            network.init(source.params(), false);
+            network.getLayerWiseConfigurations().setInferenceWorkspaceMode(workspaceMode);
+            input = Nd4j.zeros(1, numFeature);   // detached -- lives as long as the thread uses this model
+        }
+    }
+
+    private ModelType modelType = ModelType.NN;
+    private volatile Classifier classifier;    // published to stream threads (HT is created from the first record)
+    private boolean onlineLearning;     // learn from the result of each record after scoring it
+    private int numClass = 2;           // classes of an HT model started without a model file
+    private ReducedPrecision.Precision precision = ReducedPrecision.Precision.FLOAT64;
+    private AnomalyMode anomalyMode = AnomalyMode.NONE;
+    private String anomalyTopic = "anomalies";
+    private IsolationForest anomalyDetector;
+    private ModelCache modelCache;      // per tenant models, null = default model only
+    private String defaultModelId;      // model id of records keyed by tenant only
+    private String tenantHeader;        // header with tenant (and model id), null = record key
     private final String jsonModelFilename = "src/main/java/com/barnwaldo/kafkastreamstester/lrModel.json";
     private final String kerasModelFilename = "src/main/java/com/barnwaldo/kafkastreamstester/test_model_gen1.h5";
     private MultiLayerNetwork modelNN;
-    private INDArray indArray;
+    private WorkspaceMode workspaceMode = WorkspaceMode.ENABLED;   // DL4J inference workspace mode (ExecutionConfig)
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final ThreadLocal<NNScratch> nnScratch = new ThreadLocal<>();
 
     private static class AnalyticsStateHelper {
 
@@ -50,53 +169,517 @@ public class Analytics {
         return AnalyticsStateHelper.INSTANCE;
     }
 
-    public Analytics() {
-        test = new ArrayList<>();
-        test.add(new Continuous());
+    /**
+     * Initialize model of given type from file -- NN models are Keras 'h5' files, other models are JSON (.json)
+     * or binary model files -- throws IllegalStateException if the model cannot be read (the current model is kept)
+     * 
+     * @param type
+     * @param filename
+     */
+    public void initModel(ModelType type, String filename) {
+        if (type == ModelType.NN) {
+            initNNModel(filename);
+        } else if (type == ModelType.HT && (filename == null || !new File(filename).exists())) {
+            // tree is created from the first record, once the number of features is known
+            classifier = null;
+            System.out.println("Growing new " + type + " model with " + numClass + " classes from stream");
+        } else {
+            long start = System.currentTimeMillis();
+            try {
+                Classifier model = toClassifier(type, readModel(type, filename));
+                if (onlineLearning && model instanceof GaussianNaiveBayes
+                        && !((GaussianNaiveBayes) model).hasCounts()) {
+                    // learning from counts of the first record only would replace the trained model
+                    throw new IllegalStateException(filename + " has no sample counts for online learning -- "
+                            + "refit and save the GNB model");
+                }
+                classifier = atPrecision(type, model);
+            } catch (IOException ex) {
+                // fail startup rather than serve the previous model type with a missing model
+                throw new IllegalStateException("Could not load " + type + " model from " + filename, ex);
+            }
+            long stop = System.currentTimeMillis();
+            System.out.println("Loaded " + type + " model from " + filename + " in " + (stop - start) + " (ms)");
+        }
+        modelType = type;
     }
 
     /**
-     * Initialize Logistic regression model with parameters fit from another app
+     * Set DL4J inference workspace mode of NN model (and of NN models loaded later)
+     * 
+     * @param workspaceMode
      */
-    public void initLRModel() {
+    public void setWorkspaceMode(WorkspaceMode workspaceMode) {
+        this.workspaceMode = workspaceMode;
+        if (modelNN != null) {
+            modelNN.getLayerWiseConfigurations().setInferenceWorkspaceMode(workspaceMode);
+        }
+    }
+
+    /**
+     * Method returns number of features of configured model
+     * 
+     * @return
+     */
+    public int getNumFeature() {
+        if (modelType == ModelType.NN && classifier == null) {
+            return modelNN.getLayers()[0].getParam("W").rows();
+        }
+        if (classifier == null) {
+            throw new IllegalStateException("No " + modelType + " model loaded");
+        }
+        return classifier.getNumFeature();
+    }
+
+    /**
+     * Initialize Isolation Forest anomaly detector from JSON (.json) or binary model file -- optional threshold
+     * overrides the threshold saved with the model
+     * 
+     * @param filename
+     * @param threshold
+     */
+    public void initAnomalyModel(String filename, Double threshold) {
+        if (filename == null) {
+            System.out.println("No anomaly model file -- anomaly detection is off");
+            anomalyMode = AnomalyMode.NONE;
+            return;
+        }
+        long start = System.currentTimeMillis();
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            LRModel lrm = mapper.readValue(new File(jsonModelFilename), LRModel.class);
-            lr = new LogisticRegression(lrm.getNumFeature(), lrm.getNumClass(), lrm.getAlpha(), lrm.getRegL1());
-            lr.setModel(lrm);
+            IForestModel m = filename.endsWith(".json")
+                    ? new ObjectMapper().readValue(new File(filename), IForestModel.class)
+                    : ModelIO.read(filename, IForestModel.class);
+            if (threshold != null) {
+                m.setThreshold(threshold);
+            }
+            IsolationForest detector = new IsolationForest(m.getNumFeature(), 0);
+            detector.setModel(m);
+            anomalyDetector = detector;
         } catch (IOException ex) {
             Logger.getLogger(Analytics.class.getName()).log(Level.SEVERE, null, ex);
+            anomalyMode = AnomalyMode.NONE;
+            return;
         }
-        System.out.println("\nDESERIALIZED & PARSED:\n" + lr.getModel().toString());
+        long stop = System.currentTimeMillis();
+        System.out.println("Loaded anomaly model from " + filename + " in " + (stop - start) + " (ms)");
+    }
+
+    /**
+     * Initialize per tenant models -- models are read on first use from modelStore/tenant/modelId with extension
+     * .bin (ModelIO), .json or .h5 (Keras, scored as a DenseNetwork) -- modelId starts with the model type, e.g. RF
+     * or RF-churn
+     * 
+     * @param modelStore
+     * @param defaultModelId
+     * @param maxBytes
+     */
+    public void initModelCache(String modelStore, String defaultModelId, long maxBytes) {
+        this.defaultModelId = defaultModelId;
+        modelCache = new ModelCache(maxBytes, (tenant, modelId) -> loadTenantModel(modelStore, tenant, modelId));
+        System.out.println("Serving tenant models from " + modelStore + " (default model id " + defaultModelId
+                + ", cache " + maxBytes + " bytes)");
+    }
+
+    /**
+     * Helper method reads model of tenant from model store
+     * 
+     * @param modelStore
+     * @param tenant
+     * @param modelId
+     * @return
+     * @throws IOException
+     */
+    private ModelCache.Model loadTenantModel(String modelStore, String tenant, String modelId) throws IOException {
+        if (!NAME.matcher(tenant).matches() || !NAME.matcher(modelId).matches()) {
+            throw new IllegalArgumentException("invalid tenant or model id");
+        }
+        ModelType type = ModelType.valueOf(modelId.split("-", 2)[0].toUpperCase());
+        String[] extensions = type == ModelType.NN ? new String[]{".h5"} : new String[]{".bin", ".json"};
+        for (String extension : extensions) {
+            File file = new File(new File(modelStore, tenant), modelId + extension);
+            if (file.exists()) {
+                Classifier model = type == ModelType.NN
+                        ? readDenseNetwork(file.getPath())
+                        : toClassifier(type, readModel(type, file.getPath()));
+                return new ModelCache.Model(type, atPrecision(type, model));
+            }
+        }
+        throw new FileNotFoundException(modelStore + "/" + tenant + "/" + modelId);
+    }
+
+    /**
+     * Helper method reads Keras 'h5' file to a DenseNetwork
+     * 
+     * @param filename
+     * @return
+     * @throws IOException
+     */
+    private static DenseNetwork readDenseNetwork(String filename) throws IOException {
+        try {
+            return toDenseNetwork(KerasModelImport.importKerasSequentialModelAndWeights(filename));
+        } catch (InvalidKerasConfigurationException | UnsupportedKerasConfigurationException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Initialize Logistic regression model with parameters fit from another app
+     */
+    public void initLRModel() {
+        initModel(ModelType.LR, jsonModelFilename);
     }
 
-    
     /**
      * Initialize NN model with trained weights from Keras 
      */
     public void initNNModel() {
+        initModel(ModelType.NN, kerasModelFilename);
+    }
+
+    /**
+     * Helper method to read NN model with trained weights from Keras 'h5' file
+     * 
+     * @param filename
+     */
+    private void initNNModel(String filename) {
         // read keras model
         long start = System.currentTimeMillis();
         try {
-            modelNN = KerasModelImport.importKerasSequentialModelAndWeights(kerasModelFilename);
+            modelNN = KerasModelImport.importKerasSequentialModelAndWeights(filename);
         } catch (IOException | InvalidKerasConfigurationException | UnsupportedKerasConfigurationException ex) {
-            Logger.getLogger(Analytics.class.getName()).log(Level.SEVERE, null, ex);
+            throw new IllegalStateException("Could not load NN model from " + filename, ex);
         }
         long stop = System.currentTimeMillis();
         Logger.getLogger("Time to read Keras Model File: " + (stop - start) + " (ms)");
         modelNN.printConfiguration();
-        // initialize DL4J input INDarray
+        modelNN.getLayerWiseConfigurations().setInferenceWorkspaceMode(workspaceMode);
+        classifier = null;
+        if (precision != ReducedPrecision.Precision.FLOAT64) {
+            classifier = atPrecision(ModelType.NN, toDenseNetwork(modelNN));
+        }
+        // per thread copies and input arrays are created by predictNN on first use of the new model
+    }
+
+    /**
+     * Helper method returns model at configured precision -- models that are updated on the stream (HT, online
+     * GNB) or score raw values (MNB) stay at FLOAT64
+     * 
+     * @param type
+     * @param model
+     * @return
+     */
+    private Classifier atPrecision(ModelType type, Classifier model) {
+        if (precision == ReducedPrecision.Precision.FLOAT64) {
+            return model;
+        }
+        if (type == ModelType.MNB || type == ModelType.HT || (onlineLearning && type == ModelType.GNB)) {
+            System.out.println(type + " model is scored at " + ReducedPrecision.Precision.FLOAT64);
+            return model;
+        }
+        try {
+            Classifier reduced = ReducedPrecision.reduce(model, precision);
+            System.out.println(type + " model is scored at " + precision);
+            return reduced;
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(Analytics.class.getName()).log(Level.WARNING, ex.getMessage() + " -- scoring at "
+                    + ReducedPrecision.Precision.FLOAT64);
+            return model;
+        }
     }
 
     /**
-     *  Predict classification on record with Logistic Regression
+     * Helper method copies weights of a DL4J network of dense layers to a DenseNetwork -- layers without parameters
+     * (e.g. dropout) are identity when scoring and are skipped
+     * 
+     * @param network
+     * @return
+     */
+    private static DenseNetwork toDenseNetwork(MultiLayerNetwork network) {
+        DenseNetwork dense = null;
+        for (Layer layer : network.getLayers()) {
+            if (layer.numParams() == 0) {
+                continue;
+            }
+            if (!(layer.conf().getLayer() instanceof BaseLayer)) {
+                throw new IllegalArgumentException("Only dense layers can be copied to a DenseNetwork");
+            }
+            INDArray w = layer.getParam("W");       // [nIn, nOut]
+            INDArray b = layer.getParam("b");
+            int numIn = w.rows();
+            int numOut = w.columns();
+            if (dense == null) {
+                dense = new DenseNetwork(numIn);
+            }
+            double[] weight = new double[numIn * numOut];
+            double[] bias = new double[numOut];
+            for (int o = 0; o < numOut; o++) {
+                for (int i = 0; i < numIn; i++) {
+                    weight[o * numIn + i] = w.getDouble(i, o);
+                }
+                bias[o] = b.getDouble(o);
+            }
+            dense.addLayer(numOut, weight, bias, activation(((BaseLayer) layer.conf().getLayer()).getActivationFn()));
+        }
+        return dense;
+    }
+
+    /**
+     * Helper method maps DL4J activation function to DenseNetwork activation
+     * 
+     * @param fn
+     * @return
+     */
+    private static DenseNetwork.Activation activation(IActivation fn) {
+        if (fn instanceof ActivationReLU) {
+            return DenseNetwork.Activation.RELU;
+        } else if (fn instanceof ActivationSigmoid) {
+            return DenseNetwork.Activation.SIGMOID;
+        } else if (fn instanceof ActivationTanH) {
+            return DenseNetwork.Activation.TANH;
+        } else if (fn instanceof ActivationSoftmax) {
+            return DenseNetwork.Activation.SOFTMAX;
+        } else if (fn instanceof ActivationIdentity) {
+            return DenseNetwork.Activation.IDENTITY;
+        }
+        throw new IllegalArgumentException("No DenseNetwork activation for " + fn);
+    }
+
+    /**
+     * Helper method to read model parameters of given type from JSON or binary model file
+     * 
+     * @param type
+     * @param filename
+     * @return
+     * @throws IOException
+     */
+    private static Object readModel(ModelType type, String filename) throws IOException {
+        Class<?> modelClass;
+        switch (type) {
+            case LR:
+                modelClass = LRModel.class;
+                break;
+            case RF:
+            case HT:
+                modelClass = RFModel.class;
+                break;
+            case GB:
+                modelClass = GBModel.class;
+                break;
+            case GNB:
+                modelClass = GaussNBModel.class;
+                break;
+            case MNB:
+                modelClass = MultiNBModel.class;
+                break;
+            case SVC:
+                modelClass = SVCModel.class;
+                break;
+            case LSVC:
+                modelClass = LinearSVCModel.class;
+                break;
+            case KNN:
+                modelClass = KnnModel.class;
+                break;
+            default:
+                throw new IllegalArgumentException("No classifier-models model for " + type);
+        }
+        if (filename.endsWith(".json")) {
+            return new ObjectMapper().readValue(new File(filename), modelClass);
+        }
+        return ModelIO.read(filename, modelClass);
+    }
+
+    /**
+     * Helper method to wrap model parameters in the classifier program used for scoring
+     * 
+     * @param type
+     * @param model
+     * @return
+     */
+    private static Classifier toClassifier(ModelType type, Object model) {
+        switch (type) {
+            case LR: {
+                LRModel m = (LRModel) model;
+                LogisticRegression lr = new LogisticRegression(m.getNumFeature(), m.getNumClass(), m.getAlpha(),
+                        m.getRegL1());
+                lr.setModel(m);
+                return lr;
+            }
+            case RF: {
+                RFModel m = (RFModel) model;
+                RandomForest rf = new RandomForest(m.getNumFeature(), m.getNumClass(), m.getNumTree());
+                rf.setModel(m);
+                return rf;
+            }
+            case GB: {
+                GBModel m = (GBModel) model;
+                GradientBoosting gb = new GradientBoosting(m.getNumFeature(), m.getNumClass(),
+                        m.getRootTreeId() == null ? 0 : m.getRootTreeId().length / m.getNumOutput());
+                gb.setModel(m);
+                return gb;
+            }
+            case GNB: {
+                GaussNBModel m = (GaussNBModel) model;
+                GaussianNaiveBayes gnb = new GaussianNaiveBayes(m.getNumFeature(), m.getNumClass());
+                gnb.setModel(m);
+                return gnb;
+            }
+            case MNB: {
+                MultiNBModel m = (MultiNBModel) model;
+                MultinomialNaiveBayes mnb = new MultinomialNaiveBayes(m.getNumFeature(), m.getNumClass(),
+                        m.getNumLevel());
+                mnb.setModel(m);
+                return mnb;
+            }
+            case SVC: {
+                SVCModel m = (SVCModel) model;
+                SupportVector svc = new SupportVector(m.getNumFeature(), m.getNumClass());
+                svc.setModel(m);
+                return svc;
+            }
+            case LSVC: {
+                LinearSVCModel m = (LinearSVCModel) model;
+                LinearSupportVector lsvc = new LinearSupportVector(m.getNumFeature(), m.getNumClass());
+                lsvc.setModel(m);
+                return lsvc;
+            }
+            case KNN: {
+                KnnModel m = (KnnModel) model;
+                KNearestNeighbors knn = new KNearestNeighbors(m.getNumFeature(), m.getNumClass(), m.getK());
+                knn.setModel(m);
+                return knn;
+            }
+            case HT: {
+                RFModel m = (RFModel) model;
+                HoeffdingTree ht = new HoeffdingTree(m.getNumFeature(), m.getNumClass());
+                ht.setModel(m);
+                return ht;
+            }
+            default:
+                throw new IllegalArgumentException("No classifier-models model for " + type);
+        }
+    }
+
+    /**
+     * Predict classification on record with configured model
+     * 
+     * @param c
+     * @return
+     */
+    public int predict(Continuous c) {
+        switch (modelType) {
+            case NN:
+                return predictNN(c);
+            case HT:
+                return onlineModel(c).predict(c.getFeature());
+            default:
+                return predict(modelType, classifier, c);
+        }
+    }
+
+    /**
+     * Helper method predicts classification on record with model of given type
+     * 
+     * @param type
+     * @param model
+     * @param c
+     * @return
+     */
+    private static int predict(ModelType type, Classifier model, Continuous c) {
+        if (type == ModelType.MNB) {
+            // stream records carry raw values -- map to levels with model thresholds
+            return ((MultinomialNaiveBayes) model).predictRaw(c.getFeature());
+        }
+        return model.predict(c.getFeature());
+    }
+
+    /**
+     * Check record with anomaly detector -- false if no detector is configured
+     * 
      * @param c
      * @return
      */
-    public int predictLR(Continuous c) {
-        test.set(0, c);
-        int[] p = lr.predict(test);
-        return p[0];
+    public boolean isAnomaly(Continuous c) {
+        return anomalyMode != AnomalyMode.NONE && anomalyDetector != null && anomalyDetector.predict(c.getFeature()) == 1;
+    }
+
+    /**
+     * Classification of record as String -- ANOMALY for records tagged by the anomaly detector, otherwise the
+     * classId predicted by the configured model
+     * 
+     * @param c
+     * @return
+     */
+    public String classify(Continuous c) {
+        if (anomalyMode == AnomalyMode.TAG && isAnomaly(c)) {
+            return ANOMALY;
+        }
+        return String.valueOf(predict(c));
+    }
+
+    /**
+     * Classification of record as String with the model of its tenant -- key is 'tenant' (default model id) or
+     * 'tenant:modelId', without a model cache (or key) the configured model is used
+     * 
+     * @param key
+     * @param c
+     * @return
+     */
+    public String classify(Object key, Continuous c) {
+        if (modelCache == null || key == null) {
+            return classify(c);
+        }
+        if (anomalyMode == AnomalyMode.TAG && isAnomaly(c)) {
+            return ANOMALY;
+        }
+        String route = key.toString();
+        int separator = route.indexOf(':');
+        String tenant = separator < 0 ? route : route.substring(0, separator);
+        String modelId = separator < 0 ? defaultModelId : route.substring(separator + 1);
+        ModelCache.Model model = modelCache.get(tenant, modelId);
+        if (model == null) {
+            // no (loadable) model for tenant
+            return String.valueOf(predict(c));
+        }
+        return String.valueOf(predict(model.getType(), model.getClassifier(), c));
+    }
+
+    /**
+     * Update model from labelled record (test-then-train) when online learning is enabled -- only models that
+     * learn incrementally (HT, GNB) are updated
+     * 
+     * @param c
+     */
+    public void learn(Continuous c) {
+        if (!onlineLearning) {
+            return;
+        }
+        if (modelType == ModelType.HT) {
+            ((HoeffdingTree) onlineModel(c)).partialFit(c.getFeature(), c.getResult());
+        } else if (classifier instanceof GaussianNaiveBayes) {
+            // updates are serialized by the model, scoring threads read the scorer it publishes
+            ((GaussianNaiveBayes) classifier).partialFit(c.getFeature(), c.getResult());
+        }
+    }
+
+    /**
+     * Helper method returns HT model -- created from the first record if no model file was given (only creation
+     * locks, records read the published model)
+     * 
+     * @param c
+     * @return
+     */
+    private Classifier onlineModel(Continuous c) {
+        Classifier current = classifier;
+        if (current == null) {
+            synchronized (this) {
+                if (classifier == null) {
+                    classifier = new HoeffdingTree(c.getFeature().length, numClass);
+                }
+                current = classifier;
+            }
+        }
+        return current;
     }
 
     /**
@@ -105,11 +688,46 @@ public class Analytics {
      * @return
      */
     public int predictNN(Continuous c) {
-        int numFeature = c.getFeature().length;
-        indArray = Nd4j.zeros(numFeature);
-        for (int j = 0; j < numFeature; j++) {
-            indArray.putScalar(new int[]{j}, c.getFeature()[j]);
+        if (classifier != null) {
+            // reduced precision copy of the network
+            return classifier.predict(c.getFeature());
+        }
+        double[] feature = c.getFeature();
+        NNScratch scratch = nnScratch.get();
+        if (scratch == null || scratch.source != modelNN || scratch.workspaceMode != workspaceMode
+                || scratch.input.length() != feature.length) {
+            scratch = new NNScratch(modelNN, workspaceMode, feature.length);
+            nnScratch.set(scratch);
+        }
+        scratch.input.data().setData(feature);      // bulk copy into the preallocated input
+        if (workspaceMode == WorkspaceMode.NONE) {
+            return classId(scratch.network.output(scratch.input, false));
+        }
+        // output is allocated in the workspace and read before it is closed -- memory is reused by the next record
+        try (MemoryWorkspace workspace = Nd4j.getWorkspaceManager().getAndActivateWorkspace(NN_WORKSPACE_CONFIG,
+                NN_WORKSPACE)) {
+            return classId(scratch.network.output(scratch.input, false, workspace));
+        }
+    }
+
+    /**
+     * Helper method returns class of NN output -- rounded value of a single output (as Keras binary models), else
+     * index of the largest output
+     * 
+     * @param output
+     * @return
+     */
+    private static int classId(INDArray output) {
+        long numOutput = output.length();
+        if (numOutput == 1) {
+            return (int) Math.rint(output.getDouble(0));
+        }
+        int maxIndex = 0;
+        for (int i = 1; i < numOutput; i++) {
+            if (output.getDouble(i) > output.getDouble(maxIndex)) {
+                maxIndex = i;
+            }
         }
-        return (int) Math.rint(modelNN.output(indArray).getDouble(0));
+        return maxIndex;
     }
 }
@@ -0,0 +1,413 @@
+package com.barnwaldo.kafkastreamstester.model;
+
+import com.barnwaldo.classifiers.programs.Classifier;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import lombok.Getter;
+
+/**
+ * Cache of per tenant models, keyed by tenant and model id
+ *
+ *      (1) models are loaded lazily on first use -- the first thread to miss a key loads it, concurrent requests for
+ *          the same key wait on the same CompletableFuture (single flight), requests for other keys are not blocked
+ *      (2) every model is weighed in bytes held in memory (arrays and objects reachable from its classifier, see
+ *          weigh, plus a fixed entry overhead) -- when resident bytes exceed maxBytes the least recently used models
+ *          are evicted until they are below 90% of maxBytes
+ *      (3) eviction runs on its own daemon thread -- stream threads only schedule it, so they never wait on it
+ *      (4) missing models (no model file, invalid tenant or model id) are cached as an empty entry for
+ *          MISSING_TTL_NANOS -- records of tenants without a model do not probe the model store -- models that fail
+ *          to load for any other reason (any Throwable) are not cached, the entry is removed and the next request
+ *          for the key loads it again -- requests waiting on the load get null either way
+ *      (5) hits, misses, loads, load time, failures, evictions and resident bytes are counted
+ *
+ * @author barnwaldo
+ * @version 1.0
+ */
+public class ModelCache {
+
+    private static final long ENTRY_BYTES = 1024;   // overhead charged to every entry (all of a missing model)
+    private static final double LOW_WATER = 0.9;    // eviction frees down to this fraction of maxBytes
+    private static final long OBJECT_BYTES = 16;    // object header
+    private static final long REFERENCE_BYTES = 8;
+    private static final long MISSING_TTL_NANOS = TimeUnit.SECONDS.toNanos(60);   // missing models are cached
+
+    /**
+     * Loads model of tenant -- called on the first request of a key and again after the model was evicted or
+     * invalidated, after a failed load, or when a missing model has expired -- FileNotFoundException and
+     * IllegalArgumentException mean the tenant has no (valid) model
+     */
+    @FunctionalInterface
+    public interface Loader {
+
+        Model load(String tenant, String modelId) throws IOException;
+    }
+
+    /**
+     * Cached model -- weighed by the memory its classifier holds
+     */
+    @Getter
+    public static class Model {
+
+        private final Analytics.ModelType type;
+        private final Classifier classifier;     // null = missing model
+        private final long bytes;
+        private final long expires;              // System.nanoTime() after which a missing model is looked up again
+        private volatile long lastAccess;
+
+        public Model(Analytics.ModelType type, Classifier classifier) {
+            this.type = type;
+            this.classifier = classifier;
+            this.bytes = weigh(classifier) + ENTRY_BYTES;
+            this.expires = 0;
+        }
+
+        private Model(long expires) {
+            this.type = null;
+            this.classifier = null;
+            this.bytes = ENTRY_BYTES;
+            this.expires = expires;
+        }
+
+        public boolean isMissing() {
+            return classifier == null;
+        }
+    }
+
+    /**
+     * Loaded entry considered for eviction
+     */
+    private static class Candidate {
+
+        final String key;
+        final CompletableFuture<Model> future;
+        final long lastAccess;
+
+        Candidate(String key, CompletableFuture<Model> future) {
+            this.key = key;
+            this.future = future;
+            this.lastAccess = future.join().lastAccess;
+        }
+    }
+
+    @Getter
+    private final long maxBytes;
+    private final Loader loader;
+    private final ConcurrentHashMap<String, CompletableFuture<Model>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();              // access order for LRU
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final ExecutorService evictor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "model-cache-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ModelCache(long maxBytes, Loader loader) {
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+    }
+
+    /**
+     * Method returns model of tenant, loading it on a miss -- concurrent misses of the same key share one load
+     *
+     * @param tenant
+     * @param modelId
+     * @return model, null if the tenant has none or it could not be loaded
+     */
+    public Model get(String tenant, String modelId) {
+        String key = tenant + ':' + modelId;
+        CompletableFuture<Model> future = entries.get(key);
+        if (future == null) {
+            CompletableFuture<Model> created = new CompletableFuture<>();
+            future = entries.putIfAbsent(key, created);
+            if (future == null) {
+                future = created;
+                misses.increment();
+                load(key, tenant, modelId, created);
+            } else {
+                hits.increment();
+            }
+        } else {
+            hits.increment();
+        }
+        Model model;
+        try {
+            model = future.join();
+        } catch (CompletionException ex) {
+            return null;        // failed load, already removed
+        }
+        if (model.isMissing() && System.nanoTime() - model.expires > 0) {
+            // look in the model store again
+            if (entries.remove(key, future)) {
+                residentBytes.addAndGet(-model.bytes);
+            }
+            return get(tenant, modelId);
+        }
+        model.lastAccess = clock.incrementAndGet();
+        return model.isMissing() ? null : model;
+    }
+
+    /**
+     * Method drops model of tenant (e.g. after it was updated in the model store) -- it is reloaded on next use
+     *
+     * @param tenant
+     * @param modelId
+     */
+    public void invalidate(String tenant, String modelId) {
+        CompletableFuture<Model> future = entries.remove(tenant + ':' + modelId);
+        if (future != null) {
+            // a load in progress is charged when it completes
+            future.thenAccept(model -> residentBytes.addAndGet(-model.bytes));
+        }
+    }
+
+    /**
+     * Helper method loads model into future -- a missing model completes it with an empty entry that expires after
+     * MISSING_TTL_NANOS, on any other failure the entry is removed (so the next request retries) and the future
+     * completes exceptionally, which releases the waiting requests
+     *
+     * @param key
+     * @param tenant
+     * @param modelId
+     * @param future
+     */
+    private void load(String key, String tenant, String modelId, CompletableFuture<Model> future) {
+        long start = System.nanoTime();
+        Model model;
+        try {
+            model = loader.load(tenant, modelId);
+        } catch (FileNotFoundException | IllegalArgumentException ex) {
+            // a tenant without a model is expected -- cached, so the model store is not probed on every record
+            Logger.getLogger(ModelCache.class.getName()).log(ex instanceof FileNotFoundException ? Level.FINE
+                    : Level.WARNING, "No model " + modelId + " for tenant " + tenant + " -- " + ex);
+            model = new Model(System.nanoTime() + MISSING_TTL_NANOS);
+            model.lastAccess = clock.incrementAndGet();
+            if (residentBytes.addAndGet(model.bytes) > maxBytes) {
+                scheduleEviction();
+            }
+            future.complete(model);
+            return;
+        } catch (Throwable ex) {
+            Logger.getLogger(ModelCache.class.getName()).log(Level.WARNING, "Could not load model " + modelId
+                    + " for tenant " + tenant + " -- " + ex, ex);
+            failures.increment();
+            entries.remove(key, future);
+            future.completeExceptionally(ex);
+            if (ex instanceof Error) {
+                throw (Error) ex;
+            }
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        loads.increment();
+        loadNanos.add(nanos);
+        model.lastAccess = clock.incrementAndGet();
+        if (residentBytes.addAndGet(model.bytes) > maxBytes) {
+            scheduleEviction();
+        }
+        future.complete(model);
+        System.out.println("Loaded " + modelId + " model of tenant " + tenant + " in " + nanos / 1000000 + " (ms) -- "
+                + this);
+    }
+
+    /**
+     * Helper method queues one eviction pass unless one is already pending
+     */
+    private void scheduleEviction() {
+        if (evictionScheduled.compareAndSet(false, true)) {
+            evictor.execute(this::evict);
+        }
+    }
+
+    /**
+     * Helper method evicts least recently used loaded models until resident bytes are below the low water mark --
+     * loads in progress are never evicted
+     */
+    private void evict() {
+        evictionScheduled.set(false);
+        if (residentBytes.get() <= maxBytes) {
+            return;
+        }
+        // snapshot access order -- stream threads keep updating lastAccess while sorting
+        List<Candidate> loaded = new ArrayList<>();
+        for (Map.Entry<String, CompletableFuture<Model>> entry : entries.entrySet()) {
+            if (entry.getValue().isDone() && !entry.getValue().isCompletedExceptionally()) {
+                loaded.add(new Candidate(entry.getKey(), entry.getValue()));
+            }
+        }
+        loaded.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+        int evicted = 0;
+        long lowWater = (long) (LOW_WATER * maxBytes);
+        for (Candidate candidate : loaded) {
+            if (residentBytes.get() <= lowWater) {
+                break;
+            }
+            if (entries.remove(candidate.key, candidate.future)) {
+                residentBytes.addAndGet(-candidate.future.join().bytes);
+                evictions.increment();
+                evicted++;
+            }
+        }
+        System.out.println("Evicted " + evicted + " models -- " + this);
+    }
+
+    /**
+     * Method returns estimated bytes held by model -- primitive arrays at their element size, object arrays and
+     * collections at a reference per element plus their elements, and objects of model classes (classifier-models,
+     * libsvm) at a header plus their fields, each reachable object counted once -- enum constants and per thread
+     * scratch buffers (ThreadLocal) are not part of the model
+     *
+     * @param model
+     * @return
+     */
+    public static long weigh(Object model) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(model);
+        long bytes = 0;
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            if (!seen.add(o)) {
+                continue;
+            }
+            Class<?> type = o.getClass();
+            if (type.isArray()) {
+                int length = Array.getLength(o);
+                Class<?> component = type.getComponentType();
+                bytes += OBJECT_BYTES + (long) length * (component.isPrimitive() ? primitiveBytes(component)
+                        : REFERENCE_BYTES);
+                if (!component.isPrimitive()) {
+                    for (Object element : (Object[]) o) {
+                        push(pending, element);
+                    }
+                }
+            } else if (o instanceof Collection || o instanceof Map) {
+                Collection<?> elements = o instanceof Map ? ((Map<?, ?>) o).values() : (Collection<?>) o;
+                bytes += OBJECT_BYTES + REFERENCE_BYTES * elements.size();
+                for (Object element : elements) {
+                    push(pending, element);
+                }
+            } else if (isModelClass(type) && !(o instanceof Enum)) {
+                bytes += OBJECT_BYTES;
+                for (Class<?> c = type; c != null && isModelClass(c); c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers())) {
+                            continue;
+                        }
+                        Class<?> fieldType = field.getType();
+                        if (fieldType.isPrimitive()) {
+                            bytes += primitiveBytes(fieldType);
+                            continue;
+                        }
+                        bytes += REFERENCE_BYTES;
+                        if (ThreadLocal.class.isAssignableFrom(fieldType)) {
+                            continue;
+                        }
+                        try {
+                            field.setAccessible(true);
+                            push(pending, field.get(o));
+                        } catch (IllegalAccessException | RuntimeException ex) {
+                            // not reachable -- counted as a reference only
+                        }
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isModelClass(Class<?> type) {
+        return type.getName().startsWith("com.barnwaldo.") || type.getName().startsWith("libsvm.");
+    }
+
+    private static void push(Deque<Object> pending, Object o) {
+        if (o != null) {
+            pending.push(o);
+        }
+    }
+
+    private static long primitiveBytes(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        return type == short.class || type == char.class ? 2 : 1;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * Method returns mean model load time in ms
+     *
+     * @return
+     */
+    public double getMeanLoadMillis() {
+        long n = loads.sum();
+        return n == 0 ? 0.0 : loadNanos.sum() / 1.0e6 / n;
+    }
+
+    @Override
+    public String toString() {
+        return "models: " + size() + ", resident bytes: " + getResidentBytes() + " / " + maxBytes + ", hits: "
+                + getHits() + ", misses: " + getMisses() + ", failures: " + getFailures() + ", evictions: "
+                + getEvictions() + ", mean load: " + String.format("%.1f", getMeanLoadMillis()) + " (ms)";
+    }
+}
@@ -0,0 +1,74 @@
+package com.barnwaldo.kafkastreamstester.utils;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import com.barnwaldo.classifiers.programs.ReducedPrecision;
+import com.barnwaldo.kafkastreamstester.model.Analytics;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Selects the model served on the stream from application.yml and initializes Analytics before the streams start
+ * 
+ * analytics.model-type -- NN, LR, RF, GB, GNB, MNB, SVC, LSVC, KNN or HT 
+ * analytics.model-file -- Keras 'h5' file for NN, JSON (.json) or binary model file (ModelIO) otherwise
+ *                         (HT may have none and is then grown from the stream)
+ * analytics.online-learning -- learn from the result of each record after it is scored (HT, GNB)
+ * analytics.num-class -- number of classes of an HT model grown without a model file
+ * analytics.precision -- FLOAT64, FLOAT32 or INT8 (LR, LSVC, NN) scoring precision of model parameters
+ * analytics.anomaly-mode -- NONE, TAG (classify anomalous records as ANOMALY) or BRANCH (send them to anomaly-topic
+ *                           instead of classifying them)
+ * analytics.anomaly-model-file -- Isolation Forest model, JSON (.json) or binary model file (ModelIO)
+ * analytics.anomaly-threshold -- anomaly score threshold, overrides the one saved with the model
+ * analytics.anomaly-topic -- topic for BRANCH mode
+ * analytics.model-store -- directory of per tenant models (model-store/tenant/modelId.bin, .json or .h5), none =
+ *                          every record is scored by the model above
+ * analytics.default-model-id -- model id of records keyed by tenant only (modelId starts with the model type)
+ * analytics.model-cache-bytes -- resident bytes of tenant models before least recently used ones are evicted
+ * analytics.tenant-header -- header with 'tenant' or 'tenant:modelId', none = record key
+ * 
+ * @author barnwaldo
+ * @version 1.0
+ */
+@Component
+@ConfigurationProperties(prefix = "analytics")
+@Getter
+@Setter
+public class AnalyticsConfig {
+
+    private Analytics.ModelType modelType = Analytics.ModelType.NN;
+    private String modelFile = "src/main/java/com/barnwaldo/kafkastreamstester/test_model_gen1.h5";
+    private boolean onlineLearning;
+    private int numClass = 2;
+    private ReducedPrecision.Precision precision = ReducedPrecision.Precision.FLOAT64;
+    private Analytics.AnomalyMode anomalyMode = Analytics.AnomalyMode.NONE;
+    private String anomalyModelFile;
+    private Double anomalyThreshold;
+    private String anomalyTopic = "anomalies";
+    private String modelStore;
+    private String defaultModelId = "RF";
+    private long modelCacheBytes = 256L * 1024 * 1024;
+    private String tenantHeader;
+
+    @PostConstruct
+    public void initAnalytics() {
+        Analytics analytics = Analytics.getInstance();
+        analytics.setOnlineLearning(onlineLearning);
+        analytics.setNumClass(numClass);
+        analytics.setPrecision(precision);
+        analytics.initModel(modelType, modelFile);
+        analytics.setAnomalyMode(anomalyMode);
+        analytics.setAnomalyTopic(anomalyTopic);
+        if (anomalyMode != Analytics.AnomalyMode.NONE) {
+            analytics.initAnomalyModel(anomalyModelFile, anomalyThreshold);
+        }
+        analytics.setTenantHeader(tenantHeader);
+        if (modelStore != null) {
+            analytics.initModelCache(modelStore, defaultModelId, modelCacheBytes);
+        }
+    }
+}
@@ -1,18 +1,25 @@
 package com.barnwaldo.kafkastreamstester.utils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.Serdes;
 import org.apache.kafka.streams.KeyValue;
 import org.apache.kafka.streams.kstream.KStream;
 import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.kstream.Transformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.binder.kafka.streams.annotations.KafkaStreamsProcessor;
+import org.springframework.kafka.support.serializer.JsonSerde;
 import org.springframework.messaging.handler.annotation.SendTo;
 import org.springframework.stereotype.Component;
 
 import com.barnwaldo.kafkastreamstester.model.Analytics;
-import com.barnwaldo.kafkastreamstester.model.Continuous;
+import com.barnwaldo.classifiers.data.Continuous;
 
 /**
  * Spring Cloud Kafka Streams implementation of ML and DL models
@@ -34,19 +41,43 @@ public class DataStreamListener {
          */
         @StreamListener("input")
         @SendTo("output")
+        @SuppressWarnings("unchecked")
         public KStream<?, String> process(KStream<Object, Continuous> input) {
 
-
-            KStream<String, Continuous> ostream = input
+            KStream<Object, Continuous> records = input
             		// inspect input data
                     .peek((key, value) -> {
                         System.out.println("\nKAFKA STREAM input -- " + key + "\nfeatures: " + Arrays.toString(value.getFeature()));
-                    })
-                    // perform classification 
-                    .map((key, value) -> KeyValue.pair(String.valueOf(Analytics.getInstance().predictNN(value)), value))
+                    });
+
+            if (Analytics.getInstance().getAnomalyMode() == Analytics.AnomalyMode.BRANCH) {
+                // send anomalous records to their own topic -- only the others are classified
+                KStream<Object, Continuous>[] branches = records
+                        .branch((key, value) -> Analytics.getInstance().isAnomaly(value), (key, value) -> true);
+                branches[0]
+                        .peek((key, value) -> {
+                            System.out.println("Branched Stream -- " + Analytics.ANOMALY + " to " + Analytics.getInstance().getAnomalyTopic());
+                        })
+                        .selectKey((key, value) -> key == null ? null : String.valueOf(key))
+                        .to(Analytics.getInstance().getAnomalyTopic(), Produced.with(Serdes.String(), new JsonSerde<>(Continuous.class)));
+                records = branches[1];
+            }
+
+            String tenantHeader = Analytics.getInstance().getTenantHeader();
+            if (tenantHeader != null) {
+                // key records by tenant from header for the model cache
+                records = records.transform(() -> new TenantKey(tenantHeader));
+            }
+
+            KStream<String, Continuous> ostream = records
+                    // perform classification with the model of the record key (tenant) or the configured model
+                    // (anomalous records are classified as ANOMALY in TAG mode)
+                    .map((key, value) -> KeyValue.pair(Analytics.getInstance().classify(key, value), value))
+                    // learn from labelled record after scoring it (when analytics.online-learning is set)
+                    .peek((key, value) -> Analytics.getInstance().learn(value))
                     // inspect classification results
                     .peek((key, value) -> {
-                        System.out.println("Mapped Stream -- Deep Learning Classification: " + key);
+                        System.out.println("Mapped Stream -- " + Analytics.getInstance().getModelType() + " Classification: " + key);
                     });
       
             KTable<String, Long> mtable = ostream
@@ -61,4 +92,32 @@ public class DataStreamListener {
         }
 
     }
+
+    /**
+     * Replaces record key by the value of the tenant header -- records without the header keep their key
+     */
+    private static class TenantKey implements Transformer<Object, Continuous, KeyValue<Object, Continuous>> {
+
+        private final String header;
+        private ProcessorContext context;
+
+        TenantKey(String header) {
+            this.header = header;
+        }
+
+        @Override
+        public void init(ProcessorContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public KeyValue<Object, Continuous> transform(Object key, Continuous value) {
+            Header tenant = context.headers().lastHeader(header);
+            return KeyValue.pair(tenant == null ? key : new String(tenant.value(), StandardCharsets.UTF_8), value);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
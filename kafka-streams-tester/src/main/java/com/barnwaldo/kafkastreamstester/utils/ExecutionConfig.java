@@ -0,0 +1,215 @@
+package com.barnwaldo.kafkastreamstester.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.PostConstruct;
+
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.nativeblas.NativeOpsHolder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.stereotype.Component;
+
+import com.barnwaldo.classifiers.data.Continuous;
+import com.barnwaldo.kafkastreamstester.model.Analytics;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Splits the cores of the node between Kafka Streams threads and the threads of the inference backend (ND4J /
+ * OpenMP) so they do not oversubscribe the CPU
+ *
+ * execution.cores -- cores given to the application (default all available processors)
+ * execution.stream-threads -- Kafka Streams num.stream.threads (default cores / inference-threads -- scoring is
+ *                             thread safe, NN models are scored on a copy of the network per stream thread)
+ * execution.inference-threads -- OpenMP threads of each ND4J inference call (default cores / stream-threads, 1 if
+ *                                neither is set -- per record inference is too small to split)
+ * execution.workspace-mode -- DL4J inference workspace mode, ENABLED (reuse off-heap activations) or NONE
+ * execution.affinity -- OMP_PROC_BIND the process should be started with (e.g. close, spread) -- OpenMP reads it
+ *                       when ND4J loads, so it is checked and reported rather than set
+ * execution.benchmark -- sweep stream x inference thread splits of the cores on synthetic records before streaming
+ *                        and report throughput and p99 latency of each
+ *
+ * num.stream.threads is set in the binder configuration (configureStreamThreads) before the Kafka Streams binder is
+ * created, ND4J threads and workspace mode when Analytics has loaded its model
+ *
+ * @author barnwaldo
+ * @version 1.0
+ */
+@Component
+@DependsOn("analyticsConfig")     // Analytics model is loaded first
+@ConfigurationProperties(prefix = "execution")
+@Getter
+@Setter
+public class ExecutionConfig {
+
+    private static final String NUM_STREAM_THREADS = "spring.cloud.stream.kafka.streams.binder.configuration.num.stream.threads";
+
+    private int cores = Runtime.getRuntime().availableProcessors();
+    private Integer streamThreads;
+    private Integer inferenceThreads;
+    private WorkspaceMode workspaceMode = WorkspaceMode.ENABLED;
+    private String affinity;
+    private boolean benchmark;
+    private int benchmarkRecords = 20000;       // records scored per setting
+
+    /**
+     * Method returns Kafka Streams threads of the split
+     *
+     * @return
+     */
+    public int resolveStreamThreads() {
+        if (streamThreads != null) {
+            return Math.max(1, streamThreads);
+        }
+        return Math.max(1, cores / resolveInferenceThreads());
+    }
+
+    /**
+     * Method returns inference (OpenMP) threads of the split
+     *
+     * @return
+     */
+    public int resolveInferenceThreads() {
+        if (inferenceThreads != null) {
+            return Math.max(1, inferenceThreads);
+        }
+        return streamThreads == null ? 1 : Math.max(1, cores / Math.max(1, streamThreads));
+    }
+
+    /**
+     * Method sets num.stream.threads of the Kafka Streams binder from the execution properties of environment --
+     * call when the environment is prepared (before the binder reads its configuration)
+     *
+     * @param environment
+     */
+    public static void configureStreamThreads(ConfigurableEnvironment environment) {
+        ExecutionConfig config = Binder.get(environment).bind("execution", ExecutionConfig.class)
+                .orElseGet(ExecutionConfig::new);
+        environment.getPropertySources().addFirst(new MapPropertySource("execution",
+                Collections.singletonMap(NUM_STREAM_THREADS, config.resolveStreamThreads())));
+    }
+
+    @PostConstruct
+    public void initExecution() {
+        int stream = resolveStreamThreads();
+        int inference = resolveInferenceThreads();
+        if (stream * inference > cores) {
+            System.out.println("WARNING: " + stream + " stream threads x " + inference + " inference threads exceed "
+                    + cores + " cores");
+        }
+        String bind = System.getenv("OMP_PROC_BIND");
+        if (affinity != null && !affinity.equalsIgnoreCase(bind)) {
+            System.out.println("WARNING: start with OMP_PROC_BIND=" + affinity + " OMP_PLACES=cores for "
+                    + affinity + " affinity (now " + bind + ")");
+        }
+        if (benchmark) {
+            benchmark();
+        }
+        apply(inference);
+        System.out.println("Execution: " + cores + " cores = " + stream + " stream threads x " + inference
+                + " inference threads, workspace mode " + workspaceMode);
+    }
+
+    /**
+     * Helper method sets ND4J OpenMP threads and DL4J workspace mode
+     *
+     * @param inference
+     */
+    private void apply(int inference) {
+        // NativeOpsHolder reads its ops class from the backend configuration -- load the backend first
+        Nd4j.getExecutioner();
+        NativeOpsHolder.getInstance().getDeviceNativeOps().setOmpNumThreads(inference);
+        Analytics.getInstance().setWorkspaceMode(workspaceMode);
+    }
+
+    /**
+     * Helper method scores benchmarkRecords synthetic records with every split of cores into stream threads (pool
+     * of scoring threads) x inference threads (powers of two) and prints records/s, p50 and p99 latency
+     */
+    private void benchmark() {
+        Analytics analytics = Analytics.getInstance();
+        int numFeature;
+        try {
+            numFeature = analytics.getNumFeature();
+        } catch (IllegalStateException ex) {
+            // e.g. HT grown from the stream has no tree (nor number of features) before the first record
+            System.out.println("Benchmark skipped -- " + ex.getMessage());
+            return;
+        }
+        Random random = new Random(1);
+        List<Continuous> records = new ArrayList<>();
+        for (int n = 0; n < Math.min(benchmarkRecords, 1000); n++) {
+            double[] feature = new double[numFeature];
+            for (int j = 0; j < numFeature; j++) {
+                feature[j] = random.nextGaussian();
+            }
+            Continuous c = new Continuous();
+            c.setFeature(feature);
+            records.add(c);
+        }
+        System.out.println("Benchmark: " + benchmarkRecords + " records of " + numFeature + " features, "
+                + analytics.getModelType() + " model, " + cores + " cores");
+        System.out.println("stream x inference threads -- records/s, p50 (us), p99 (us)");
+        for (int inference = 1; inference <= cores; inference *= 2) {
+            for (int stream = 1; stream * inference <= cores; stream *= 2) {
+                apply(inference);
+                run(stream, records, benchmarkRecords / 10);     // warm up
+                long start = System.nanoTime();
+                long[] latency = run(stream, records, benchmarkRecords);
+                double seconds = (System.nanoTime() - start) / 1.0e9;
+                Arrays.sort(latency);
+                System.out.println(String.format("%6d x %-6d -- %10.0f %10.1f %10.1f", stream, inference,
+                        latency.length / seconds, latency[latency.length / 2] / 1.0e3,
+                        latency[(int) (0.99 * (latency.length - 1))] / 1.0e3));
+            }
+        }
+    }
+
+    /**
+     * Helper method scores numRecords records on stream threads and returns latency of each record (ns)
+     *
+     * @param stream
+     * @param records
+     * @param numRecords
+     * @return
+     */
+    private static long[] run(int stream, List<Continuous> records, int numRecords) {
+        ExecutorService pool = Executors.newFixedThreadPool(stream);
+        long[] latency = new long[numRecords];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < stream; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                Analytics analytics = Analytics.getInstance();
+                for (int n = thread; n < numRecords; n += stream) {
+                    long start = System.nanoTime();
+                    analytics.predict(records.get(n % records.size()));
+                    latency[n] = System.nanoTime() - start;
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            pool.shutdown();
+        }
+        return latency;
+    }
+}
@@ -0,0 +1,138 @@
+package com.barnwaldo.kafkastreamstester.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.weights.WeightInit;
+import org.junit.Test;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import com.barnwaldo.classifiers.data.Continuous;
+
+/**
+ * Tests NN scoring of Analytics -- per thread copies of the network (NNScratch) score as the network they are
+ * copied from, also when stream threads score concurrently
+ */
+public class AnalyticsTest {
+
+    private static final int NUM_FEATURE = 8;
+    private static final int NUM_CLASS = 3;
+    private static final double TOLERANCE = 1.0e-6;
+
+    @Test
+    public void copyOutputMatchesSource() {
+        MultiLayerNetwork source = network(7);
+        double[][] rows = rows(200, 1);
+        for (WorkspaceMode workspaceMode : new WorkspaceMode[]{WorkspaceMode.ENABLED, WorkspaceMode.NONE}) {
+            Analytics.NNScratch scratch = new Analytics.NNScratch(source, workspaceMode, NUM_FEATURE);
+            assertEquals(DataBuffer.Type.FLOAT, scratch.input.data().dataType());
+            for (double[] row : rows) {
+                scratch.input.data().setData(row);
+                for (int j = 0; j < NUM_FEATURE; j++) {
+                    assertEquals((float) row[j], scratch.input.getDouble(j), 0.0);
+                }
+                INDArray expected = source.output(Nd4j.create(new double[][]{row}), false);
+                INDArray actual = scratch.network.output(scratch.input, false);
+                assertEquals(NUM_CLASS, actual.length());
+                for (int k = 0; k < NUM_CLASS; k++) {
+                    assertEquals(expected.getDouble(k), actual.getDouble(k), TOLERANCE);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void concurrentPredictMatchesSource() throws Exception {
+        Analytics analytics = Analytics.getInstance();
+        analytics.setModelType(Analytics.ModelType.NN);
+        analytics.setClassifier(null);
+        for (MultiLayerNetwork source : new MultiLayerNetwork[]{network(7), network(11)}) {
+            // second network replaces the first -- per thread copies follow the new model
+            analytics.setModelNN(source);
+            double[][] rows = rows(500, 2);
+            int[] expected = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                expected[i] = source.output(Nd4j.create(new double[][]{rows[i]}), false).argMax(1).getInt(0);
+            }
+            for (WorkspaceMode workspaceMode : new WorkspaceMode[]{WorkspaceMode.ENABLED, WorkspaceMode.NONE}) {
+                analytics.setWorkspaceMode(workspaceMode);
+                ExecutorService pool = Executors.newFixedThreadPool(4);
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    futures.add(pool.submit(() -> {
+                        int mismatch = 0;
+                        for (int i = 0; i < rows.length; i++) {
+                            Continuous c = new Continuous();
+                            c.setFeature(rows[i]);
+                            if (analytics.predictNN(c) != expected[i]) {
+                                mismatch++;
+                            }
+                        }
+                        return mismatch;
+                    }));
+                }
+                try {
+                    for (Future<Integer> future : futures) {
+                        assertEquals(workspaceMode + " mismatches", 0, (int) future.get());
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method returns dense softmax network with seeded random weights
+     *
+     * @param seed
+     * @return
+     */
+    private static MultiLayerNetwork network(long seed) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(seed)
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(0, new DenseLayer.Builder().nIn(NUM_FEATURE).nOut(16).activation(Activation.RELU).build())
+                .layer(1, new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(16).nOut(NUM_CLASS)
+                        .activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork network = new MultiLayerNetwork(conf);
+        network.init();
+        return network;
+    }
+
+    /**
+     * Helper method returns numRow rows of standard normal features
+     *
+     * @param numRow
+     * @param seed
+     * @return
+     */
+    private static double[][] rows(int numRow, long seed) {
+        Random random = new Random(seed);
+        double[][] rows = new double[numRow][NUM_FEATURE];
+        for (double[] row : rows) {
+            for (int j = 0; j < NUM_FEATURE; j++) {
+                row[j] = 2.0 * random.nextGaussian();
+            }
+        }
+        return rows;
+    }
+}